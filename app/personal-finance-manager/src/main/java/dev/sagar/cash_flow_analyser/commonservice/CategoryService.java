@@ -1,9 +1,11 @@
 package dev.sagar.cash_flow_analyser.commonservice;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
 import jakarta.annotation.PostConstruct;
 
@@ -16,7 +18,9 @@ public class CategoryService {
   private static final org.slf4j.Logger logger =
       org.slf4j.LoggerFactory.getLogger(CategoryService.class);
 
-  private List<String> categories;
+  private volatile List<String> categories;
+
+  private volatile String version;
 
   private final JdbcClient jdbcClient;
 
@@ -28,6 +32,8 @@ public class CategoryService {
   public void loadCategories() {
     categories =
         jdbcClient.sql("SELECT category FROM categories").query(String.class).list();
+    version = DigestUtils.md5DigestAsHex(String.join("\n", categories.stream().sorted().toList())
+        .getBytes(StandardCharsets.UTF_8));
     logger.info("Loaded categories -> {}", categories);
   }
 
@@ -35,4 +41,24 @@ public class CategoryService {
     return String.join(", ", categories);
   }
 
+  /**
+   * Returns a digest of the loaded categories, which changes whenever the categories table does.
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the loaded category matching the given name regardless of case, or {@code null} if
+   * the name is not one of the loaded categories.
+   */
+  public String findCategory(String name) {
+    if (name == null) {
+      return null;
+    }
+    String trimmed = name.strip();
+    return categories.stream().filter(category -> category.equalsIgnoreCase(trimmed))
+        .findFirst().orElse(null);
+  }
+
 }
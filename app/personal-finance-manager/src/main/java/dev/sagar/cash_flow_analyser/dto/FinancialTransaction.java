@@ -3,7 +3,8 @@ package dev.sagar.cash_flow_analyser.dto;
 import java.time.LocalDate;
 
 public record FinancialTransaction(LocalDate date, Double amount,
-    String transaction_detail, String category, TransactionType transaction_type) {
+    String transaction_detail, String category, TransactionType transaction_type,
+    String fingerprint) {
 
   public FinancialTransaction(LocalDate date, Double amount, String description) {
     this(date, amount, description, "", TransactionType.DEBIT);
@@ -16,11 +17,22 @@ public record FinancialTransaction(LocalDate date, Double amount,
 
   public FinancialTransaction(LocalDate date, Double amount, String transaction_detail,
       String category, TransactionType transaction_type) {
+    this(date, amount, transaction_detail, category, transaction_type, null);
+  }
+
+  public FinancialTransaction(LocalDate date, Double amount, String transaction_detail,
+      String category, TransactionType transaction_type, String fingerprint) {
     this.date = date;
     this.amount = amount;
     this.transaction_detail = transaction_detail;
     this.category = category;
     this.transaction_type = transaction_type;
+    this.fingerprint = fingerprint;
+  }
+
+  public FinancialTransaction withFingerprint(String fingerprint) {
+    return new FinancialTransaction(date, amount, transaction_detail, category, transaction_type,
+        fingerprint);
   }
 
 }
@@ -1,5 +1,5 @@
 package dev.sagar.cash_flow_analyser.dto;
 
 public enum TransactionType {
-  CREDIT, DEBIT, UNKNOWN;
+  CREDIT, DEBIT, CREDIT_CARD_PAYMENT, UNKNOWN;
 }
@@ -8,36 +8,52 @@ import java.util.List;
 
 import javax.sql.DataSource;
 
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.model.openai.autoconfigure.OpenAiChatProperties;
+import org.springframework.ai.model.openai.autoconfigure.OpenAiConnectionProperties;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
-import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
 import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.support.ClassifierCompositeItemWriter;
 import org.springframework.batch.item.support.CompositeItemProcessor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.PathResource;
-import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.StringUtils;
 import dev.sagar.cash_flow_analyser.dto.FinancialTransaction;
+import dev.sagar.cash_flow_analyser.views.finance_services.PromptContextCache;
+import io.micrometer.observation.ObservationRegistry;
 
 /**
  * Configures and returns a Spring Batch Step for processing financial transactions. This step reads
- * data from a CSV file, processes it to filter out credit transactions, and writes the resulting
- * data to a database table.
+ * data from a CSV file, processes it to mark credit transactions and credit card payments,
+ * categorizes each chunk with a single LLM request and writes each transaction to the table it
+ * belongs to.
  *
  * @param jobRepository the JobRepository to manage job execution
  * @param transactionManager the transaction manager to handle transactions
@@ -52,28 +68,93 @@ public class BatchConfig {
   private static final org.slf4j.Logger logger =
       org.slf4j.LoggerFactory.getLogger(BatchConfig.class);
 
+  /**
+   * Every launch is a new job instance, statements that were already ingested are skipped by the
+   * {@link IngestedFileRegistry} instead.
+   */
   @Bean
-  Job job(JobRepository jobRepository, Step step1) {
-    return new JobBuilder("load-transactions", jobRepository).start(step1).build();
+  Job job(JobRepository jobRepository, Step step1, CategoryCache categoryCache,
+      TransactionClassifier transactionClassifier, IngestedFileRegistry ingestedFileRegistry,
+      PromptContextCache promptContextCache) {
+    return new JobBuilder("load-transactions", jobRepository).incrementer(new RunIdIncrementer())
+        .listener(categoryCache).listener(transactionClassifier).listener(ingestedFileRegistry)
+        .listener(promptContextCache)
+        .start(ingestedFileRegistry).on(IngestedFileRegistry.ALREADY_INGESTED).end()
+        .from(ingestedFileRegistry).on(IngestedFileRegistry.NEW_FILE).to(step1).end().build();
   }
 
+  /**
+   * A chunk whose categorization the provider throttled is rolled back and tried again, up to
+   * {@code app.categorization.llm.retry-limit} attempts in all, once the {@link LlmRateLimiter} lets the
+   * request through again.
+   */
   @Bean
   Step step1(JobRepository jobRepository, DataSourceTransactionManager transactionManager,
       ItemReader<FinancialTransaction> itemReader,
       ItemProcessor<FinancialTransaction, FinancialTransaction> itemProcessor,
-      ItemWriter<FinancialTransaction> itemWriter,
-      CompositeItemProcessor<FinancialTransaction, FinancialTransaction> compositeProcessor) {
+      ClassifierCompositeItemWriter<FinancialTransaction> routingItemWriter,
+      CompositeItemProcessor<FinancialTransaction, FinancialTransaction> compositeProcessor,
+      AdaptiveChunkSizePolicy chunkSizePolicy, IngestionMetrics ingestionMetrics,
+      @Value("${app.categorization.llm.retry-limit:5}") int retryLimit) {
 
-    return new StepBuilder("read-process-write-step", jobRepository)
-        .<FinancialTransaction, FinancialTransaction>chunk(10, transactionManager)
-        .reader(itemReader).processor(compositeProcessor).writer(itemWriter).build();
+    return ingestionMetrics.instrument(new StepBuilder("read-process-write-step", jobRepository)
+        .<FinancialTransaction, FinancialTransaction>chunk(chunkSizePolicy, transactionManager)
+        .faultTolerant().retry(TransientAiException.class).retryLimit(retryLimit)
+        .reader(itemReader).processor(compositeProcessor).writer(routingItemWriter)
+        .listener((ChunkListener) chunkSizePolicy)
+        .listener((StepExecutionListener) chunkSizePolicy)).build();
   }
 
+  /**
+   * The client of the transaction categorization, on the OpenAI connection of the agents. Unlike
+   * theirs, its throttled requests are neither retried by Spring AI nor turned into client
+   * errors: they are thrown as {@link LlmThrottledException}, with their {@code Retry-After}, for
+   * the {@link LlmRateLimiter} to back off and the caller to retry.
+   */
+  @Bean
+  ChatClient categorizationChatClient(OpenAiConnectionProperties connectionProperties,
+      OpenAiChatProperties chatProperties,
+      ObjectProvider<ObservationRegistry> observationRegistry) {
+    String apiKey = StringUtils.hasText(chatProperties.getApiKey()) ? chatProperties.getApiKey()
+        : connectionProperties.getApiKey();
+    String baseUrl = StringUtils.hasText(chatProperties.getBaseUrl())
+        ? chatProperties.getBaseUrl() : connectionProperties.getBaseUrl();
+    return ChatClient.builder(OpenAiChatModel.builder()
+        .openAiApi(OpenAiApi.builder().apiKey(apiKey).baseUrl(baseUrl)
+            .completionsPath(chatProperties.getCompletionsPath())
+            .responseErrorHandler(new LlmResponseErrorHandler()).build())
+        .defaultOptions(OpenAiChatOptions.fromOptions(chatProperties.getOptions()))
+        .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+        .observationRegistry(observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP))
+        .build()).build();
+  }
+
+  /**
+   * The commit interval of the step, tuned after every chunk towards the target transaction
+   * duration. Step scoped, so that every step execution starts from its own state.
+   */
   @StepScope
   @Bean
-  FlatFileItemReader<FinancialTransaction> itemReader(
-      @Value("#{jobParameters['fileName']}") String name) {
+  AdaptiveChunkSizePolicy chunkSizePolicy(@Value("${app.batch.chunk-size:10}") int chunkSize,
+      @Value("${app.batch.chunk.min-size:1}") int minSize,
+      @Value("${app.batch.chunk.max-size:500}") int maxSize,
+      @Value("${app.batch.chunk.target-duration-ms:2000}") long targetDurationMillis) {
+    return new AdaptiveChunkSizePolicy(chunkSize, minSize, maxSize, targetDurationMillis);
+  }
+
+  /**
+   * Reads the statement, the transactions being fingerprinted by the
+   * {@link FingerprintingItemReader}.
+   */
+  @StepScope
+  @Bean
+  FingerprintingItemReader itemReader(@Value("#{jobParameters['fileName']}") String name,
+      @Value("#{jobParameters['account'] ?: 'default'}") String account) {
     logger.info("Reading file in Item Reader: {}", name);
+    return new FingerprintingItemReader(() -> fileReader(name), account);
+  }
+
+  private static FlatFileItemReader<FinancialTransaction> fileReader(String name) {
     return new FlatFileItemReaderBuilder<FinancialTransaction>()
         .name("financialTransactionItemReader").resource(new PathResource(name))
         .delimited().delimiter(",")
@@ -90,13 +171,15 @@ public class BatchConfig {
   @Bean
   @Primary
   CompositeItemProcessor<FinancialTransaction, FinancialTransaction> compositeProcessor(
-      CategorizeTransactionProcessor categorizeTransactionProcessor,
-      DataSource dataSource, @Value("#{jobParameters['fileName']}") String name) {
+      LocalCategorizeTransactionProcessor localCategorizeTransactionProcessor,
+      JdbcClient jdbcClient, IngestionMetrics ingestionMetrics) {
     List<ItemProcessor<FinancialTransaction, FinancialTransaction>> delegates =
-        new ArrayList<>(3);
-    delegates.add(new FilterCreditTransactionsProcessor(dataSource, name));
-    delegates.add(new FilterCreditCardPaymentsProcessor(dataSource, name));
-    delegates.add(categorizeTransactionProcessor);
+        new ArrayList<>(4);
+    // The only one filtering items out, the others are counted by the routing writer
+    delegates.add(ingestionMetrics.counting(new KnownTransactionFilterProcessor(jdbcClient)));
+    delegates.add(new FilterCreditTransactionsProcessor());
+    delegates.add(new FilterCreditCardPaymentsProcessor());
+    delegates.add(localCategorizeTransactionProcessor);
 
     CompositeItemProcessor<FinancialTransaction, FinancialTransaction> processor =
         new CompositeItemProcessor<>();
@@ -113,8 +196,9 @@ public class BatchConfig {
     return new JdbcBatchItemWriterBuilder<FinancialTransaction>().dataSource(dataSource)
         .sql(
             """
-                INSERT INTO financial_transactions (date, amount, transaction_detail, category, transaction_type, source_file)
-                VALUES (?, ?, ?, ?, ?, ?)
+                INSERT INTO financial_transactions (date, amount, transaction_detail, category, transaction_type, source_file, fingerprint)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                ON CONFLICT (fingerprint) DO NOTHING
                 """)
         .itemPreparedStatementSetter((item, ps) -> {
           ps.setDate(1, Date.valueOf(item.date()));
@@ -123,25 +207,90 @@ public class BatchConfig {
           ps.setString(4, item.category());
           ps.setString(5, item.transaction_type().name());
           ps.setString(6, name);
-        }).build();
+          ps.setString(7, item.fingerprint());
+        }).assertUpdates(false).build();
+  }
+
+  /**
+   * Wraps the JDBC writer so that the transactions of each chunk the local classifier could not
+   * categorize are categorized with a single LLM request instead of one request per transaction.
+   */
+  @StepScope
+  @Bean
+  CategorizingItemWriter categorizingItemWriter(
+      CategorizeTransactionProcessor categorizeTransactionProcessor,
+      JdbcBatchItemWriter<FinancialTransaction> itemWriter) {
+    return new CategorizingItemWriter(categorizeTransactionProcessor, itemWriter);
+  }
+
+  @StepScope
+  @Bean
+  JdbcBatchItemWriter<FinancialTransaction> creditTransactionsWriter(DataSource dataSource,
+      @Value("#{jobParameters['fileName']}") String name) {
+    return sourceTableWriter(dataSource, "credit_transactions", name);
+  }
+
+  @StepScope
+  @Bean
+  JdbcBatchItemWriter<FinancialTransaction> creditCardPaymentsWriter(DataSource dataSource,
+      @Value("#{jobParameters['fileName']}") String name) {
+    return sourceTableWriter(dataSource, "credit_card_payments", name);
+  }
+
+  private static JdbcBatchItemWriter<FinancialTransaction> sourceTableWriter(
+      DataSource dataSource, String table, String name) {
+    return new JdbcBatchItemWriterBuilder<FinancialTransaction>().dataSource(dataSource)
+        .sql("INSERT INTO " + table
+            + " (amount, date, transaction_detail, source_file, fingerprint)"
+            + " VALUES (?, ?, ?, ?, ?) ON CONFLICT (fingerprint) DO NOTHING")
+        .itemPreparedStatementSetter((item, ps) -> {
+          ps.setDouble(1, item.amount());
+          ps.setDate(2, Date.valueOf(item.date()));
+          ps.setString(3, item.transaction_detail());
+          ps.setString(4, name);
+          ps.setString(5, item.fingerprint());
+        }).assertUpdates(false).build();
+  }
+
+  /**
+   * Routes every transaction of a chunk to the writers of the tables it belongs to, with one JDBC
+   * batch per table, all in the chunk transaction. The items routed to each table are counted by
+   * {@link IngestionMetrics}.
+   */
+  @StepScope
+  @Bean
+  ClassifierCompositeItemWriter<FinancialTransaction> routingItemWriter(
+      CategorizingItemWriter categorizingItemWriter,
+      JdbcBatchItemWriter<FinancialTransaction> creditTransactionsWriter,
+      JdbcBatchItemWriter<FinancialTransaction> creditCardPaymentsWriter,
+      IngestionMetrics ingestionMetrics) {
+    ClassifierCompositeItemWriter<FinancialTransaction> writer =
+        new ClassifierCompositeItemWriter<>();
+    writer.setClassifier(new TransactionRouter(
+        ingestionMetrics.countingRouted("financial_transactions", categorizingItemWriter),
+        ingestionMetrics.countingRouted("credit_transactions", creditTransactionsWriter),
+        ingestionMetrics.countingRouted("credit_card_payments", creditCardPaymentsWriter)));
+    return writer;
   }
 
   /**
    * Configures and provides a JobLauncher bean for launching batch jobs.
    *
    * This method creates an instance of TaskExecutorJobLauncher, sets the provided JobRepository, and
-   * assigns a SimpleAsyncTaskExecutor to handle task execution asynchronously. It ensures that all
-   * required properties are set before returning the configured JobLauncher instance.
+   * assigns the JobScheduler to run the jobs asynchronously on its bounded worker pool. It ensures
+   * that all required properties are set before returning the configured JobLauncher instance.
    * 
    * @param jobRepository the JobRepository to be used by the JobLauncher for managing job executions
+   * @param jobScheduler the JobScheduler running the launched jobs
    * @return a fully configured JobLauncher instance
    * @throws Exception if there is an error during the initialization of the JobLauncher
    */
   @Bean
-  JobLauncher jobLauncher(JobRepository jobRepository) throws Exception {
+  JobLauncher jobLauncher(JobRepository jobRepository, JobScheduler jobScheduler)
+      throws Exception {
     TaskExecutorJobLauncher jobLauncher = new TaskExecutorJobLauncher();
     jobLauncher.setJobRepository(jobRepository);
-    jobLauncher.setTaskExecutor(new SimpleAsyncTaskExecutor());
+    jobLauncher.setTaskExecutor(jobScheduler);
     jobLauncher.afterPropertiesSet();
     return jobLauncher;
   }
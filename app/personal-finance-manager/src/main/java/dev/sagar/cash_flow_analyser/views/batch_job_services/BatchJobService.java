@@ -11,10 +11,10 @@ import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobParametersBuilder;
 import org.springframework.batch.core.explore.JobExplorer;
-import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.JobOperator;
 import org.springframework.batch.core.launch.NoSuchJobExecutionException;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 @Service
 class BatchJobService {
@@ -22,7 +22,10 @@ class BatchJobService {
   private static final org.slf4j.Logger logger =
       org.slf4j.LoggerFactory.getLogger(BatchJobService.class);
 
-  private final JobLauncher jobLauncher;
+  // The key of the RunIdIncrementer
+  private static final String RUN_ID = "run.id";
+
+  private final JobScheduler jobScheduler;
 
   private final Job job;
 
@@ -30,10 +33,10 @@ class BatchJobService {
 
   private final JobOperator jobOperator;
 
-  public BatchJobService(JobLauncher jobLauncher, Job job, JobExplorer jobExplorer,
+  public BatchJobService(JobScheduler jobScheduler, Job job, JobExplorer jobExplorer,
       JobOperator jobOperator) {
     this.job = job;
-    this.jobLauncher = jobLauncher;
+    this.jobScheduler = jobScheduler;
     this.jobExplorer = jobExplorer;
     this.jobOperator = jobOperator;
   }
@@ -61,9 +64,29 @@ class BatchJobService {
     return jobDetails.toString();
   }
 
+  @Tool(description = "Retrieves the metrics of a batch job based on the job execution ID: for "
+      + "every step, the items read, filtered and written, the items per second, the time spent "
+      + "reading, processing and writing, the LLM requests and their latency, and the category "
+      + "cache hits and misses.")
+  public String getJobMetrics(
+      @ToolParam(description = "The job execution ID") Long jobExecutionId) throws Exception {
+    logger.info("Fetching job metrics for execution ID: {}", jobExecutionId);
+
+    JobExecution execution = jobExplorer.getJobExecution(jobExecutionId);
+
+    if (execution == null) {
+      throw new NoSuchJobExecutionException(
+          "No JobExecution found for id: [" + jobExecutionId + "]");
+    }
+    return JobMetrics.of(execution).toString();
+  }
+
   @Tool(description = "Triggers a batch job based on the provided file name.")
   public String triggerBatchJobs(
-      @ToolParam(description = "The name of the file") String fileName) throws Exception {
+      @ToolParam(description = "The name of the file") String fileName,
+      @ToolParam(description = "The account the statement belongs to",
+          required = false) String account)
+      throws Exception {
     logger.info("Triggering batch job: {}", fileName);
 
     Path filePath;
@@ -79,18 +102,31 @@ class BatchJobService {
       return new JobDetails("IO error occurred", -1L, -1L, "", null).toString();
     }
 
-    JobExecution execution = jobLauncher.run(job, new JobParametersBuilder()
-        .addString("fileName", filePath.toAbsolutePath().toString()).toJobParameters());
-
-
-    var jobDetails = new JobDetails(execution.getStatus().name(), execution.getId(),
-        execution.getJobInstance().getInstanceId(),
-        execution.getJobInstance().getJobName(), execution.getCreateTime());
+    // A new job instance for every launch, files already ingested are skipped by the job itself
+    JobParametersBuilder parameters =
+        nextJobParameters(account).addString("fileName", filePath.toAbsolutePath().toString());
+    // Queued on the job scheduler, fair-queued by account
+    var jobDetails = jobScheduler.submit(job, parameters.toJobParameters(),
+        JobPriority.INTERACTIVE,
+        StringUtils.hasText(account) ? account : JobScheduler.DEFAULT_SOURCE);
 
-    logger.info("Batch job triggered successfully: {}", jobDetails);
+    logger.info("Batch job triggered: {}", jobDetails);
     return jobDetails.toString();
   }
 
+  /**
+   * The parameters of a new instance of the job: the next run id and the account, which defaults
+   * to {@link JobScheduler#DEFAULT_SOURCE}. Nothing else is taken from the last instance, whose
+   * parameters {@link JobParametersBuilder#getNextJobParameters(Job)} starts from, so that the
+   * account of a previous launch is never carried over.
+   */
+  private JobParametersBuilder nextJobParameters(String account) {
+    Long runId = new JobParametersBuilder(jobExplorer).getNextJobParameters(job)
+        .toJobParameters().getLong(RUN_ID);
+    return new JobParametersBuilder().addLong(RUN_ID, runId).addString("account",
+        StringUtils.hasText(account) ? account.strip() : JobScheduler.DEFAULT_SOURCE, false);
+  }
+
   @Tool(description = "Restarts a failed job based on the job execution ID.")
   public String restartBatchJob(
       @ToolParam(description = "The job execution ID") Long jobExecutionId)
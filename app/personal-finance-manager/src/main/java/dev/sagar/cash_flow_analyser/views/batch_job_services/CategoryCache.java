@@ -0,0 +1,244 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+import dev.sagar.cash_flow_analyser.commonservice.CategoryService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Merchant-to-category cache consulted before the LLM is asked to categorize a transaction.
+ * Entries are keyed by the normalized transaction detail, so that recurring merchants share an
+ * entry regardless of store numbers, card numbers or value dates.
+ *
+ * The cache has two tiers: a bounded in-process LRU map and the persistent
+ * {@code category_cache} table. The table is seeded from the already categorized
+ * {@code financial_transactions} rows and is invalidated whenever the categories loaded by
+ * {@link CategoryService#loadCategories()} change, which is checked before every job.
+ */
+@Component
+class CategoryCache implements JobExecutionListener {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(CategoryCache.class);
+
+  private static final Pattern VALUE_DATE = Pattern.compile("value date:?\\s*[0-9/.-]*");
+  private static final Pattern CARD_NUMBER = Pattern.compile("card\\s+x+[0-9]*");
+  private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^a-z0-9]+");
+  private static final Pattern NUMBERS = Pattern.compile("\\b[a-z]*[0-9]{3,}[a-z0-9]*\\b");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private static final int MAX_KEY_LENGTH = 255;
+
+  private final CategoryService categoryService;
+  private final JdbcClient jdbcClient;
+  private final JdbcTemplate jdbcTemplate;
+  private final Map<String, String> memory;
+
+  private final AtomicLong memoryHits = new AtomicLong();
+  private final AtomicLong databaseHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private volatile String version;
+
+  record CacheStats(long memoryHits, long databaseHits, long misses) {
+
+    double hitRate() {
+      long lookups = memoryHits + databaseHits + misses;
+      return lookups == 0 ? 0 : (double) (memoryHits + databaseHits) / lookups;
+    }
+  }
+
+  public CategoryCache(CategoryService categoryService, JdbcClient jdbcClient,
+      JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry,
+      @Value("${app.categorization.cache.max-size:10000}") int maxSize) {
+    this.categoryService = categoryService;
+    this.jdbcClient = jdbcClient;
+    this.jdbcTemplate = jdbcTemplate;
+    this.memory = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > maxSize;
+      }
+    });
+
+    FunctionCounter.builder("categorization.cache.lookups", memoryHits, AtomicLong::get)
+        .tag("tier", "memory").tag("result", "hit").register(meterRegistry);
+    FunctionCounter.builder("categorization.cache.lookups", databaseHits, AtomicLong::get)
+        .tag("tier", "database").tag("result", "hit").register(meterRegistry);
+    FunctionCounter.builder("categorization.cache.lookups", misses, AtomicLong::get)
+        .tag("tier", "database").tag("result", "miss").register(meterRegistry);
+    Gauge.builder("categorization.cache.size", memory, Map::size).tag("tier", "memory")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Normalizes a transaction detail into the key used by the cache: lower case, without
+   * punctuation, card numbers, value dates and long digit runs such as store or reference numbers.
+   */
+  static String merchantKey(String transactionDetail) {
+    String key = transactionDetail.toLowerCase(Locale.ROOT);
+    key = VALUE_DATE.matcher(key).replaceAll(" ");
+    key = CARD_NUMBER.matcher(key).replaceAll(" ");
+    key = NON_ALPHANUMERIC.matcher(key).replaceAll(" ");
+    key = NUMBERS.matcher(key).replaceAll(" ");
+    key = WHITESPACE.matcher(key).replaceAll(" ").strip();
+    return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+  }
+
+  @PostConstruct
+  void initialize() {
+    refresh();
+  }
+
+  @Override
+  public void beforeJob(JobExecution jobExecution) {
+    categoryService.loadCategories();
+    refresh();
+  }
+
+  @Override
+  public void afterJob(JobExecution jobExecution) {
+    CacheStats stats = stats();
+    logger.info("Category cache after job {}: {} memory hits, {} database hits, {} misses ({}%)",
+        jobExecution.getId(), stats.memoryHits(), stats.databaseHits(), stats.misses(),
+        Math.round(stats.hitRate() * 100));
+  }
+
+  /**
+   * Looks up the cached categories for the given transaction details.
+   *
+   * @return the cached category for each detail, or {@code null} where there is none
+   */
+  String[] getAll(List<String> transactionDetails) {
+    String[] categories = new String[transactionDetails.size()];
+    Map<String, List<Integer>> pending = new HashMap<>();
+
+    for (int i = 0; i < categories.length; i++) {
+      String key = merchantKey(transactionDetails.get(i));
+      if (key.isEmpty()) {
+        misses.incrementAndGet();
+        continue;
+      }
+      categories[i] = memory.get(key);
+      if (categories[i] != null) {
+        memoryHits.incrementAndGet();
+      } else {
+        pending.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+      }
+    }
+
+    if (!pending.isEmpty()) {
+      jdbcClient.sql(
+          "SELECT merchant_key, category FROM category_cache WHERE merchant_key IN (:keys) AND categories_version = :version")
+          .param("keys", pending.keySet()).param("version", version).query(rs -> {
+            String key = rs.getString("merchant_key");
+            String category = rs.getString("category");
+            memory.put(key, category);
+            for (int index : pending.remove(key)) {
+              categories[index] = category;
+              databaseHits.incrementAndGet();
+            }
+          });
+      pending.values().forEach(indexes -> misses.addAndGet(indexes.size()));
+    }
+    return categories;
+  }
+
+  String get(String transactionDetail) {
+    return getAll(List.of(transactionDetail))[0];
+  }
+
+  /**
+   * Caches the category of a transaction detail in both tiers. Categories that are not one of
+   * the loaded categories (such as "Other") are not cached.
+   */
+  void put(String transactionDetail, String category) {
+    String key = merchantKey(transactionDetail);
+    String knownCategory = categoryService.findCategory(category);
+    if (key.isEmpty() || knownCategory == null) {
+      return;
+    }
+    memory.put(key, knownCategory);
+    jdbcClient.sql("""
+        INSERT INTO category_cache (merchant_key, category, categories_version)
+        VALUES (:key, :category, :version)
+        ON CONFLICT (merchant_key) DO UPDATE
+        SET category = EXCLUDED.category, categories_version = EXCLUDED.categories_version,
+            updated_at = NOW()
+        """).param("key", key).param("category", knownCategory).param("version", version)
+        .update();
+  }
+
+  CacheStats stats() {
+    return new CacheStats(memoryHits.get(), databaseHits.get(), misses.get());
+  }
+
+  /**
+   * Drops every entry cached for a previous set of categories and seeds the persistent tier from
+   * the existing transactions if it is empty.
+   */
+  synchronized void refresh() {
+    String currentVersion = categoryService.getVersion();
+    if (currentVersion.equals(version)) {
+      return;
+    }
+    memory.clear();
+    int purged = jdbcClient
+        .sql("DELETE FROM category_cache WHERE categories_version <> :version")
+        .param("version", currentVersion).update();
+    if (purged > 0) {
+      logger.info("Categories changed, purged {} cached categorizations", purged);
+    }
+    version = currentVersion;
+
+    Long cached =
+        jdbcClient.sql("SELECT COUNT(*) FROM category_cache").query(Long.class).single();
+    if (cached == 0) {
+      seed();
+    }
+  }
+
+  private void seed() {
+    Map<String, Map<String, Long>> votes = new HashMap<>();
+    jdbcClient.sql(
+        "SELECT transaction_detail, category, COUNT(*) AS occurrences FROM financial_transactions GROUP BY transaction_detail, category")
+        .query(rs -> {
+          String key = merchantKey(rs.getString("transaction_detail"));
+          String category = categoryService.findCategory(rs.getString("category"));
+          if (!key.isEmpty() && category != null) {
+            votes.computeIfAbsent(key, k -> new HashMap<>()).merge(category,
+                rs.getLong("occurrences"), Long::sum);
+          }
+        });
+
+    List<Object[]> rows = new ArrayList<>(votes.size());
+    votes.forEach((key, categoryVotes) -> rows.add(new Object[] {key,
+        Collections.max(categoryVotes.entrySet(), Map.Entry.comparingByValue()).getKey(),
+        version}));
+
+    jdbcTemplate.batchUpdate("""
+        INSERT INTO category_cache (merchant_key, category, categories_version)
+        VALUES (?, ?, ?)
+        ON CONFLICT (merchant_key) DO NOTHING
+        """, rows);
+    logger.info("Seeded the category cache with {} merchants", rows.size());
+  }
+
+}
@@ -0,0 +1,95 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import dev.sagar.cash_flow_analyser.dto.FinancialTransaction;
+
+/**
+ * Fingerprints the transactions as they are read, see {@link TransactionFingerprint}. The
+ * occurrence of a transaction is its rank among the identical transactions of the file, in the
+ * order of the lines.
+ *
+ * The occurrences are assigned when reading rather than when processing, as a chunk retried
+ * after a rollback processes its items again but does not read them again. When a restarted
+ * step opens the reader, the counts of the transactions read before the restart point are
+ * rebuilt by reading them again from a new reader of the file.
+ */
+class FingerprintingItemReader extends ItemStreamSupport
+    implements ItemStreamReader<FinancialTransaction> {
+
+  private static final String READ_COUNT = "read.count";
+
+  private final Supplier<ItemStreamReader<FinancialTransaction>> fileReader;
+  private final String account;
+  private final ItemStreamReader<FinancialTransaction> delegate;
+  private final Map<String, Integer> occurrences = new HashMap<>();
+  private long readCount;
+
+  /**
+   * @param fileReader creates a reader of the whole file
+   */
+  FingerprintingItemReader(Supplier<ItemStreamReader<FinancialTransaction>> fileReader,
+      String account) {
+    this.fileReader = fileReader;
+    this.account = account;
+    this.delegate = fileReader.get();
+    setName("fingerprintingItemReader");
+  }
+
+  @Override
+  public void open(ExecutionContext executionContext) {
+    occurrences.clear();
+    readCount = executionContext.getLong(getExecutionContextKey(READ_COUNT), 0);
+    if (readCount > 0) {
+      ItemStreamReader<FinancialTransaction> reader = fileReader.get();
+      reader.open(new ExecutionContext());
+      try {
+        FinancialTransaction transaction;
+        for (long i = 0; i < readCount && (transaction = reader.read()) != null; i++) {
+          occurrences.merge(key(transaction), 1, Integer::sum);
+        }
+      } catch (Exception e) {
+        throw new ItemStreamException("Failed to count the transactions before the restart point",
+            e);
+      } finally {
+        reader.close();
+      }
+    }
+    delegate.open(executionContext);
+  }
+
+  @Override
+  public void update(ExecutionContext executionContext) {
+    delegate.update(executionContext);
+    executionContext.putLong(getExecutionContextKey(READ_COUNT), readCount);
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+  }
+
+  @Override
+  public FinancialTransaction read() throws Exception {
+    FinancialTransaction transaction = delegate.read();
+    if (transaction == null) {
+      return null;
+    }
+    readCount++;
+    String key = key(transaction);
+    return transaction
+        .withFingerprint(TransactionFingerprint.of(key, occurrences.merge(key, 1, Integer::sum)));
+  }
+
+  private String key(FinancialTransaction transaction) {
+    return TransactionFingerprint.key(transaction.date(), transaction.amount(),
+        transaction.transaction_detail(), account);
+  }
+
+}
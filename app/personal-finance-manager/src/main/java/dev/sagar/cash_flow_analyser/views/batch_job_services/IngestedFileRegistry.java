@@ -0,0 +1,81 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps track of the statement files that were already ingested, by SHA-256 of their content.
+ * As a decider, it sends jobs for a file that was already ingested straight to the end of the
+ * job; as a listener, it records the file once the job has completed.
+ */
+@Component
+class IngestedFileRegistry implements JobExecutionDecider, JobExecutionListener {
+
+  static final String ALREADY_INGESTED = "ALREADY_INGESTED";
+
+  static final String NEW_FILE = "NEW_FILE";
+
+  private static final String FILE_SHA256_KEY = "fileSha256";
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(IngestedFileRegistry.class);
+
+  private final JdbcClient jdbcClient;
+
+  IngestedFileRegistry(JdbcClient jdbcClient) {
+    this.jdbcClient = jdbcClient;
+  }
+
+  @Override
+  public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution) {
+    String sha256;
+    try {
+      sha256 = TransactionFingerprint.ofFile(statementFile(jobExecution));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    jobExecution.getExecutionContext().putString(FILE_SHA256_KEY, sha256);
+
+    boolean ingested =
+        jdbcClient.sql("SELECT count(*) FROM ingested_files WHERE sha256 = :sha256")
+            .param("sha256", sha256).query(Long.class).single() > 0;
+    if (ingested) {
+      logger.info("File {} (SHA-256 {}) was already ingested, skipping it",
+          jobExecution.getJobParameters().getString("fileName"), sha256);
+      return new FlowExecutionStatus(ALREADY_INGESTED);
+    }
+    return new FlowExecutionStatus(NEW_FILE);
+  }
+
+  @Override
+  public void afterJob(JobExecution jobExecution) {
+    String sha256 = jobExecution.getExecutionContext().getString(FILE_SHA256_KEY, null);
+    if (jobExecution.getStatus() == BatchStatus.COMPLETED && sha256 != null) {
+      jdbcClient.sql("""
+          INSERT INTO ingested_files (sha256, source_file) VALUES (:sha256, :sourceFile)
+          ON CONFLICT (sha256) DO NOTHING
+          """)
+        .param("sha256", sha256)
+        .param("sourceFile", jobExecution.getJobParameters().getString("fileName"))
+        .update();
+    }
+  }
+
+  private static Path statementFile(JobExecution jobExecution) {
+    String tempFilePath = jobExecution.getExecutionContext().getString("tempFilePath", null);
+    return Paths.get(tempFilePath != null ? tempFilePath
+        : jobExecution.getJobParameters().getString("fileName"));
+  }
+
+}
@@ -0,0 +1,306 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemProcessListener;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Instruments the chunk-oriented step, on top of the {@code spring.batch.*} metrics published by
+ * Spring Batch itself: the time every chunk spends reading, processing and writing, the items
+ * written, the items filtered out by each processor, the items routed to each table, the LLM
+ * requests made for the step and the category cache lookups. The meters are exposed by the actuator, under {@code /actuator/metrics}.
+ *
+ * The totals of every step execution are also saved in its execution context (under
+ * {@code metrics.*}), where {@link JobMetrics} reads them back. The totals are kept per step
+ * execution, found through the step context of the calling thread, so that jobs running at the
+ * same time do not mix theirs, apart from the cache lookups, which are counted for the whole
+ * cache.
+ */
+@Component
+class IngestionMetrics implements StepExecutionListener, ChunkListener,
+    ItemReadListener<Object>, ItemProcessListener<Object, Object>, ItemWriteListener<Object> {
+
+  static final String PREFIX = "metrics.";
+  static final String CHUNKS = PREFIX + "chunks";
+  static final String READ_NANOS = PREFIX + "read.nanos";
+  static final String PROCESS_NANOS = PREFIX + "process.nanos";
+  static final String WRITE_NANOS = PREFIX + "write.nanos";
+  static final String LLM_REQUESTS = PREFIX + "llm.requests";
+  static final String LLM_ITEMS = PREFIX + "llm.items";
+  static final String LLM_NANOS = PREFIX + "llm.nanos";
+  static final String CACHE_HITS = PREFIX + "cache.hits";
+  static final String CACHE_MISSES = PREFIX + "cache.misses";
+  static final String FILTERED = PREFIX + "filtered.";
+  static final String ROUTED = PREFIX + "routed.";
+
+  private final MeterRegistry meterRegistry;
+  private final CategoryCache categoryCache;
+  private final Map<Long, StepTotals> steps = new ConcurrentHashMap<>();
+
+  IngestionMetrics(MeterRegistry meterRegistry, CategoryCache categoryCache) {
+    this.meterRegistry = meterRegistry;
+    this.categoryCache = categoryCache;
+  }
+
+  /**
+   * Registers the metrics as a listener of every kind the step supports.
+   */
+  <B extends SimpleStepBuilder<?, ?>> B instrument(B step) {
+    step.listener((StepExecutionListener) this);
+    step.listener((ChunkListener) this);
+    step.listener((ItemReadListener<Object>) this);
+    step.listener((ItemProcessListener<Object, Object>) this);
+    step.listener((ItemWriteListener<Object>) this);
+    return step;
+  }
+
+  /**
+   * Wraps a processor of a composite, counting the items it filters out.
+   */
+  <I, O> ItemProcessor<I, O> counting(ItemProcessor<I, O> delegate) {
+    String processor = delegate.getClass().getSimpleName();
+    Counter filtered = Counter.builder("ingestion.filtered")
+        .description("Items filtered out by a processor").tag("processor", processor)
+        .register(meterRegistry);
+    return item -> {
+      O result = delegate.process(item);
+      if (result == null) {
+        filtered.increment();
+        StepTotals totals = current();
+        if (totals != null) {
+          totals.add(FILTERED + processor, 1);
+        }
+      }
+      return result;
+    };
+  }
+
+  /**
+   * Wraps the writer of a table the {@link TransactionRouter} routes to, counting the items it
+   * writes. The processors only mark the credits and the credit card payments for the router, so
+   * that is where they are told apart.
+   */
+  <T> ItemWriter<T> countingRouted(String table, ItemWriter<T> delegate) {
+    Counter routed = Counter.builder("ingestion.routed").description("Items routed to a table")
+        .tag("table", table).register(meterRegistry);
+    return items -> {
+      delegate.write(items);
+      routed.increment(items.size());
+      StepTotals totals = current();
+      if (totals != null) {
+        totals.add(ROUTED + table, items.size());
+      }
+    };
+  }
+
+  /**
+   * Times an LLM request categorizing the given number of items.
+   */
+  <T> T timeLlmRequest(int items, Supplier<T> request) {
+    long start = System.nanoTime();
+    try {
+      return request.get();
+    } finally {
+      long nanos = System.nanoTime() - start;
+      Timer.builder("categorization.llm.latency").description("Time an LLM request took")
+          .tag("request", items == 1 ? "item" : "batch").register(meterRegistry)
+          .record(nanos, TimeUnit.NANOSECONDS);
+      Timer.builder("categorization.llm.item.latency")
+          .description("Time an LLM request took per item categorized").register(meterRegistry)
+          .record(nanos / Math.max(1, items), TimeUnit.NANOSECONDS);
+      StepTotals totals = current();
+      if (totals != null) {
+        totals.add(LLM_REQUESTS, 1);
+        totals.add(LLM_ITEMS, items);
+        totals.add(LLM_NANOS, nanos);
+      }
+    }
+  }
+
+  @Override
+  public void beforeStep(StepExecution stepExecution) {
+    steps.put(stepExecution.getId(), new StepTotals(stepExecution, categoryCache.stats()));
+  }
+
+  @Override
+  public ExitStatus afterStep(StepExecution stepExecution) {
+    StepTotals totals = steps.remove(stepExecution.getId());
+    if (totals != null) {
+      totals.saveTo(stepExecution.getExecutionContext(), categoryCache.stats());
+    }
+    return null;
+  }
+
+  @Override
+  public void beforeChunk(ChunkContext context) {
+    StepTotals totals = steps.get(context.getStepContext().getStepExecution().getId());
+    if (totals != null) {
+      totals.chunkRead = 0;
+      totals.chunkProcess = 0;
+      totals.chunkWrite = 0;
+    }
+  }
+
+  @Override
+  public void afterChunk(ChunkContext context) {
+    StepExecution stepExecution = context.getStepContext().getStepExecution();
+    StepTotals totals = steps.get(stepExecution.getId());
+    if (totals == null) {
+      return;
+    }
+    totals.readTimer.record(totals.chunkRead, TimeUnit.NANOSECONDS);
+    totals.processTimer.record(totals.chunkProcess, TimeUnit.NANOSECONDS);
+    totals.writeTimer.record(totals.chunkWrite, TimeUnit.NANOSECONDS);
+    totals.add(CHUNKS, 1);
+    totals.add(READ_NANOS, totals.chunkRead);
+    totals.add(PROCESS_NANOS, totals.chunkProcess);
+    totals.add(WRITE_NANOS, totals.chunkWrite);
+    // Saved with the next chunk, so that the totals of a running step can be looked at
+    totals.saveTo(stepExecution.getExecutionContext(), categoryCache.stats());
+  }
+
+  @Override
+  public void beforeRead() {
+    start();
+  }
+
+  @Override
+  public void afterRead(Object item) {
+    StepTotals totals = current();
+    if (totals != null) {
+      totals.chunkRead += System.nanoTime() - totals.phaseStart;
+    }
+  }
+
+  @Override
+  public void onReadError(Exception ex) {
+    afterRead(null);
+  }
+
+  @Override
+  public void beforeProcess(Object item) {
+    start();
+  }
+
+  @Override
+  public void afterProcess(Object item, Object result) {
+    StepTotals totals = current();
+    if (totals != null) {
+      totals.chunkProcess += System.nanoTime() - totals.phaseStart;
+    }
+  }
+
+  @Override
+  public void onProcessError(Object item, Exception e) {
+    afterProcess(item, null);
+  }
+
+  @Override
+  public void beforeWrite(Chunk<? extends Object> items) {
+    start();
+  }
+
+  @Override
+  public void afterWrite(Chunk<? extends Object> items) {
+    StepTotals totals = current();
+    if (totals != null) {
+      totals.chunkWrite += System.nanoTime() - totals.phaseStart;
+      totals.itemsWritten.increment(items.size());
+    }
+  }
+
+  @Override
+  public void onWriteError(Exception exception, Chunk<? extends Object> items) {
+    StepTotals totals = current();
+    if (totals != null) {
+      totals.chunkWrite += System.nanoTime() - totals.phaseStart;
+    }
+  }
+
+  private void start() {
+    StepTotals totals = current();
+    if (totals != null) {
+      totals.phaseStart = System.nanoTime();
+    }
+  }
+
+  private StepTotals current() {
+    StepContext context = StepSynchronizationManager.getContext();
+    return context != null ? steps.get(context.getStepExecution().getId()) : null;
+  }
+
+  /**
+   * The totals of a step execution. The chunk fields are only used by the step's own thread.
+   */
+  private final class StepTotals {
+
+    private final Map<String, LongAdder> totals = new ConcurrentHashMap<>();
+    private final CategoryCache.CacheStats cacheAtStart;
+    private final Timer readTimer;
+    private final Timer processTimer;
+    private final Timer writeTimer;
+    private final Counter itemsWritten;
+    private long phaseStart;
+    private long chunkRead;
+    private long chunkProcess;
+    private long chunkWrite;
+
+    StepTotals(StepExecution stepExecution, CategoryCache.CacheStats cacheAtStart) {
+      this.cacheAtStart = cacheAtStart;
+      String step = stepExecution.getStepName();
+      this.readTimer = chunkTimer("ingestion.chunk.read", "Time a chunk spent reading", step);
+      this.processTimer =
+          chunkTimer("ingestion.chunk.process", "Time a chunk spent processing", step);
+      this.writeTimer = chunkTimer("ingestion.chunk.write", "Time a chunk spent writing", step);
+      this.itemsWritten = Counter.builder("ingestion.items").description("Items written")
+          .tag("step", step).register(meterRegistry);
+      // Carries on from the totals of the execution this one restarts
+      stepExecution.getExecutionContext().entrySet().stream()
+          .filter(entry -> entry.getKey().startsWith(PREFIX) && entry.getValue() instanceof Long)
+          .filter(entry -> !entry.getKey().equals(CACHE_HITS)
+              && !entry.getKey().equals(CACHE_MISSES))
+          .forEach(entry -> add(entry.getKey(), (Long) entry.getValue()));
+    }
+
+    private Timer chunkTimer(String name, String description, String step) {
+      return Timer.builder(name).description(description).tag("step", step)
+          .register(meterRegistry);
+    }
+
+    void add(String key, long amount) {
+      totals.computeIfAbsent(key, k -> new LongAdder()).add(amount);
+    }
+
+    void saveTo(ExecutionContext context, CategoryCache.CacheStats cacheNow) {
+      totals.forEach((key, total) -> context.putLong(key, total.sum()));
+      context.putLong(CACHE_HITS, cacheNow.memoryHits() + cacheNow.databaseHits()
+          - cacheAtStart.memoryHits() - cacheAtStart.databaseHits());
+      context.putLong(CACHE_MISSES, cacheNow.misses() - cacheAtStart.misses());
+    }
+
+  }
+
+}
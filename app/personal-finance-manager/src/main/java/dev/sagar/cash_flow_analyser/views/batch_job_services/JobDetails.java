@@ -2,6 +2,8 @@ package dev.sagar.cash_flow_analyser.views.batch_job_services;
 
 import java.time.LocalDateTime;
 
+import org.springframework.batch.core.JobExecution;
+
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
@@ -10,8 +12,21 @@ record JobDetails(String status, Long jobExecutionId,
     LocalDateTime startTime, @JsonInclude(Include.NON_NULL) LocalDateTime endTime,
     @JsonInclude(Include.NON_NULL) LocalDateTime lastUpdated) {
 
+  static final String QUEUED = "QUEUED";
+
+  static final String REJECTED = "REJECTED";
+
   public JobDetails(String status, Long jobExecutionId, Long jobInstanceId,
       String jobName, LocalDateTime startTime) {
     this(status, jobExecutionId, jobInstanceId, jobName, startTime, null, null);
   }
+
+  static JobDetails queued(JobExecution execution) {
+    return new JobDetails(QUEUED, execution.getId(), execution.getJobInstance().getInstanceId(),
+        execution.getJobInstance().getJobName(), execution.getCreateTime());
+  }
+
+  static JobDetails rejected(String jobName) {
+    return new JobDetails(REJECTED, -1L, null, jobName, null);
+  }
 }
@@ -0,0 +1,18 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+/**
+ * The priority of a job waiting in the {@link JobScheduler}, highest first.
+ */
+enum JobPriority {
+
+  /**
+   * A statement someone asked to load and is waiting for.
+   */
+  INTERACTIVE,
+
+  /**
+   * Historical loads and statements picked up in the background.
+   */
+  BACKFILL;
+
+}
@@ -0,0 +1,233 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Runs the batch jobs on a bounded number of worker threads, so that a burst of launches does not
+ * start as many jobs competing for the connection pool and the LLM quota.
+ *
+ * Launched jobs wait in a queue ordered by {@link JobPriority}. Within a priority, the sources
+ * (accounts) take turns, so that one account queueing many statements does not hold back the
+ * others. A launch is refused when the queue holds {@code capacity} jobs, or
+ * {@code maxQueuedPerSource} jobs of the same source.
+ *
+ * Also used as the task executor of the job launcher, so that restarted jobs are queued too.
+ */
+@Component
+class JobScheduler implements TaskExecutor, DisposableBean {
+
+  static final String DEFAULT_SOURCE = "default";
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(JobScheduler.class);
+
+  private final JobRepository jobRepository;
+  private final int capacity;
+  private final int maxQueuedPerSource;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  // The queued jobs of every priority, per source in the order the sources take turns
+  private final Map<JobPriority, LinkedHashMap<String, ArrayDeque<QueuedJob>>> queues =
+      new EnumMap<>(JobPriority.class);
+  private final Map<JobPriority, Integer> queuedPerPriority = new EnumMap<>(JobPriority.class);
+  private final Map<String, Integer> queuedPerSource = new HashMap<>();
+  private final AtomicInteger running = new AtomicInteger();
+  private final List<Thread> workers = new ArrayList<>();
+  private final Map<JobPriority, Timer> waitTimers = new EnumMap<>(JobPriority.class);
+  private final Counter rejected;
+
+  JobScheduler(JobRepository jobRepository, MeterRegistry meterRegistry,
+      @Value("${app.batch.jobs.max-concurrent:2}") int maxConcurrent,
+      @Value("${app.batch.jobs.queue-capacity:50}") int capacity,
+      @Value("${app.batch.jobs.max-queued-per-source:20}") int maxQueuedPerSource) {
+    this.jobRepository = jobRepository;
+    this.capacity = capacity;
+    this.maxQueuedPerSource = maxQueuedPerSource;
+    for (JobPriority priority : JobPriority.values()) {
+      queues.put(priority, new LinkedHashMap<>());
+      queuedPerPriority.put(priority, 0);
+      Gauge.builder("batch.jobs.queued", this, scheduler -> scheduler.queued(priority))
+          .description("Jobs waiting for a worker").tag("priority", priority.name())
+          .register(meterRegistry);
+      waitTimers.put(priority,
+          Timer.builder("batch.jobs.wait")
+              .description("Time from launching a job to a worker starting it")
+              .tag("priority", priority.name()).register(meterRegistry));
+    }
+    Gauge.builder("batch.jobs.running", running, AtomicInteger::get)
+        .description("Jobs being run by the workers").register(meterRegistry);
+    this.rejected = Counter.builder("batch.jobs.rejected")
+        .description("Launches refused because the queue was full").register(meterRegistry);
+    for (int i = 0; i < maxConcurrent; i++) {
+      workers.add(Thread.ofVirtual().name("batch-job-worker-" + i).start(this::work));
+    }
+  }
+
+  /**
+   * Creates the job execution and queues it.
+   *
+   * @param source the source the job is fair-queued by
+   * @return the details of the queued job execution, or a {@code REJECTED} status if the queue
+   *         is full
+   */
+  JobDetails submit(Job job, JobParameters parameters, JobPriority priority, String source)
+      throws JobExecutionException {
+    if (!admits(source)) {
+      rejected.increment();
+      logger.warn("Job queue is full, refused to launch {} for {}", job.getName(), source);
+      return JobDetails.rejected(job.getName());
+    }
+
+    TaskExecutorJobLauncher jobLauncher = new TaskExecutorJobLauncher();
+    jobLauncher.setJobRepository(jobRepository);
+    jobLauncher.setTaskExecutor(task -> enqueue(new QueuedJob(task, priority, source)));
+    try {
+      jobLauncher.afterPropertiesSet();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+
+    JobExecution execution = jobLauncher.run(job, parameters);
+    if (execution.getStatus() == BatchStatus.FAILED) {
+      // Admitted, but the queue filled up in the meantime
+      rejected.increment();
+      return JobDetails.rejected(job.getName());
+    }
+    logger.info("Queued job execution {} of {} for {} with priority {}", execution.getId(),
+        job.getName(), source, priority);
+    return JobDetails.queued(execution);
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    enqueue(new QueuedJob(task, JobPriority.INTERACTIVE, DEFAULT_SOURCE));
+  }
+
+  private boolean admits(String source) {
+    lock.lock();
+    try {
+      return queuedPerPriority.values().stream().mapToInt(Integer::intValue).sum() < capacity
+          && queuedPerSource.getOrDefault(source, 0) < maxQueuedPerSource;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void enqueue(QueuedJob job) {
+    lock.lock();
+    try {
+      if (!admits(job.source())) {
+        throw new TaskRejectedException("Job queue is full");
+      }
+      queues.get(job.priority()).computeIfAbsent(job.source(), source -> new ArrayDeque<>())
+          .add(job);
+      queuedPerPriority.merge(job.priority(), 1, Integer::sum);
+      queuedPerSource.merge(job.source(), 1, Integer::sum);
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes the next job of the highest priority that has any, from the source whose turn it is,
+   * and moves that source to the end of the line.
+   */
+  private QueuedJob take() throws InterruptedException {
+    lock.lock();
+    try {
+      while (true) {
+        for (JobPriority priority : JobPriority.values()) {
+          Iterator<Map.Entry<String, ArrayDeque<QueuedJob>>> sources =
+              queues.get(priority).entrySet().iterator();
+          if (sources.hasNext()) {
+            Map.Entry<String, ArrayDeque<QueuedJob>> next = sources.next();
+            sources.remove();
+            QueuedJob job = next.getValue().poll();
+            if (!next.getValue().isEmpty()) {
+              queues.get(priority).put(next.getKey(), next.getValue());
+            }
+            queuedPerPriority.merge(priority, -1, Integer::sum);
+            queuedPerSource.computeIfPresent(job.source(),
+                (source, count) -> count > 1 ? count - 1 : null);
+            return job;
+          }
+        }
+        notEmpty.await();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void work() {
+    while (true) {
+      QueuedJob job;
+      try {
+        job = take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      waitTimers.get(job.priority()).record(System.nanoTime() - job.queuedAt(),
+          TimeUnit.NANOSECONDS);
+      running.incrementAndGet();
+      try {
+        job.task().run();
+      } catch (RuntimeException e) {
+        logger.error("Job of {} failed", job.source(), e);
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+  }
+
+  private int queued(JobPriority priority) {
+    lock.lock();
+    try {
+      return queuedPerPriority.get(priority);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    workers.forEach(Thread::interrupt);
+  }
+
+  private record QueuedJob(Runnable task, JobPriority priority, String source, long queuedAt) {
+
+    QueuedJob(Runnable task, JobPriority priority, String source) {
+      this(task, priority, source, System.nanoTime());
+    }
+
+  }
+
+}
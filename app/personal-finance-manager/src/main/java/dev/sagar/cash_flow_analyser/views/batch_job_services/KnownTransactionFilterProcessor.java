@@ -0,0 +1,53 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import dev.sagar.cash_flow_analyser.dto.FinancialTransaction;
+
+/**
+ * Filters out the transactions that were already ingested, so that re-running a file or loading
+ * an overlapping statement only processes, categorizes and writes the new transactions. The
+ * transactions come fingerprinted by the {@link FingerprintingItemReader}, and the known
+ * fingerprints are loaded once per transaction date.
+ */
+class KnownTransactionFilterProcessor
+    implements ItemProcessor<FinancialTransaction, FinancialTransaction> {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(KnownTransactionFilterProcessor.class);
+
+  private final JdbcClient jdbcClient;
+  private final Map<LocalDate, Set<String>> knownFingerprints = new HashMap<>();
+
+  KnownTransactionFilterProcessor(JdbcClient jdbcClient) {
+    this.jdbcClient = jdbcClient;
+  }
+
+  @Override
+  public FinancialTransaction process(FinancialTransaction transaction) throws Exception {
+    if (knownFingerprints.computeIfAbsent(transaction.date(), this::loadFingerprints)
+        .contains(transaction.fingerprint())) {
+      logger.debug("Skipping already ingested transaction: {}", transaction);
+      return null;
+    }
+    return transaction;
+  }
+
+  private Set<String> loadFingerprints(LocalDate date) {
+    return new HashSet<>(jdbcClient.sql("""
+        SELECT fingerprint FROM financial_transactions
+        WHERE date = :date AND fingerprint IS NOT NULL
+        UNION SELECT fingerprint FROM credit_transactions
+        WHERE date = :date AND fingerprint IS NOT NULL
+        UNION SELECT fingerprint FROM credit_card_payments
+        WHERE date = :date AND fingerprint IS NOT NULL
+        """).param("date", date).query(String.class).list());
+  }
+
+}
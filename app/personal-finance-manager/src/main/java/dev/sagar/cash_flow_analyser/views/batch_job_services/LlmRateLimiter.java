@@ -0,0 +1,170 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Limits the categorization requests sent to the LLM, so that the batch jobs and the statement
+ * uploads stay at the provider's rate limits instead of running into them. A single instance is
+ * shared by all the callers of the {@link CategorizeTransactionProcessor}.
+ *
+ * The number of outstanding requests adapts to the provider (AIMD): the limit grows by one
+ * request per round of successful requests, up to {@code maxInFlight}, and is multiplied by
+ * {@code backoffRatio}, down to {@code minInFlight}, when a request is throttled (see
+ * {@link LlmThrottledException}). Only requests started after the last decrease cut the limit
+ * again, so a burst of throttled responses counts as one. No request is sent before the
+ * {@code Retry-After} of a throttled response has passed. Requests are also started at no more
+ * than {@code requestsPerSecond} on average, in bursts of up to {@code burst} requests (token
+ * bucket).
+ */
+@Component
+class LlmRateLimiter {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(LlmRateLimiter.class);
+
+  private final int minInFlight;
+  private final int maxInFlight;
+  private final double backoffRatio;
+  private final double requestsPerSecond;
+  private final double burst;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final Counter throttled;
+  private volatile double limit;
+  private volatile int inFlight;
+  private long pausedUntilNanos;
+  private long lastDecreaseNanos;
+  private double tokens;
+  private long lastRefillNanos;
+
+  LlmRateLimiter(@Value("${app.categorization.llm.initial-in-flight:4}") int initialInFlight,
+      @Value("${app.categorization.llm.min-in-flight:1}") int minInFlight,
+      @Value("${app.categorization.llm.max-in-flight:16}") int maxInFlight,
+      @Value("${app.categorization.llm.backoff-ratio:0.5}") double backoffRatio,
+      @Value("${app.categorization.llm.requests-per-second:5}") double requestsPerSecond,
+      @Value("${app.categorization.llm.burst:5}") int burst, MeterRegistry meterRegistry) {
+    this.minInFlight = minInFlight;
+    this.maxInFlight = maxInFlight;
+    this.backoffRatio = backoffRatio;
+    this.requestsPerSecond = requestsPerSecond;
+    this.burst = burst;
+    this.limit = Math.clamp(initialInFlight, minInFlight, maxInFlight);
+    this.tokens = burst;
+    this.lastRefillNanos = System.nanoTime();
+    this.lastDecreaseNanos = lastRefillNanos;
+    this.pausedUntilNanos = lastRefillNanos;
+    Gauge.builder("categorization.llm.in-flight", this, limiter -> limiter.inFlight)
+        .description("LLM requests outstanding").register(meterRegistry);
+    Gauge.builder("categorization.llm.limit", this, limiter -> limiter.limit)
+        .description("LLM requests allowed to be outstanding").register(meterRegistry);
+    this.throttled = Counter.builder("categorization.llm.throttled")
+        .description("LLM requests refused by the provider with a 429 or 5xx")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Sends a request to the LLM once a request slot and a token are available.
+   *
+   * @param request the request to send
+   * @return the result of the request
+   * @throws LlmThrottledException if the provider throttled the request
+   */
+  <T> T execute(Supplier<T> request) {
+    long startedAt = acquire();
+    boolean succeeded = false;
+    try {
+      T result = request.get();
+      succeeded = true;
+      return result;
+    } catch (LlmThrottledException e) {
+      onThrottled(startedAt, e);
+      throw e;
+    } finally {
+      release(succeeded);
+    }
+  }
+
+  int limit() {
+    return (int) limit;
+  }
+
+  /**
+   * Waits for the end of any pause, a free slot under the current limit and a token.
+   *
+   * @return the time the request was started at, in {@link System#nanoTime()}
+   */
+  private long acquire() {
+    lock.lock();
+    try {
+      while (true) {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * requestsPerSecond / 1e9);
+        lastRefillNanos = now;
+        if (now - pausedUntilNanos < 0) {
+          changed.awaitNanos(pausedUntilNanos - now);
+        } else if (inFlight >= (int) limit) {
+          changed.await();
+        } else if (tokens < 1) {
+          long waitNanos = (long) Math.ceil((1 - tokens) / requestsPerSecond * 1e9);
+          logger.debug("LLM request rate limit reached, waiting {} ms", waitNanos / 1_000_000);
+          changed.awaitNanos(waitNanos);
+        } else {
+          tokens--;
+          inFlight++;
+          return now;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to send an LLM request", e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(boolean succeeded) {
+    lock.lock();
+    try {
+      inFlight--;
+      if (succeeded) {
+        // Additive increase: one more slot once a whole round of requests has succeeded
+        limit = Math.min(maxInFlight, limit + 1 / limit);
+      }
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void onThrottled(long startedAt, LlmThrottledException e) {
+    throttled.increment();
+    lock.lock();
+    try {
+      long now = System.nanoTime();
+      if (startedAt - lastDecreaseNanos >= 0) {
+        limit = Math.max(minInFlight, limit * backoffRatio);
+        lastDecreaseNanos = now;
+      }
+      if (e.retryAfter() != null) {
+        long resumeAt = now + e.retryAfter().toNanos();
+        if (resumeAt - pausedUntilNanos > 0) {
+          pausedUntilNanos = resumeAt;
+        }
+      }
+      logger.warn("LLM request throttled ({}), limit is now {} in flight, retry after {}",
+          e.statusCode(), (int) limit, e.retryAfter());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+}
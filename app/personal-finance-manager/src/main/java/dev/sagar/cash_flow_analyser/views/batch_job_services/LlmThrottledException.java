@@ -0,0 +1,34 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import java.time.Duration;
+
+import org.springframework.ai.retry.TransientAiException;
+
+/**
+ * Thrown when the LLM provider refuses a request because it is overloaded or rate limited (429
+ * or 5xx). The request can be sent again, after {@link #retryAfter()} when the provider said
+ * when.
+ */
+class LlmThrottledException extends TransientAiException {
+
+  private final int statusCode;
+  private final Duration retryAfter;
+
+  LlmThrottledException(String message, int statusCode, Duration retryAfter) {
+    super(message);
+    this.statusCode = statusCode;
+    this.retryAfter = retryAfter;
+  }
+
+  int statusCode() {
+    return statusCode;
+  }
+
+  /**
+   * @return how long the provider asked to wait before the next request, or {@code null}
+   */
+  Duration retryAfter() {
+    return retryAfter;
+  }
+
+}
@@ -0,0 +1,60 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import dev.sagar.cash_flow_analyser.dto.FinancialTransaction;
+import dev.sagar.cash_flow_analyser.dto.TransactionType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Categorizes transactions with the local {@link TransactionClassifier} when its prediction is
+ * at least as confident as the configured threshold. Anything below the threshold is passed on
+ * uncategorized, to be categorized by the {@link CategorizeTransactionProcessor}.
+ *
+ * Credit transactions are always categorized locally, whatever the confidence, unless the model
+ * has nothing to predict from yet.
+ */
+@Component
+public class LocalCategorizeTransactionProcessor
+    implements ItemProcessor<FinancialTransaction, FinancialTransaction> {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(LocalCategorizeTransactionProcessor.class);
+
+  private final TransactionClassifier transactionClassifier;
+  private final double confidenceThreshold;
+  private final Counter accepted;
+  private final Counter deferred;
+
+  public LocalCategorizeTransactionProcessor(TransactionClassifier transactionClassifier,
+      MeterRegistry meterRegistry,
+      @Value("${app.categorization.local.confidence-threshold:0.8}") double confidenceThreshold) {
+    this.transactionClassifier = transactionClassifier;
+    this.confidenceThreshold = confidenceThreshold;
+    this.accepted = meterRegistry.counter("categorization.local", "result", "accepted");
+    this.deferred = meterRegistry.counter("categorization.local", "result", "deferred");
+  }
+
+  @Override
+  public FinancialTransaction process(FinancialTransaction transaction) throws Exception {
+    if (transaction.transaction_type() == TransactionType.CREDIT_CARD_PAYMENT) {
+      return transaction;
+    }
+    var prediction = transactionClassifier.predict(transaction.transaction_detail(),
+        transaction.transaction_type());
+    if (prediction != null && (prediction.confidence() >= confidenceThreshold
+        || transaction.transaction_type() == TransactionType.CREDIT)) {
+      logger.debug("Transaction: {} -> Category: {} (local, confidence {})",
+          transaction.transaction_detail(), prediction.category(), prediction.confidence());
+      accepted.increment();
+      return new FinancialTransaction(transaction.date(), Math.abs(transaction.amount()),
+          transaction.transaction_detail(), prediction.category(),
+          transaction.transaction_type(), transaction.fingerprint());
+    }
+    deferred.increment();
+    return transaction;
+  }
+
+}
@@ -0,0 +1,64 @@
+package dev.sagar.cash_flow_analyser.views.batch_job_services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * SHA-256 fingerprints identifying statement files and the transactions in them.
+ *
+ * A transaction is identified by its date, amount, normalized detail, source account and
+ * occurrence, i.e. its position among the identical transactions of the same file. Two
+ * coffees bought on the same day therefore get different fingerprints, while the same
+ * transaction exported in a monthly and in a quarterly statement gets the same one.
+ */
+final class TransactionFingerprint {
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private TransactionFingerprint() {
+  }
+
+  /**
+   * The key shared by identical transactions, which only differ by their occurrence.
+   */
+  static String key(LocalDate date, double amount, String transactionDetail, String account) {
+    return date + "|" + BigDecimal.valueOf(amount).stripTrailingZeros().toPlainString() + "|"
+        + WHITESPACE.matcher(transactionDetail.strip()).replaceAll(" ").toLowerCase(Locale.ROOT)
+        + "|" + account;
+  }
+
+  static String of(String key, int occurrence) {
+    return HexFormat.of().formatHex(
+        sha256().digest((key + "|" + occurrence).getBytes(StandardCharsets.UTF_8)));
+  }
+
+  static String ofFile(Path file) throws IOException {
+    MessageDigest digest = sha256();
+    try (InputStream in = Files.newInputStream(file)) {
+      byte[] buffer = new byte[8192];
+      for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+}
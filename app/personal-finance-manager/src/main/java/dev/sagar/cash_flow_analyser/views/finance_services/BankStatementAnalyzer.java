@@ -4,31 +4,39 @@ import java.sql.Date;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
-import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.util.MimeTypeUtils;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
 
 import com.vaadin.flow.component.Text;
+import com.vaadin.flow.component.UI;
+import com.vaadin.flow.component.UIDetachedException;
 import com.vaadin.flow.component.button.Button;
 import com.vaadin.flow.component.button.ButtonVariant;
 import com.vaadin.flow.component.grid.Grid;
 import com.vaadin.flow.component.grid.GridVariant;
 import com.vaadin.flow.component.html.Div;
+import com.vaadin.flow.component.html.Span;
 import com.vaadin.flow.component.icon.Icon;
 import com.vaadin.flow.component.orderedlayout.HorizontalLayout;
 import com.vaadin.flow.component.orderedlayout.VerticalLayout;
 import com.vaadin.flow.component.notification.Notification;
 import com.vaadin.flow.component.notification.NotificationVariant;
+import com.vaadin.flow.component.progressbar.ProgressBar;
 import com.vaadin.flow.component.upload.Upload;
-import com.vaadin.flow.component.upload.receivers.MemoryBuffer;
 import com.vaadin.flow.router.Menu;
 import com.vaadin.flow.router.PageTitle;
 import com.vaadin.flow.router.Route;
+import com.vaadin.flow.server.Command;
 import dev.sagar.cash_flow_analyser.commonservice.CategoryService;
 import dev.sagar.cash_flow_analyser.dto.FinancialTransaction;
 import dev.sagar.cash_flow_analyser.dto.TransactionType;
@@ -48,7 +56,7 @@ public class BankStatementAnalyzer extends VerticalLayout {
   public record Statement(List<Transaction> transactions) {
   }
 
-  private final ChatClient chatClient;
+  private final StatementExtractionQueue statementExtractionQueue;
 
   private final Grid<Transaction> grid = new Grid<>(Transaction.class);
 
@@ -58,27 +66,40 @@ public class BankStatementAnalyzer extends VerticalLayout {
 
   private final JdbcTemplate jdbcTemplate;
 
-  private String fileName;
+  private final PromptContextCache promptContextCache;
 
-  public BankStatementAnalyzer(
-      @Qualifier("geminiOpenaiChatClient") ChatClient geminiChatClient,
-      CategoryService categoryService, JdbcTemplate jdbcTemplate) {
+  // The transactions of every uploaded statement, in the order of the uploads
+  private final Map<String, List<Transaction>> statements = new LinkedHashMap<>();
+
+  private final Map<String, StatementExtractionQueue.Task> tasks = new HashMap<>();
+
+  private final Set<String> saved = new HashSet<>();
+
+  private final VerticalLayout statementList = new VerticalLayout();
+
+  private final Button saveButton = new Button("Save");
+
+  private final Button clearButton = new Button("Clear");
+
+  public BankStatementAnalyzer(StatementExtractionQueue statementExtractionQueue,
+      CategoryService categoryService, JdbcTemplate jdbcTemplate,
+      PromptContextCache promptContextCache, @Value("${app.statement.max-file-size:50MB}") DataSize maxFileSize) {
     setSizeFull();
-    this.chatClient = geminiChatClient;
+    this.statementExtractionQueue = statementExtractionQueue;
     this.categoryService = categoryService;
     this.jdbcTemplate = jdbcTemplate;
+    this.promptContextCache = promptContextCache;
 
     // Set up upload
-    var buffer = new MemoryBuffer();
+    var buffer = new StatementFileBuffer();
     var upload = new Upload(buffer);
     upload.setAcceptedFileTypes(".pdf");
-    upload.setMaxFileSize(10 * 1024 * 1024);
-    upload.setMaxFiles(1);
-    var inputLayout = new HorizontalLayout();
-    var saveButton = new Button("Save");
+    upload.setMaxFileSize((int) Math.min(maxFileSize.toBytes(), Integer.MAX_VALUE));
+    var inputLayout = new HorizontalLayout(saveButton, clearButton);
     saveButton.setEnabled(false);
-    var clearButton = new Button("Clear");
     clearButton.setEnabled(false);
+    statementList.setPadding(false);
+    statementList.setSpacing(false);
 
     upload.addProgressListener(e -> {
       upload.setHeight("200px");
@@ -87,89 +108,220 @@ public class BankStatementAnalyzer extends VerticalLayout {
 
     upload.addFailedListener(e -> {
       logger.error("File upload failed: " + e.getFileName());
+      buffer.delete(e.getFileName());
     });
 
     upload.addSucceededListener(e -> {
       logger.info("File upload succeeded: " + e.getFileName());
-      this.fileName = e.getFileName();
-      logger.info("MIME type: " + e.getMIMEType());
-      var statement = chatClient.prompt()
-          .user(userMessage -> userMessage
-              .text(
-                  """
-                      Please read the attached bank statement and extract all financial transactions.
-                      The Transaction Date is in the format DD/MM/YY.
-                      Exclude the Transaction Detail named "OPENING BALANCE" and "CLOSING BALANCE".
-                      For each transaction, determine the associated category.
-                      Select the category from the CATEGORIES section below.
-                      If you are unsure about the category, use "Other".
-                      Exclude any transaction amount that is less than 0. This indicates a payment or a refund.
-
-                      CATEGORIES (Select one for each transaction):
-                      {categories}
-                      """)
-              .param("categories", this.categoryService.getCategories())
-              .media(MimeTypeUtils.parseMimeType(e.getMIMEType()),
-                  new InputStreamResource(buffer.getInputStream())))
-          .call().entity(Statement.class);
-
       upload.setHeight("100px");
-      showTransactions(statement);
-      upload.clearFileList();
-      saveButton.setEnabled(true);
-      clearButton.setEnabled(true);
-      upload.setEnabled(false);
-      inputLayout.add(saveButton, clearButton);
+      var file = buffer.take(e.getFileName());
+      if (file == null) {
+        return;
+      }
+      logger.info("MIME type: {}, size: {} bytes, SHA-256: {}", file.mimeType(), file.size(),
+          file.sha256());
+      if (statements.containsKey(file.fileName())) {
+        file.delete();
+        showError(file.fileName() + " was already uploaded.");
+        return;
+      }
+      extract(file);
     });
 
     Text instructions =
-        new Text("Upload your bank statement to view your financial transactions. "
+        new Text("Upload your bank statements to view your financial transactions. "
             + "The transactions will be displayed in a grid below. ");
-    add(instructions, upload, inputLayout, createGridLayout());
+    add(instructions, upload, statementList, inputLayout, createGridLayout());
 
     saveButton.addClickListener(e -> {
-      var items = grid.getGenericDataView().getItems().toList();
-      logger.trace("Saving transactions: " + items);
       try {
-        saveTransactions(items);
-        saveButton.setEnabled(false);
+        for (var statement : statements.entrySet()) {
+          if (!saved.contains(statement.getKey())) {
+            logger.trace("Saving transactions: {}", statement.getValue());
+            saveTransactions(statement.getValue(), statement.getKey());
+            saved.add(statement.getKey());
+          }
+        }
         Notification
             .show("Transactions saved successfully!", 5000, Notification.Position.MIDDLE)
             .addThemeVariants(NotificationVariant.LUMO_SUCCESS);
       } catch (Exception e1) {
-        Notification notification = new Notification();
-        notification.addThemeVariants(NotificationVariant.LUMO_ERROR);
-        notification.setPosition(Notification.Position.MIDDLE);
-        Button closeButton = new Button(new Icon("lumo", "cross"));
-        closeButton.addThemeVariants(ButtonVariant.LUMO_TERTIARY_INLINE);
-        closeButton.setAriaLabel("Close");
-        closeButton.addClickListener(event -> {
-          notification.close();
-        });
-        HorizontalLayout layout = new HorizontalLayout(
-            new Div(new Text("Failed to save transactions.")), closeButton);
-        layout.setAlignItems(Alignment.CENTER);
-        notification.add(layout);
-        notification.open();
+        showError("Failed to save transactions.");
 
         logger.error("Error occurred while saving transactions: " + e1.getMessage());
         e1.printStackTrace();
+      } finally {
+        // The categories the SQL agents are prompted with may have changed
+        promptContextCache.invalidate();
       }
+      updateButtons();
     });
 
     clearButton.addClickListener(e -> {
-      transactions.clear();
-      grid.setItems(transactions);
-      saveButton.setEnabled(false);
-      clearButton.setEnabled(false);
-      upload.setEnabled(true);
-      inputLayout.remove(saveButton, clearButton);
+      cancelExtractions();
+      statements.clear();
+      saved.clear();
+      statementList.removeAll();
+      showTransactions();
+      upload.clearFileList();
+      updateButtons();
     });
 
+    // Nobody is left to see the transactions of the statements still being extracted
+    addDetachListener(e -> cancelExtractions());
+  }
+
+  /**
+   * Queues the extraction of an uploaded statement, showing its place in the queue and then its
+   * progress, and pushing its transactions to the grid as they are extracted.
+   */
+  private void extract(StatementFileBuffer.UploadedFile file) {
+    var ui = UI.getCurrent();
+    var fileName = file.fileName();
+    var status = new Span();
+    var progressBar = new ProgressBar();
+    progressBar.setIndeterminate(true);
+    progressBar.setWidth("200px");
+    var cancelButton = new Button("Cancel");
+    cancelButton.addThemeVariants(ButtonVariant.LUMO_TERTIARY_INLINE);
+    var row = new HorizontalLayout(new Span(fileName), status, progressBar, cancelButton);
+    row.setAlignItems(Alignment.CENTER);
+    statementList.add(row);
+
+    // Replaced when the statement is removed, so that late updates of its extraction are ignored
+    List<Transaction> statementTransactions = new ArrayList<>();
+    statements.put(fileName, statementTransactions);
+    Consumer<Command> update = command -> access(ui, () -> {
+      if (statements.get(fileName) == statementTransactions) {
+        command.execute();
+      }
+    });
+    Consumer<String> finish = text -> {
+      status.setText(text);
+      row.remove(progressBar, cancelButton);
+      tasks.remove(fileName);
+      updateButtons();
+    };
+
+    var task = statementExtractionQueue.submit(file, new StatementExtractionListener() {
+
+      @Override
+      public void queued(int position) {
+        update.accept(() -> status.setText(position == 1 ? "Next in the queue"
+            : "Queued, " + (position - 1) + " statements ahead"));
+      }
+
+      @Override
+      public void started() {
+        update.accept(() -> status.setText("Extracting…"));
+      }
+
+      @Override
+      public void transaction(Transaction transaction) {
+        update.accept(() -> {
+          statementTransactions.add(transaction);
+          grid.getListDataView().addItem(transaction);
+          status.setText("Extracting… " + statementTransactions.size() + " transactions");
+        });
+      }
+
+      @Override
+      public void progress(int extractedRanges, int ranges) {
+        update.accept(() -> {
+          progressBar.setIndeterminate(false);
+          progressBar.setValue((double) extractedRanges / ranges);
+        });
+      }
+
+      @Override
+      public void completed(StatementExtractor.Extraction extraction) {
+        update.accept(() -> {
+          var extracted = extraction.statement().transactions();
+          statementTransactions.clear();
+          if (extracted != null) {
+            statementTransactions.addAll(extracted);
+          }
+          logger.info("{} transactions found in {}", statementTransactions.size(), fileName);
+          finish.accept((extraction.cached() ? "Loaded from the cache, " : "Done, ")
+              + statementTransactions.size() + " transactions");
+          showTransactions();
+        });
+      }
+
+      @Override
+      public void failed(Exception exception) {
+        update.accept(() -> {
+          statements.remove(fileName);
+          finish.accept("Failed");
+          showTransactions();
+          showError("Failed to read the bank statement " + fileName + ".");
+        });
+      }
+
+      @Override
+      public void cancelled() {
+        update.accept(() -> {
+          statements.remove(fileName);
+          finish.accept("Cancelled");
+          showTransactions();
+        });
+      }
+
+    });
+    if (task == null) {
+      statements.remove(fileName);
+      status.setText("Not extracted");
+      row.remove(progressBar, cancelButton);
+      showError("Too many statements are waiting to be extracted, upload " + fileName
+          + " again later.");
+      return;
+    }
+    tasks.put(fileName, task);
+    cancelButton.addClickListener(e -> task.cancel());
+    updateButtons();
+  }
+
+  private void cancelExtractions() {
+    List.copyOf(tasks.values()).forEach(StatementExtractionQueue.Task::cancel);
+    tasks.clear();
+  }
+
+  /**
+   * Runs a change of the view from a worker thread, unless the view was closed in the meantime.
+   */
+  private static void access(UI ui, Command command) {
+    try {
+      ui.access(command);
+    } catch (UIDetachedException e) {
+      logger.debug("Update of a closed view dropped");
+    }
+  }
+
+  private void updateButtons() {
+    saveButton.setEnabled(tasks.isEmpty() && !saved.containsAll(statements.keySet()));
+    clearButton.setEnabled(!statements.isEmpty() || statementList.getComponentCount() > 0);
+  }
+
+  private void showError(String message) {
+    Notification notification = new Notification();
+    notification.addThemeVariants(NotificationVariant.LUMO_ERROR);
+    notification.setPosition(Notification.Position.MIDDLE);
+    Button closeButton = new Button(new Icon("lumo", "cross"));
+    closeButton.addThemeVariants(ButtonVariant.LUMO_TERTIARY_INLINE);
+    closeButton.setAriaLabel("Close");
+    closeButton.addClickListener(event -> {
+      notification.close();
+    });
+    HorizontalLayout layout =
+        new HorizontalLayout(new Div(new Text(message)), closeButton);
+    layout.setAlignItems(Alignment.CENTER);
+    notification.add(layout);
+    notification.open();
   }
 
   @Transactional
-  private void saveTransactions(List<Transaction> transactions) throws Exception {
+  private void saveTransactions(List<Transaction> transactions, String fileName)
+      throws Exception {
     try {
       List<FinancialTransaction> financialTransactions = transactions.stream().map(t -> {
         DateTimeFormatter formatter =
@@ -192,7 +344,7 @@ public class BankStatementAnalyzer extends VerticalLayout {
             ps.setString(3, transaction.transaction_detail());
             ps.setString(4, transaction.category());
             ps.setString(5, transaction.transaction_type().name());
-            ps.setString(6, this.fileName);
+            ps.setString(6, fileName);
           });
 
       // Verify all batches were successful
@@ -222,13 +374,10 @@ public class BankStatementAnalyzer extends VerticalLayout {
     return gridContainer;
   }
 
-  private void showTransactions(Statement statement) {
-    logger.debug("Displaying transactions: " + statement.transactions());
-    if (statement != null && statement.transactions() != null) {
-      transactions = new ArrayList<>(statement.transactions());
-      logger.info("{} transactions found", transactions.size());
-      grid.setItems(transactions);
-    }
+  private void showTransactions() {
+    transactions = new ArrayList<>();
+    statements.values().forEach(transactions::addAll);
+    grid.setItems(transactions);
   }
 
 }
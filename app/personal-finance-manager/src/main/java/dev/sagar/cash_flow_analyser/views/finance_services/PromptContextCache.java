@@ -0,0 +1,110 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The context the SQL agents put in front of every prompt: the DDL of the transactions table, the
+ * categories found in the transactions, and the prompts the agents render from them. Loading the
+ * categories scans the whole table, which used to be done for every query generated and every
+ * query evaluated.
+ *
+ * The context is versioned, and loaded again after a new version is started, which happens when
+ * transactions are ingested, by a batch job or from the {@link BankStatementAnalyzer}, and at
+ * the start of every day, as the categories are those of the transactions up to today.
+ */
+@Component
+public class PromptContextCache implements JobExecutionListener {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(PromptContextCache.class);
+
+  private final DatabaseService databaseService;
+  private final String ddl;
+  private final AtomicLong version = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  private volatile PromptContext context;
+
+  /**
+   * A version of the context. The prompts rendered from it are kept with it, by name.
+   */
+  record PromptContext(long version, LocalDate date, String ddl, String categories,
+      Map<String, String> prompts) {
+
+    /**
+     * Renders a prompt from this context, the first time it is asked for.
+     */
+    String prompt(String name, Function<PromptContext, String> renderer) {
+      return prompts.computeIfAbsent(name, key -> renderer.apply(this));
+    }
+
+  }
+
+  PromptContextCache(DatabaseService databaseService, MeterRegistry meterRegistry,
+      @Value("classpath:/prompts/schema.st") Resource ddlResource) throws IOException {
+    this.databaseService = databaseService;
+    this.ddl = ddlResource.getContentAsString(StandardCharsets.UTF_8);
+
+    FunctionCounter.builder("prompt.context.cache.lookups", hits, AtomicLong::get)
+        .tag("result", "hit").register(meterRegistry);
+    FunctionCounter.builder("prompt.context.cache.lookups", misses, AtomicLong::get)
+        .tag("result", "miss").register(meterRegistry);
+  }
+
+  /**
+   * @return the current version of the context, loaded if there is none yet
+   */
+  PromptContext get() {
+    PromptContext current = context;
+    LocalDate today = LocalDate.now();
+    if (current != null && current.version() == version.get() && current.date().equals(today)) {
+      hits.incrementAndGet();
+      return current;
+    }
+    misses.incrementAndGet();
+    long loading = version.get();
+    logger.trace("Retrieving categories from the database.");
+    var categories = String.join(", ", databaseService.getCategories());
+    PromptContext loaded =
+        new PromptContext(loading, today, ddl, categories, new ConcurrentHashMap<>());
+    synchronized (this) {
+      // Not kept if a new version was started while loading, the next call loads that one
+      if (version.get() == loading) {
+        context = loaded;
+      }
+    }
+    logger.debug("Loaded version {} of the prompt context", loading);
+    return loaded;
+  }
+
+  /**
+   * Starts a new version of the context, after transactions were ingested.
+   */
+  void invalidate() {
+    synchronized (this) {
+      version.incrementAndGet();
+      context = null;
+    }
+  }
+
+  @Override
+  public void afterJob(JobExecution jobExecution) {
+    invalidate();
+  }
+
+}
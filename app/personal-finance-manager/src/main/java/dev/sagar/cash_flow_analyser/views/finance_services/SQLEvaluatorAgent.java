@@ -1,12 +1,14 @@
 package dev.sagar.cash_flow_analyser.views.finance_services;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.Map;
 
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.ai.converter.BeanOutputConverter;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
@@ -20,76 +22,61 @@ public class SQLEvaluatorAgent {
   private static final org.slf4j.Logger logger =
       org.slf4j.LoggerFactory.getLogger(SQLEvaluatorAgent.class);
 
-  @Value("classpath:/prompts/schema.st")
-  private Resource ddlResource;
-
-  @Value("classpath:/prompts/sql-evaluator-prompt.st")
-  private Resource systemPromptTemplate;
-
-  @Value("${app.database.type}")
-  private String databaseType;
-
-  private final DatabaseService databaseService;
-
+  // After the system prompt, which only changes with the prompt context, so that the prompts
+  // of all the evaluations start the same
   private static final String USER_MESSAGE_TEMPLATE =
       """
           For the given question and database table schema, validate the SQL query and provide feedback.
                           The user's question is -
                           {question}
 
-                          The Table Schema is -
-                          {ddl}
-
-                          The transaction_type column is restricted to only two possible values: 'DEBIT' and 'CREDIT'.
-
-                          Possible list of Categories -
-                          {categories}
-
                           The SQL query is -
                           {sql_query}
 
-                          Ensure the transaction_detail and category columns are converted to lowercase for case-insensitive matching.
-
                           Today's date is {current_date}
+                                  """;
 
-                          CRITICAL - The SQL query should be compatible with the given schema and must be compatible with {database_type} and dialect.
+  private final String databaseType;
 
-                                  """;
+  private final PromptTemplate systemPromptTemplate;
+
+  private final BeanOutputConverter<EvaluationResponse> outputConverter =
+      new BeanOutputConverter<>(EvaluationResponse.class);
+
+  private final PromptContextCache promptContextCache;
 
   private final ChatClient chatClient;
 
-  public SQLEvaluatorAgent(ChatClient.Builder builder, DatabaseService databaseService) {
+  public SQLEvaluatorAgent(ChatClient.Builder builder, PromptContextCache promptContextCache,
+      @Value("${app.database.type}") String databaseType,
+      @Value("classpath:/prompts/sql-evaluator-prompt.st") Resource systemPromptResource) {
     this.chatClient =
         builder
             .defaultOptions(
                 OpenAiChatOptions.builder().model("o4-mini").temperature(1D).build())
             .build();
-    this.databaseService = databaseService;
+    this.promptContextCache = promptContextCache;
+    this.databaseType = databaseType;
+    this.systemPromptTemplate = new PromptTemplate(systemPromptResource);
   }
 
-
   @Tool(description = "Validate the generated SQL query based on the user's question")
   EvaluationResponse evaluateQuery(
       @ToolParam(description = "The rewritten question") String userQuestion,
       @ToolParam(description = "The generated SQL query to validate") String sqlQuery)
       throws IOException {
 
-    String schema = ddlResource.getContentAsString(Charset.defaultCharset());
-
-    logger.trace("Retrieving categories from the database.");
-    var categories = String.join(", ", databaseService.getCategories());
+    var systemPrompt = promptContextCache.get().prompt("sql-evaluator",
+        context -> systemPromptTemplate.render(Map.of("database_type", databaseType, "ddl",
+            context.ddl(), "categories", context.categories())));
 
-    var evaluationResponse = chatClient.prompt()
-        .system(systemSpec -> systemSpec.text(systemPromptTemplate).param("database_type",
-            databaseType))
+    var evaluationResponse = chatClient.prompt().system(systemPrompt)
         .user(userSpec -> userSpec.text(USER_MESSAGE_TEMPLATE)
-            .param("question", userQuestion).param("ddl", schema)
-            .param("categories", categories).param("sql_query", sqlQuery)
+            .param("question", userQuestion).param("sql_query", sqlQuery)
             .param("current_date",
                 LocalDate.now()
-                    .format(DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG)))
-            .param("database_type", databaseType))
-        .call().entity(EvaluationResponse.class);
+                    .format(DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG))))
+        .call().entity(outputConverter);
 
     logger.debug("Evaluation: {} \n Feedback: {}", evaluationResponse.evaluation(),
         evaluationResponse.feedback());
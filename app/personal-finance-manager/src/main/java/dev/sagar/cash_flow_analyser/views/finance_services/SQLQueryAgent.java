@@ -1,12 +1,13 @@
 package dev.sagar.cash_flow_analyser.views.finance_services;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.Map;
 
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.beans.factory.annotation.Value;
@@ -20,23 +21,34 @@ class SQLQueryAgent {
   private static final org.slf4j.Logger logger =
       org.slf4j.LoggerFactory.getLogger(SQLQueryAgent.class);
 
-  @Value("classpath:/prompts/schema.st")
-  private Resource ddlResource;
+  // After the system prompt, which only changes with the prompt context, so that the prompts
+  // of all the questions start the same
+  private static final String USER_MESSAGE_TEMPLATE =
+      """
+          QUESTION:
+          {question}
 
-  @Value("${app.database.type}")
-  private String databaseType;
+          FEEDBACK:
+          {feedback}
 
-  @Value("classpath:/prompts/sql-prompt-template.st")
-  private Resource sqlPromptTemplateResource;
+          Today’s Date: {current_date}
+          """;
+
+  private final String databaseType;
+
+  private final PromptTemplate systemPromptTemplate;
 
   private final ChatClient chatClient;
 
-  private final DatabaseService databaseService;
+  private final PromptContextCache promptContextCache;
 
-  public SQLQueryAgent(ChatClient.Builder builder, DatabaseService databaseService) {
+  public SQLQueryAgent(ChatClient.Builder builder, PromptContextCache promptContextCache,
+      @Value("${app.database.type}") String databaseType,
+      @Value("classpath:/prompts/sql-prompt-template.st") Resource sqlPromptTemplateResource) {
     this.chatClient = builder.build();
-    this.databaseService = databaseService;
-
+    this.promptContextCache = promptContextCache;
+    this.databaseType = databaseType;
+    this.systemPromptTemplate = new PromptTemplate(sqlPromptTemplateResource);
   }
 
   @Tool(description = "Generate a SQL query based on the user's question")
@@ -47,11 +59,8 @@ class SQLQueryAgent {
       @ToolParam(
           description = "The SQL query for which the feedback was received") @Nullable String sqlQuery)
       throws IOException {
-    String schema = ddlResource.getContentAsString(Charset.defaultCharset());
-
-    logger.debug("The schema is: {}", schema);
-    if (feedback.isBlank() || feedback.isEmpty()) {
-      String query = generateSQL(question, schema, "No feedback at this point");
+    if (feedback == null || feedback.isBlank()) {
+      String query = generateSQL(question, "No feedback at this point");
       return query;
     } else {
       logger.debug("Feedback received {}", feedback);
@@ -60,19 +69,19 @@ class SQLQueryAgent {
 
       newContext.append("\n- ").append(sqlQuery);
       newContext.append("\nFeedback: ").append(feedback);
-      String query = generateSQL(question, schema, newContext.toString());
+      String query = generateSQL(question, newContext.toString());
       return query;
     }
   }
 
-  private String generateSQL(String question, String schema, String feedback) {
-    logger.trace("Retrieving categories from the database.");
-    var categories = String.join(", ", databaseService.getCategories());
-    return chatClient.prompt().user(userSpec -> userSpec.text(sqlPromptTemplateResource)
-        .param("database_type", databaseType).param("question", question)
-        .param("current_date",
-            LocalDate.now().format(DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG)))
-        .param("ddl", schema).param("categories", categories).param("feedback", feedback))
+  private String generateSQL(String question, String feedback) {
+    var systemPrompt = promptContextCache.get().prompt("sql-query",
+        context -> systemPromptTemplate.render(Map.of("database_type", databaseType, "ddl",
+            context.ddl(), "categories", context.categories())));
+    return chatClient.prompt().system(systemPrompt)
+        .user(userSpec -> userSpec.text(USER_MESSAGE_TEMPLATE).param("question", question)
+            .param("feedback", feedback).param("current_date",
+                LocalDate.now().format(DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG))))
         .call().content();
   }
 
@@ -0,0 +1,152 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.sagar.cash_flow_analyser.commonservice.CategoryService;
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Statement;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache of the extracted statements, keyed by the SHA-256 of the uploaded file and the version of
+ * the categories the transactions were categorized with, so that uploading a statement again,
+ * typically after a failed save, does not extract it again.
+ *
+ * The statements are persisted as JSON in the {@code statement_cache} table. Once the statements
+ * cached take more than {@code app.statement.cache.max-size}, the least recently used ones are
+ * evicted. The statements cached for a previous set of categories are purged as soon as the
+ * categories change.
+ */
+@Component
+class StatementCache {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(StatementCache.class);
+
+  private final CategoryService categoryService;
+  private final JdbcClient jdbcClient;
+  private final ObjectMapper objectMapper;
+  private final long maxSize;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private volatile String version;
+
+  public StatementCache(CategoryService categoryService, JdbcClient jdbcClient,
+      ObjectMapper objectMapper, MeterRegistry meterRegistry,
+      @Value("${app.statement.cache.max-size:50MB}") DataSize maxSize) {
+    this.categoryService = categoryService;
+    this.jdbcClient = jdbcClient;
+    this.objectMapper = objectMapper;
+    this.maxSize = maxSize.toBytes();
+
+    FunctionCounter.builder("statement.cache.lookups", hits, AtomicLong::get)
+        .tag("result", "hit").register(meterRegistry);
+    FunctionCounter.builder("statement.cache.lookups", misses, AtomicLong::get)
+        .tag("result", "miss").register(meterRegistry);
+    FunctionCounter.builder("statement.cache.evictions", evictions, AtomicLong::get)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Looks up the statement extracted from the file with the given SHA-256.
+   *
+   * @return the cached statement, or {@code null} if there is none
+   */
+  Statement get(String sha256) {
+    String currentVersion = refresh();
+    String json = jdbcClient.sql("""
+        UPDATE statement_cache SET used_at = NOW()
+        WHERE sha256 = :sha256 AND categories_version = :version
+        RETURNING statement
+        """).param("sha256", sha256).param("version", currentVersion).query(String.class)
+        .optional().orElse(null);
+    if (json == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    try {
+      Statement statement = objectMapper.readValue(json, Statement.class);
+      hits.incrementAndGet();
+      return statement;
+    } catch (JsonProcessingException e) {
+      logger.warn("Dropping the unreadable cached statement {}: {}", sha256, e.getMessage());
+      jdbcClient.sql("DELETE FROM statement_cache WHERE sha256 = :sha256")
+          .param("sha256", sha256).update();
+      misses.incrementAndGet();
+      return null;
+    }
+  }
+
+  /**
+   * Caches the statement extracted from the file with the given SHA-256, evicting the least
+   * recently used statements beyond the maximum size.
+   */
+  void put(String sha256, Statement statement) {
+    String currentVersion = refresh();
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(statement);
+    } catch (JsonProcessingException e) {
+      logger.warn("Could not cache the statement {}: {}", sha256, e.getMessage());
+      return;
+    }
+    int size = json.getBytes(StandardCharsets.UTF_8).length;
+    if (size > maxSize) {
+      return;
+    }
+    jdbcClient.sql("""
+        INSERT INTO statement_cache (sha256, categories_version, statement, size)
+        VALUES (:sha256, :version, :statement, :size)
+        ON CONFLICT (sha256, categories_version) DO UPDATE
+        SET statement = EXCLUDED.statement, size = EXCLUDED.size, used_at = NOW()
+        """).param("sha256", sha256).param("version", currentVersion).param("statement", json)
+        .param("size", size).update();
+    int evicted = jdbcClient.sql("""
+        DELETE FROM statement_cache WHERE (sha256, categories_version) IN (
+          SELECT sha256, categories_version FROM (
+            SELECT sha256, categories_version,
+                   SUM(size) OVER (ORDER BY used_at DESC, sha256) AS cumulative_size
+            FROM statement_cache) ranked
+          WHERE cumulative_size > :maxSize)
+        """).param("maxSize", maxSize).update();
+    if (evicted > 0) {
+      evictions.addAndGet(evicted);
+      logger.debug("Evicted {} cached statements", evicted);
+    }
+  }
+
+  /**
+   * Purges the statements cached for a previous set of categories.
+   *
+   * @return the current version of the categories
+   */
+  private String refresh() {
+    String currentVersion = categoryService.getVersion();
+    if (!currentVersion.equals(version)) {
+      synchronized (this) {
+        if (!currentVersion.equals(version)) {
+          int purged = jdbcClient
+              .sql("DELETE FROM statement_cache WHERE categories_version <> :version")
+              .param("version", currentVersion).update();
+          if (purged > 0) {
+            logger.info("Categories changed, purged {} cached statements", purged);
+          }
+          version = currentVersion;
+        }
+      }
+    }
+    return currentVersion;
+  }
+
+}
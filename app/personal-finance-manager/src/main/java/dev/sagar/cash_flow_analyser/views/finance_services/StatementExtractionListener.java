@@ -0,0 +1,42 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Transaction;
+
+/**
+ * Follows the extraction of a statement submitted to the {@link StatementExtractionQueue}. The
+ * methods are called from the worker extracting the statement, and from the thread of whoever
+ * changes the queue for {@link #queued(int)}.
+ */
+interface StatementExtractionListener {
+
+  /**
+   * The statement waits in the queue, behind {@code position - 1} other statements.
+   */
+  default void queued(int position) {
+  }
+
+  default void started() {
+  }
+
+  /**
+   * A transaction was extracted, in the order of the statement.
+   */
+  default void transaction(Transaction transaction) {
+  }
+
+  /**
+   * Some of the page ranges the statement was split into were extracted.
+   */
+  default void progress(int extractedRanges, int ranges) {
+  }
+
+  default void completed(StatementExtractor.Extraction extraction) {
+  }
+
+  default void failed(Exception exception) {
+  }
+
+  default void cancelled() {
+  }
+
+}
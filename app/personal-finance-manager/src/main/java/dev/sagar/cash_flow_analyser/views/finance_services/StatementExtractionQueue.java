@@ -0,0 +1,235 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Extracts the uploaded statements on a bounded number of worker threads, off the request threads
+ * of the uploads, so that the view stays responsive and a burst of uploads does not start as many
+ * extractions.
+ *
+ * The statements wait in a first-in, first-out queue, and a statement is refused when the queue
+ * holds {@code app.statement.queue-capacity} statements. The workers do not bound the requests
+ * to the model: the page ranges of the statements being extracted share the
+ * {@code app.statement.max-concurrent-requests} requests of the {@link StatementExtractor}, which
+ * is what keeps the Gemini quota busy without exceeding it. There only need to be enough workers
+ * for the statements being extracted to fill those requests, as every worker holds the temporary
+ * files of its statement.
+ */
+@Component
+class StatementExtractionQueue implements DisposableBean {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(StatementExtractionQueue.class);
+
+  private final StatementExtractor statementExtractor;
+  private final int capacity;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final LinkedList<Task> queue = new LinkedList<>();
+  private final AtomicInteger running = new AtomicInteger();
+  private final List<Thread> workers = new ArrayList<>();
+  private final Timer waitTimer;
+  private final Counter rejected;
+
+  StatementExtractionQueue(StatementExtractor statementExtractor, MeterRegistry meterRegistry,
+      @Value("${app.statement.workers:4}") int workers,
+      @Value("${app.statement.queue-capacity:20}") int capacity) {
+    this.statementExtractor = statementExtractor;
+    this.capacity = capacity;
+    Gauge.builder("statement.extraction.queued", this, StatementExtractionQueue::queued)
+        .description("Statements waiting for a worker").register(meterRegistry);
+    Gauge.builder("statement.extraction.running", running, AtomicInteger::get)
+        .description("Statements being extracted by the workers").register(meterRegistry);
+    this.waitTimer = Timer.builder("statement.extraction.wait")
+        .description("Time from uploading a statement to a worker starting to extract it")
+        .register(meterRegistry);
+    this.rejected = Counter.builder("statement.extraction.rejected")
+        .description("Statements refused because the queue was full").register(meterRegistry);
+    for (int i = 0; i < workers; i++) {
+      this.workers.add(
+          Thread.ofVirtual().name("statement-extraction-worker-" + i).start(this::work));
+    }
+  }
+
+  /**
+   * A statement submitted to the queue.
+   */
+  final class Task {
+
+    private final StatementFileBuffer.UploadedFile file;
+    private final StatementExtractionListener listener;
+    private final long queuedAt = System.nanoTime();
+    private volatile boolean cancelled;
+    // Guarded by the lock
+    private Thread worker;
+
+    private Task(StatementFileBuffer.UploadedFile file, StatementExtractionListener listener) {
+      this.file = file;
+      this.listener = listener;
+    }
+
+    String fileName() {
+      return file.fileName();
+    }
+
+    /**
+     * Takes the statement out of the queue, or interrupts its extraction if it has started.
+     */
+    void cancel() {
+      lock.lock();
+      try {
+        cancelled = true;
+        if (queue.remove(this)) {
+          positionsChanged();
+        } else if (worker != null) {
+          worker.interrupt();
+          return;
+        } else {
+          return;
+        }
+      } finally {
+        lock.unlock();
+      }
+      file.delete();
+      listener.cancelled();
+    }
+
+  }
+
+  /**
+   * Queues the extraction of an uploaded statement. The file of the statement is deleted once it
+   * has been extracted, or right away if the queue refuses it.
+   *
+   * @return the queued statement, or {@code null} if the queue is full
+   */
+  Task submit(StatementFileBuffer.UploadedFile file, StatementExtractionListener listener) {
+    Task task = new Task(file, listener);
+    lock.lock();
+    try {
+      if (queue.size() >= capacity) {
+        rejected.increment();
+        logger.warn("Statement queue is full, refused to extract {}", file.fileName());
+        file.delete();
+        return null;
+      }
+      queue.add(task);
+      listener.queued(queue.size());
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+    logger.info("Queued the extraction of {}", file.fileName());
+    return task;
+  }
+
+  private Task take() throws InterruptedException {
+    lock.lock();
+    try {
+      while (queue.isEmpty()) {
+        notEmpty.await();
+      }
+      Task task = queue.removeFirst();
+      task.worker = Thread.currentThread();
+      positionsChanged();
+      return task;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void positionsChanged() {
+    int position = 1;
+    for (Task task : queue) {
+      task.listener.queued(position++);
+    }
+  }
+
+  private void work() {
+    while (true) {
+      Task task;
+      try {
+        task = take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      waitTimer.record(System.nanoTime() - task.queuedAt, TimeUnit.NANOSECONDS);
+      running.incrementAndGet();
+      try {
+        run(task);
+      } finally {
+        lock.lock();
+        try {
+          task.worker = null;
+        } finally {
+          lock.unlock();
+        }
+        // Clears an interruption by a cancellation that came too late
+        Thread.interrupted();
+        running.decrementAndGet();
+        task.file.delete();
+      }
+    }
+  }
+
+  private void run(Task task) {
+    StatementFileBuffer.UploadedFile file = task.file;
+    try {
+      if (task.cancelled) {
+        task.listener.cancelled();
+        return;
+      }
+      task.listener.started();
+      var extraction = statementExtractor.extract(file.file(), file.sha256(),
+          MimeTypeUtils.parseMimeType(file.mimeType()), task.listener);
+      if (task.cancelled) {
+        task.listener.cancelled();
+      } else {
+        task.listener.completed(extraction);
+      }
+    } catch (Exception e) {
+      try {
+        if (task.cancelled) {
+          logger.info("Extraction of {} cancelled", file.fileName());
+          task.listener.cancelled();
+        } else {
+          logger.error("Error occurred while extracting {}: {}", file.fileName(),
+              e.getMessage(), e);
+          task.listener.failed(e);
+        }
+      } catch (RuntimeException e1) {
+        logger.warn("Could not report the end of the extraction of {}: {}", file.fileName(),
+            e1.getMessage());
+      }
+    }
+  }
+
+  private int queued() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    workers.forEach(Thread::interrupt);
+  }
+
+}
@@ -0,0 +1,418 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.multipdf.Splitter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.converter.BeanOutputConverter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.sagar.cash_flow_analyser.commonservice.CategoryService;
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Statement;
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Transaction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+
+/**
+ * Extracts the transactions of an uploaded bank statement. PDF statements with a text layer laid
+ * out like one of the statement templates are extracted locally by the {@link TextLayerExtractor}.
+ * Anything else is extracted with the Gemini chat client: PDF statements are split locally into ranges of {@code app.statement.pages-per-request} pages,
+ * which are extracted in parallel, so that a long statement takes about as long as its slowest
+ * range instead of timing out. At most {@code app.statement.max-concurrent-requests} requests are
+ * outstanding, whatever the number of uploads being extracted.
+ *
+ * The statement is read from the file it was uploaded to, and split with a temporary file as the
+ * scratch space of PDFBox, the ranges being saved to temporary files too. A request holds its
+ * range in memory while it is sent, encoded in the request body, which is why a range cannot be
+ * larger than {@code app.statement.max-request-size}: the memory taken by the statements being
+ * extracted is bounded by the maximum request size times the maximum number of requests, whatever
+ * the size of the statements. It is published as the {@code statement.extraction.buffered} gauge.
+ *
+ * Statements are only extracted once for a set of categories: the statements extracted are
+ * cached by the {@link StatementCache}, under the SHA-256 of the uploaded file.
+ *
+ * The statement is streamed by the model, and parsed as it comes by a
+ * {@link TransactionStreamParser}, so that the transactions can be shown as soon as they are
+ * extracted. The transactions of the ranges are handed over in page order. A transaction shown on
+ * both sides of a page break can be extracted from both of its pages, so the first transaction of a
+ * range is dropped, and logged, when it has the same date, amount and normalized detail as the last
+ * transaction of the previous range.
+ */
+@Service
+class StatementExtractor {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(StatementExtractor.class);
+
+  private static final MimeType PDF = MimeTypeUtils.parseMimeType("application/pdf");
+
+  private static final String PROMPT =
+      """
+          Please read the attached bank statement and extract all financial transactions.
+          The Transaction Date is in the format DD/MM/YY.
+          Exclude the Transaction Detail named "OPENING BALANCE" and "CLOSING BALANCE".
+          For each transaction, determine the associated category.
+          Select the category from the CATEGORIES section below.
+          If you are unsure about the category, use "Other".
+          Exclude any transaction amount that is less than 0. This indicates a payment or a refund.
+
+          CATEGORIES (Select one for each transaction):
+          {categories}
+          """;
+
+  private static final String RANGE_PROMPT =
+      """
+
+          The attached document is pages {first} to {last} of a {pages}-page statement.
+          Only extract the transactions shown on these pages, in the order they appear.
+          """;
+
+  private static final String FORMAT =
+      """
+
+          {format}
+          """;
+
+  /**
+   * The statement extracted, and whether it was found in the cache.
+   */
+  record Extraction(Statement statement, boolean cached) {
+  }
+
+  /**
+   * The page ranges of a statement, saved to temporary files, and its number of pages, the last
+   * range having fewer pages than the others when they do not divide it.
+   */
+  private record PageRanges(List<Path> files, int pages) {
+  }
+
+  private final ChatClient chatClient;
+  private final CategoryService categoryService;
+  private final TextLayerExtractor textLayerExtractor;
+  private final StatementCache statementCache;
+  private final ObjectMapper objectMapper;
+  private final String format = new BeanOutputConverter<>(Statement.class).getFormat();
+  private final Duration readTimeout;
+  private final int pagesPerRequest;
+  private final Semaphore requests;
+  private final long maxRequestSize;
+  private final AtomicLong buffered = new AtomicLong();
+  private final DistributionSummary statementSize;
+  private final DistributionSummary requestSize;
+  private final Counter textLayerExtractions;
+  private final Counter llmExtractions;
+
+  public StatementExtractor(@Qualifier("geminiOpenaiChatClient") ChatClient geminiChatClient,
+      CategoryService categoryService, TextLayerExtractor textLayerExtractor,
+      StatementCache statementCache, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+      @Value("${google.ai.openai.read-timeout:30}") long readTimeout,
+      @Value("${app.statement.pages-per-request:1}") int pagesPerRequest,
+      @Value("${app.statement.max-concurrent-requests:8}") int maxConcurrentRequests,
+      @Value("${app.statement.max-request-size:20MB}") DataSize maxRequestSize) {
+    this.chatClient = geminiChatClient;
+    this.categoryService = categoryService;
+    this.textLayerExtractor = textLayerExtractor;
+    this.statementCache = statementCache;
+    this.objectMapper = objectMapper;
+    this.readTimeout = Duration.ofSeconds(readTimeout);
+    this.pagesPerRequest = Math.max(1, pagesPerRequest);
+    this.requests = new Semaphore(maxConcurrentRequests, true);
+    this.maxRequestSize = maxRequestSize.toBytes();
+    this.statementSize = DistributionSummary.builder("statement.upload.size")
+        .description("Size of the statements extracted").baseUnit("bytes")
+        .register(meterRegistry);
+    this.requestSize = DistributionSummary.builder("statement.extraction.request.size")
+        .description("Size of the statement or page range sent in a request").baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("statement.extraction.buffered", buffered, AtomicLong::get)
+        .description("Bytes of statements held in memory by the requests in flight")
+        .baseUnit("bytes").register(meterRegistry);
+    this.textLayerExtractions =
+        meterRegistry.counter("statement.extraction", "method", "text-layer");
+    this.llmExtractions = meterRegistry.counter("statement.extraction", "method", "llm");
+  }
+
+  /**
+   * Extracts the transactions of a statement.
+   *
+   * @param file the uploaded file, which is left in place
+   * @param sha256 the SHA-256 of the uploaded file
+   * @param mimeType the MIME type of the uploaded file
+   * @param listener told about the transactions extracted by the model, in the order of the
+   *        statement, as soon as they are, and about the page ranges extracted; the transactions
+   *        of cached statements and of those extracted from their text layer are only returned
+   * @return the transactions of the statement, in the order of the statement
+   */
+  public Extraction extract(Path file, String sha256, MimeType mimeType,
+      StatementExtractionListener listener) throws Exception {
+    Statement cached = statementCache.get(sha256);
+    if (cached != null) {
+      logger.info("Statement {} found in the cache", sha256);
+      return new Extraction(cached, true);
+    }
+    Statement statement = extract(file, mimeType, listener);
+    if (statement.transactions() != null && !statement.transactions().isEmpty()) {
+      statementCache.put(sha256, statement);
+    }
+    return new Extraction(statement, false);
+  }
+
+  private Statement extract(Path file, MimeType mimeType, StatementExtractionListener listener)
+      throws Exception {
+    statementSize.record(Files.size(file));
+    if (PDF.equalsTypeAndSubtype(mimeType)) {
+      Statement statement = textLayerExtractor.extract(file);
+      if (statement != null) {
+        textLayerExtractions.increment();
+        return statement;
+      }
+    }
+    llmExtractions.increment();
+    String categories = categoryService.getCategories();
+    PageRanges ranges = split(file, mimeType);
+    try {
+      if (ranges.files().isEmpty()) {
+        OrderedTransactions transactions = new OrderedTransactions(1, listener::transaction);
+        extract(file, mimeType, categories, "", transaction -> transactions.add(0, transaction));
+        transactions.complete(0);
+        return new Statement(transactions.transactions());
+      }
+      return extract(ranges, mimeType, categories, listener);
+    } finally {
+      for (Path range : ranges.files()) {
+        Files.deleteIfExists(range);
+      }
+    }
+  }
+
+  private Statement extract(PageRanges pageRanges, MimeType mimeType, String categories,
+      StatementExtractionListener listener) throws InterruptedException {
+    List<Path> ranges = pageRanges.files();
+    int pages = pageRanges.pages();
+    long start = System.nanoTime();
+    OrderedTransactions transactions =
+        new OrderedTransactions(ranges.size(), listener::transaction);
+    AtomicInteger extractedRanges = new AtomicInteger();
+    listener.progress(0, ranges.size());
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<Future<?>> futures = new ArrayList<>(ranges.size());
+      for (int i = 0; i < ranges.size(); i++) {
+        int index = i;
+        Path range = ranges.get(i);
+        String rangePrompt = RANGE_PROMPT
+            .replace("{first}", String.valueOf(i * pagesPerRequest + 1))
+            .replace("{last}", String.valueOf(Math.min((i + 1) * pagesPerRequest, pages)))
+            .replace("{pages}", String.valueOf(pages));
+        futures.add(executor.submit(() -> {
+          extract(range, mimeType, categories, rangePrompt,
+              transaction -> transactions.add(index, transaction));
+          transactions.complete(index);
+          listener.progress(extractedRanges.incrementAndGet(), ranges.size());
+          return null;
+        }));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (InterruptedException e) {
+          // Interrupts the requests in flight, so that closing the executor does not wait for them
+          futures.forEach(future -> future.cancel(true));
+          throw e;
+        } catch (ExecutionException e) {
+          futures.forEach(future -> future.cancel(true));
+          throw new IllegalStateException("Failed to extract the transactions of pages "
+              + (i * pagesPerRequest + 1) + " to " + Math.min((i + 1) * pagesPerRequest, pages),
+              e.getCause());
+        }
+      }
+    }
+
+    Statement statement = new Statement(transactions.transactions());
+    logger.info("Extracted {} transactions from {} page ranges in {} ms",
+        statement.transactions().size(), ranges.size(), (System.nanoTime() - start) / 1_000_000);
+    return statement;
+  }
+
+  /**
+   * Streams the transactions of the statement or page range from the model. The request fails
+   * when the model has not sent anything for the read timeout.
+   */
+  private void extract(Path content, MimeType mimeType, String categories, String rangePrompt,
+      Consumer<Transaction> consumer) throws IOException, InterruptedException {
+    long size = Files.size(content);
+    if (size > maxRequestSize) {
+      throw new IllegalStateException("The statement cannot be extracted in requests of at most "
+          + DataSize.ofBytes(maxRequestSize).toMegabytes() + "MB: " + size + " bytes to send");
+    }
+    requestSize.record(size);
+    requests.acquire();
+    buffered.addAndGet(size);
+    try {
+      TransactionStreamParser parser = new TransactionStreamParser(objectMapper, consumer);
+      Flux<String> chunks = chatClient.prompt()
+          .user(userMessage -> userMessage.text(PROMPT + rangePrompt + FORMAT)
+              .param("categories", categories).param("format", format)
+              .media(mimeType, new FileSystemResource(content)))
+          .stream().content().timeout(readTimeout);
+      // Closing the stream cancels the request, should the parser give up on the response
+      try (Stream<String> stream = chunks.toStream()) {
+        for (Iterator<String> it = stream.iterator(); it.hasNext();) {
+          parser.feed(it.next());
+        }
+      }
+      parser.finish();
+    } finally {
+      buffered.addAndGet(-size);
+      requests.release();
+    }
+  }
+
+  /**
+   * Splits a PDF statement into ranges of pages, each saved to a temporary PDF of its own. There
+   * are no ranges for anything else, or for a PDF that cannot be split, such as a password
+   * protected one, which is extracted whole.
+   */
+  private PageRanges split(Path file, MimeType mimeType) throws IOException {
+    if (!PDF.equalsTypeAndSubtype(mimeType)) {
+      return new PageRanges(List.of(), 0);
+    }
+    List<Path> ranges = new ArrayList<>();
+    try (PDDocument document =
+        Loader.loadPDF(file.toFile(), IOUtils.createTempFileOnlyStreamCache())) {
+      int pages = document.getNumberOfPages();
+      if (pages <= pagesPerRequest) {
+        return new PageRanges(List.of(), pages);
+      }
+      document.setAllSecurityToBeRemoved(true);
+      Splitter splitter = new Splitter();
+      splitter.setSplitAtPage(pagesPerRequest);
+      splitter.setStreamCacheCreateFunction(IOUtils.createTempFileOnlyStreamCache());
+      for (PDDocument range : splitter.split(document)) {
+        try (range) {
+          Path rangeFile = Files.createTempFile("statement-", ".pdf");
+          ranges.add(rangeFile);
+          range.save(rangeFile.toFile());
+        }
+      }
+      logger.info("Split the {}-page statement into {} ranges", pages, ranges.size());
+      return new PageRanges(ranges, pages);
+    } catch (IOException e) {
+      logger.warn("Could not split the statement, extracting it in one request: {}",
+          e.getMessage());
+      for (Path range : ranges) {
+        Files.deleteIfExists(range);
+      }
+      return new PageRanges(List.of(), 0);
+    }
+  }
+
+  /**
+   * The transactions of the page ranges, handed over in page order: the transactions of a range
+   * are handed over as they are added once all the ranges before it are complete, and held back
+   * until then.
+   */
+  private static final class OrderedTransactions {
+
+    private final List<List<Transaction>> ranges = new ArrayList<>();
+    private final boolean[] complete;
+    private final Consumer<Transaction> consumer;
+    private final List<Transaction> transactions = new ArrayList<>();
+    private int head;
+    private int handedOver;
+    private Transaction previous;
+
+    OrderedTransactions(int ranges, Consumer<Transaction> consumer) {
+      for (int i = 0; i < ranges; i++) {
+        this.ranges.add(new ArrayList<>());
+      }
+      this.complete = new boolean[ranges];
+      this.consumer = consumer;
+    }
+
+    synchronized void add(int range, Transaction transaction) {
+      ranges.get(range).add(transaction);
+      handOver();
+    }
+
+    synchronized void complete(int range) {
+      complete[range] = true;
+      handOver();
+    }
+
+    synchronized List<Transaction> transactions() {
+      return List.copyOf(transactions);
+    }
+
+    private void handOver() {
+      while (head < ranges.size()) {
+        List<Transaction> range = ranges.get(head);
+        for (; handedOver < range.size(); handedOver++) {
+          Transaction transaction = range.get(handedOver);
+          if (handedOver == 0 && previous != null && sameTransaction(previous, transaction)) {
+            logger.warn("Dropped the first transaction of page range {}, extracted from the"
+                + " previous range too: {}", head + 1, transaction);
+            continue;
+          }
+          transactions.add(transaction);
+          consumer.accept(transaction);
+        }
+        if (!complete[head]) {
+          return;
+        }
+        if (!range.isEmpty()) {
+          previous = range.get(range.size() - 1);
+        }
+        head++;
+        handedOver = 0;
+      }
+    }
+
+  }
+
+  /**
+   * Whether two transactions are the same: same date, amount and detail, ignoring case and
+   * whitespace. A detail cut short by the page break is a different transaction, so that genuine
+   * transactions are not dropped because their detail starts like another one.
+   */
+  private static boolean sameTransaction(Transaction a, Transaction b) {
+    if (a.date() == null || !a.date().equals(b.date()) || a.amount() == null
+        || !a.amount().equals(b.amount())) {
+      return false;
+    }
+    String detail = normalize(a.transactionDetail());
+    return !detail.isEmpty() && detail.equals(normalize(b.transactionDetail()));
+  }
+
+  private static String normalize(String detail) {
+    return detail == null ? "" : detail.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").strip();
+  }
+
+}
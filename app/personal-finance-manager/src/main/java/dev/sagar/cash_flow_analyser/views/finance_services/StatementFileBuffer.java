@@ -0,0 +1,114 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vaadin.flow.component.upload.MultiFileReceiver;
+
+/**
+ * Receives uploaded statements into temporary files rather than on the heap, as Vaadin's
+ * {@code MemoryBuffer} does, computing the SHA-256 of every statement as it is written. Several
+ * statements can be uploaded at once. A received statement is {@link #take(String) taken} from
+ * the buffer by whoever extracts it, and who is then to delete its file.
+ */
+class StatementFileBuffer implements MultiFileReceiver {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(StatementFileBuffer.class);
+
+  /**
+   * A received statement.
+   *
+   * @param sha256 the SHA-256 of the statement, in hexadecimal
+   */
+  record UploadedFile(String fileName, String mimeType, Path file, String sha256, long size) {
+
+    void delete() {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        logger.warn("Failed to delete {}: {}", file, e.getMessage());
+      }
+    }
+  }
+
+  private final transient Map<String, Path> receiving = new ConcurrentHashMap<>();
+  private final transient Map<String, UploadedFile> received = new ConcurrentHashMap<>();
+
+  @Override
+  public OutputStream receiveUpload(String fileName, String mimeType) {
+    delete(fileName);
+    try {
+      Path file = Files.createTempFile("statement-", ".upload");
+      receiving.put(fileName, file);
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      OutputStream out = new DigestOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(file)), digest);
+      return new FilterOutputStream(out) {
+
+        private long size;
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          out.write(b, off, len);
+          size += len;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+          out.write(b);
+          size++;
+        }
+
+        @Override
+        public void close() throws IOException {
+          super.close();
+          if (receiving.remove(fileName, file)) {
+            received.put(fileName, new UploadedFile(fileName, mimeType, file,
+                HexFormat.of().formatHex(digest.digest()), size));
+          }
+        }
+
+      };
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to create a file for " + fileName, e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Takes the received statement with the given file name out of the buffer.
+   *
+   * @return the statement, or {@code null} if it was not received
+   */
+  UploadedFile take(String fileName) {
+    return received.remove(fileName);
+  }
+
+  /**
+   * Deletes the file of the statement with the given file name, received or not.
+   */
+  void delete(String fileName) {
+    Path file = receiving.remove(fileName);
+    if (file != null) {
+      new UploadedFile(fileName, null, file, null, 0).delete();
+    }
+    UploadedFile uploadedFile = received.remove(fileName);
+    if (uploadedFile != null) {
+      uploadedFile.delete();
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+/**
+ * The layout of the statements of a bank, used by the {@link TextLayerExtractor} to read the
+ * transactions off the text layer of a PDF statement. The templates are configured in
+ * {@code statement-templates.json}.
+ *
+ * @param bank the name of the bank, for the logs
+ * @param marker text found on the first page of the bank's statements, and only there
+ * @param date the column of the transaction dates
+ * @param detail the column of the transaction details, which can span several lines
+ * @param amount the column of the transaction amounts
+ * @param datePattern the regex of the dates, in the date column
+ * @param dateFormat the {@link java.time.format.DateTimeFormatter} pattern of the dates
+ * @param amountPattern the regex of the amounts, in the amount column
+ * @param creditPattern the regex of the amounts that are credits, such as payments and refunds
+ */
+record StatementTemplate(String bank, String marker, Column date, Column detail, Column amount,
+    String datePattern, String dateFormat, String amountPattern, String creditPattern) {
+
+  /**
+   * A column of the statement, from and to the given x coordinates, in points from the left of
+   * the page. A word is in the column its first character starts in.
+   */
+  record Column(float from, float to) {
+
+    boolean contains(float x) {
+      return x >= from && x < to;
+    }
+  }
+
+}
@@ -0,0 +1,413 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.sagar.cash_flow_analyser.commonservice.CategoryService;
+import dev.sagar.cash_flow_analyser.dto.FinancialTransaction;
+import dev.sagar.cash_flow_analyser.dto.TransactionType;
+import dev.sagar.cash_flow_analyser.views.batch_job_services.CategorizeTransactionProcessor;
+import dev.sagar.cash_flow_analyser.views.batch_job_services.LocalCategorizeTransactionProcessor;
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Statement;
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Transaction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Extracts the transactions of a PDF statement from its text layer, without sending the
+ * statement to the LLM. The statement is laid out with the first {@link StatementTemplate} whose
+ * marker it contains: every line of text is split into the columns of the template, a line with
+ * a date in the date column starting a row and a line with nothing but a detail continuing the
+ * row before it.
+ *
+ * The rows are categorized like the transactions of the batch jobs, by the local classifier and
+ * then by the category cache, the LLM only being asked for the rest. A row whose date, amount or
+ * detail cannot be parsed is a low-confidence row, and the LLM is asked to make sense of its text
+ * instead. A statement without a text layer (a scanned statement), that matches no template, or
+ * with too many low-confidence rows is left to the LLM altogether.
+ */
+@Service
+class TextLayerExtractor {
+
+  private static final org.slf4j.Logger logger =
+      org.slf4j.LoggerFactory.getLogger(TextLayerExtractor.class);
+
+  private static final Pattern BALANCE =
+      Pattern.compile("(opening|closing) balance", Pattern.CASE_INSENSITIVE);
+  private static final Pattern NOT_AMOUNT = Pattern.compile("[^0-9.]");
+  private static final DateTimeFormatter STATEMENT_DATE = DateTimeFormatter.ofPattern("dd/MM/yy");
+  private static final double MAX_LOW_CONFIDENCE_SHARE = 0.5;
+
+  private static final String PROMPT =
+      """
+          The numbered entries below were read from the text of a bank statement, but could not be parsed.
+          Each entry is meant to be one transaction, its date, detail and amount separated by " | ".
+          Extract the transaction of each entry, using the number in front of the entry as its index.
+          Return the Transaction Date in the format DD/MM/YY.
+          Skip the entries that are not transactions, such as "OPENING BALANCE" and "CLOSING BALANCE".
+          Skip any transaction amount that is less than 0. This indicates a payment or a refund.
+          For each transaction, determine the associated category.
+          Select the category from the CATEGORIES section below.
+          If you are unsure about the category, use "Other".
+
+          CATEGORIES (Select one for each transaction):
+          {categories}
+
+          ENTRIES:
+          {entries}
+          """;
+
+  record ParsedEntry(int index, String date, String transactionDetail, String category,
+      Double amount) {
+  }
+
+  record ParsedEntries(List<ParsedEntry> transactions) {
+  }
+
+  private record Word(String text, float x) {
+  }
+
+  private record Template(StatementTemplate layout, Pattern datePattern,
+      DateTimeFormatter dateFormat, Pattern amountPattern, Pattern creditPattern) {
+
+    static Template of(StatementTemplate layout) {
+      return new Template(layout, Pattern.compile(layout.datePattern()),
+          DateTimeFormatter.ofPattern(layout.dateFormat(), Locale.ROOT),
+          Pattern.compile(layout.amountPattern()),
+          layout.creditPattern() != null ? Pattern.compile(layout.creditPattern()) : null);
+    }
+  }
+
+  private static final class Row {
+    final StringBuilder date = new StringBuilder();
+    final StringBuilder detail = new StringBuilder();
+    final StringBuilder amount = new StringBuilder();
+
+    String entry() {
+      return date + " | " + detail + " | " + amount;
+    }
+  }
+
+  private final ChatClient chatClient;
+  private final CategoryService categoryService;
+  private final LocalCategorizeTransactionProcessor localCategorizeTransactionProcessor;
+  private final CategorizeTransactionProcessor categorizeTransactionProcessor;
+  private final List<Template> templates;
+  private final int retryLimit;
+  private final Counter highConfidenceRows;
+  private final Counter lowConfidenceRows;
+
+  public TextLayerExtractor(@Qualifier("geminiOpenaiChatClient") ChatClient geminiChatClient,
+      CategoryService categoryService,
+      LocalCategorizeTransactionProcessor localCategorizeTransactionProcessor,
+      CategorizeTransactionProcessor categorizeTransactionProcessor, ObjectMapper objectMapper,
+      MeterRegistry meterRegistry,
+      @Value("classpath:/statement-templates.json") Resource templatesResource,
+      @Value("${app.categorization.llm.retry-limit:5}") int retryLimit)
+      throws IOException {
+    this.chatClient = geminiChatClient;
+    this.categoryService = categoryService;
+    this.localCategorizeTransactionProcessor = localCategorizeTransactionProcessor;
+    this.categorizeTransactionProcessor = categorizeTransactionProcessor;
+    this.retryLimit = retryLimit;
+    try (InputStream in = templatesResource.getInputStream()) {
+      this.templates = Arrays.stream(objectMapper.readValue(in, StatementTemplate[].class))
+          .map(Template::of).toList();
+    }
+    this.highConfidenceRows =
+        meterRegistry.counter("statement.extraction.rows", "confidence", "high");
+    this.lowConfidenceRows =
+        meterRegistry.counter("statement.extraction.rows", "confidence", "low");
+    logger.info("Loaded {} statement templates", templates.size());
+  }
+
+  /**
+   * Extracts the transactions of a PDF statement from its text layer.
+   *
+   * @param file the PDF statement
+   * @return the transactions of the statement, in the order of the statement, or {@code null}
+   *         when the statement is to be extracted by the LLM
+   */
+  Statement extract(Path file) throws Exception {
+    long start = System.nanoTime();
+    List<List<Word>> lines;
+    try (PDDocument document =
+        Loader.loadPDF(file.toFile(), IOUtils.createTempFileOnlyStreamCache())) {
+      WordStripper stripper = new WordStripper();
+      stripper.getText(document);
+      lines = stripper.lines;
+    } catch (IOException e) {
+      logger.warn("Could not read the text of the statement: {}", e.getMessage());
+      return null;
+    }
+    if (lines.isEmpty()) {
+      logger.info("The statement has no text layer");
+      return null;
+    }
+
+    Template template = findTemplate(lines);
+    if (template == null) {
+      logger.info("The statement matches none of the statement templates");
+      return null;
+    }
+    List<Row> rows = rows(lines, template);
+
+    // Parsed transactions and low-confidence rows, by position in the statement
+    List<FinancialTransaction> parsed = new ArrayList<>();
+    List<Integer> parsedIndexes = new ArrayList<>();
+    List<Row> lowConfidence = new ArrayList<>();
+    List<Integer> lowConfidenceIndexes = new ArrayList<>();
+    for (int i = 0; i < rows.size(); i++) {
+      Row row = rows.get(i);
+      String detail = row.detail.toString().strip();
+      String amount = row.amount.toString().strip();
+      if (BALANCE.matcher(detail).find()) {
+        continue;
+      }
+      LocalDate date = parseDate(row.date.toString().strip(), template);
+      if (date == null || detail.isEmpty() || !template.amountPattern().matcher(amount).matches()) {
+        lowConfidence.add(row);
+        lowConfidenceIndexes.add(i);
+      } else if (template.creditPattern() == null
+          || !template.creditPattern().matcher(amount).find()) {
+        parsed.add(new FinancialTransaction(date,
+            Double.valueOf(NOT_AMOUNT.matcher(amount).replaceAll("")), detail,
+            TransactionType.DEBIT));
+        parsedIndexes.add(i);
+      }
+    }
+    highConfidenceRows.increment(parsed.size());
+    lowConfidenceRows.increment(lowConfidence.size());
+    int candidates = parsed.size() + lowConfidence.size();
+    if (rows.isEmpty() || lowConfidence.size() > candidates * MAX_LOW_CONFIDENCE_SHARE) {
+      logger.info("Only {} of the {} rows of the statement could be parsed with the {} template",
+          parsed.size(), rows.size(), template.layout().bank());
+      return null;
+    }
+
+    Transaction[] transactions = new Transaction[rows.size()];
+    List<FinancialTransaction> categorized = categorize(parsed);
+    for (int i = 0; i < categorized.size(); i++) {
+      FinancialTransaction transaction = categorized.get(i);
+      transactions[parsedIndexes.get(i)] =
+          new Transaction(STATEMENT_DATE.format(transaction.date()),
+              transaction.transaction_detail(), transaction.category(), transaction.amount());
+    }
+    for (ParsedEntry entry : requestTransactions(lowConfidence)) {
+      transactions[lowConfidenceIndexes.get(entry.index())] = new Transaction(entry.date(),
+          entry.transactionDetail(), entry.category(), entry.amount());
+    }
+
+    List<Transaction> statement =
+        Arrays.stream(transactions).filter(transaction -> transaction != null).toList();
+    logger.info("Extracted {} transactions from the text of the statement with the {} template,"
+        + " {} low-confidence rows, in {} ms", statement.size(), template.layout().bank(),
+        lowConfidence.size(), (System.nanoTime() - start) / 1_000_000);
+    return new Statement(statement);
+  }
+
+  private Template findTemplate(List<List<Word>> lines) {
+    StringBuilder text = new StringBuilder();
+    for (List<Word> line : lines) {
+      for (Word word : line) {
+        text.append(word.text()).append(' ');
+      }
+    }
+    String normalized = text.toString().toLowerCase(Locale.ROOT);
+    return templates.stream().filter(
+        template -> normalized.contains(template.layout().marker().toLowerCase(Locale.ROOT)))
+        .findFirst().orElse(null);
+  }
+
+  private static List<Row> rows(List<List<Word>> lines, Template template) {
+    StatementTemplate layout = template.layout();
+    List<Row> rows = new ArrayList<>();
+    Row row = null;
+    for (List<Word> line : lines) {
+      Row lineRow = new Row();
+      for (Word word : line) {
+        StringBuilder column = layout.date().contains(word.x()) ? lineRow.date
+            : layout.detail().contains(word.x()) ? lineRow.detail
+                : layout.amount().contains(word.x()) ? lineRow.amount : null;
+        if (column != null) {
+          column.append(column.isEmpty() ? "" : " ").append(word.text());
+        }
+      }
+      if (template.datePattern().matcher(lineRow.date).lookingAt()) {
+        row = lineRow;
+        rows.add(row);
+      } else if (row != null && lineRow.date.isEmpty() && lineRow.amount.isEmpty()
+          && !lineRow.detail.isEmpty()) {
+        row.detail.append(' ').append(lineRow.detail);
+      } else {
+        row = null;
+      }
+    }
+    return rows;
+  }
+
+  private static LocalDate parseDate(String date, Template template) {
+    var matcher = template.datePattern().matcher(date);
+    if (!matcher.lookingAt()) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(matcher.group(), template.dateFormat());
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Categorizes the transactions with the local classifier where it is confident enough, and
+   * with the category cache or the LLM otherwise.
+   */
+  private List<FinancialTransaction> categorize(List<FinancialTransaction> transactions)
+      throws Exception {
+    List<FinancialTransaction> categorized = new ArrayList<>(transactions.size());
+    List<FinancialTransaction> uncategorized = new ArrayList<>();
+    List<Integer> uncategorizedIndexes = new ArrayList<>();
+    for (FinancialTransaction transaction : transactions) {
+      FinancialTransaction local = localCategorizeTransactionProcessor.process(transaction);
+      if (!StringUtils.hasText(local.category())) {
+        uncategorized.add(local);
+        uncategorizedIndexes.add(categorized.size());
+      }
+      categorized.add(local);
+    }
+    List<FinancialTransaction> requested = requestCategories(uncategorized);
+    for (int i = 0; i < requested.size(); i++) {
+      categorized.set(uncategorizedIndexes.get(i), requested.get(i));
+    }
+    return categorized;
+  }
+
+  /**
+   * Asks the categorizer for the categories of the transactions, again when the provider
+   * throttled the request, as the batch step does with its chunks. The categorizer's rate limiter
+   * holds the next attempt back until the provider accepts requests again.
+   */
+  private List<FinancialTransaction> requestCategories(List<FinancialTransaction> transactions)
+      throws Exception {
+    for (int attempt = 1;; attempt++) {
+      try {
+        return categorizeTransactionProcessor.categorize(transactions);
+      } catch (TransientAiException e) {
+        if (attempt >= retryLimit) {
+          throw e;
+        }
+        logger.debug("Categorization throttled, attempt {} of {}: {}", attempt, retryLimit,
+            e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Asks the LLM for the transactions of the low-confidence rows.
+   */
+  private List<ParsedEntry> requestTransactions(List<Row> rows) {
+    if (rows.isEmpty()) {
+      return List.of();
+    }
+    StringBuilder entries = new StringBuilder();
+    for (int i = 0; i < rows.size(); i++) {
+      entries.append(i).append(": ").append(rows.get(i).entry()).append('\n');
+    }
+    ParsedEntries response = chatClient.prompt()
+        .user(userMessage -> userMessage.text(PROMPT)
+            .param("categories", categoryService.getCategories())
+            .param("entries", entries.toString()))
+        .call().entity(ParsedEntries.class);
+    if (response == null || response.transactions() == null) {
+      return List.of();
+    }
+    return response.transactions().stream()
+        .filter(entry -> entry != null && entry.index() >= 0 && entry.index() < rows.size()
+            && entry.date() != null && entry.amount() != null && entry.amount() >= 0)
+        .toList();
+  }
+
+  /**
+   * Collects the words of every line of the text, with the x coordinate they start at.
+   */
+  private static final class WordStripper extends PDFTextStripper {
+
+    private final List<List<Word>> lines = new ArrayList<>();
+    private List<Word> line = new ArrayList<>();
+
+    WordStripper() {
+      setSortByPosition(true);
+    }
+
+    /**
+     * Splits the text at its spaces, as a single string of text can run across columns.
+     */
+    @Override
+    protected void writeString(String text, List<TextPosition> textPositions) {
+      StringBuilder word = new StringBuilder();
+      float x = 0;
+      for (TextPosition position : textPositions) {
+        String unicode = position.getUnicode();
+        if (unicode == null || unicode.isBlank()) {
+          endWord(word, x);
+        } else {
+          if (word.isEmpty()) {
+            x = position.getXDirAdj();
+          }
+          word.append(unicode);
+        }
+      }
+      endWord(word, x);
+    }
+
+    private void endWord(StringBuilder word, float x) {
+      if (!word.isEmpty()) {
+        line.add(new Word(word.toString(), x));
+        word.setLength(0);
+      }
+    }
+
+    @Override
+    protected void writeLineSeparator() {
+      endLine();
+    }
+
+    @Override
+    protected void endPage(PDPage page) throws IOException {
+      endLine();
+      super.endPage(page);
+    }
+
+    private void endLine() {
+      if (!line.isEmpty()) {
+        lines.add(line);
+        line = new ArrayList<>();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Statement;
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Transaction;
+
+/**
+ * Parses a {@link Statement} as the model streams it, handing over every transaction of the
+ * {@code transactions} array as soon as its object is complete rather than once the whole
+ * statement has been received. The text is parsed with the non-blocking Jackson parser, so only
+ * the transaction being received is held in memory.
+ *
+ * Whatever comes before the statement, such as the opening of a Markdown code block, and after
+ * it is ignored. The transactions are those of the first {@code transactions} array, whatever the
+ * object it is nested in and the fields around it. A bare array of transactions is accepted too.
+ */
+final class TransactionStreamParser {
+
+  private final ObjectMapper objectMapper;
+  private final Consumer<Transaction> consumer;
+  private final JsonParser parser;
+  private final ByteArrayFeeder feeder;
+  private boolean started;
+  private boolean done;
+  private int depth;
+  private String fieldName;
+  private int transactionsDepth = -1;
+  private TokenBuffer transaction;
+  private int transactions;
+
+  TransactionStreamParser(ObjectMapper objectMapper, Consumer<Transaction> consumer)
+      throws IOException {
+    this.objectMapper = objectMapper;
+    this.consumer = consumer;
+    this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+    this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+  }
+
+  /**
+   * Parses the next chunk of text, handing over the transactions it completes.
+   */
+  void feed(String chunk) throws IOException {
+    if (done) {
+      return;
+    }
+    if (!started) {
+      int start = indexOfStart(chunk);
+      if (start < 0) {
+        return;
+      }
+      chunk = chunk.substring(start);
+      started = true;
+    }
+    byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+    feeder.feedInput(bytes, 0, bytes.length);
+    JsonToken token;
+    while (!done && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+      handle(token);
+    }
+  }
+
+  /**
+   * Ends the parsing.
+   *
+   * @return the number of transactions handed over
+   * @throws IOException if the statement was cut short
+   */
+  int finish() throws IOException {
+    feeder.endOfInput();
+    if (started && !done) {
+      throw new IOException("The statement ended after " + transactions + " transactions, before"
+          + " it was complete");
+    }
+    parser.close();
+    return transactions;
+  }
+
+  private void handle(JsonToken token) throws IOException {
+    if (transaction != null) {
+      transaction.copyCurrentEvent(parser);
+    }
+    switch (token) {
+      case FIELD_NAME -> fieldName = parser.currentName();
+      case START_OBJECT, START_ARRAY -> {
+        depth++;
+        if (token == JsonToken.START_ARRAY && transactionsDepth < 0
+            && (depth == 1 || "transactions".equals(fieldName))) {
+          transactionsDepth = depth;
+        } else if (token == JsonToken.START_OBJECT && depth == transactionsDepth + 1
+            && transaction == null) {
+          transaction = new TokenBuffer(parser);
+          transaction.copyCurrentEvent(parser);
+        }
+      }
+      case END_OBJECT, END_ARRAY -> {
+        if (token == JsonToken.END_OBJECT && depth == transactionsDepth + 1
+            && transaction != null) {
+          try (JsonParser transactionParser = transaction.asParser()) {
+            consumer.accept(objectMapper.readValue(transactionParser, Transaction.class));
+          }
+          transaction = null;
+          transactions++;
+        }
+        depth--;
+        done = depth == 0;
+      }
+      default -> {
+      }
+    }
+  }
+
+  private static int indexOfStart(String chunk) {
+    int object = chunk.indexOf('{');
+    int array = chunk.indexOf('[');
+    return object < 0 ? array : array < 0 ? object : Math.min(object, array);
+  }
+
+}
@@ -83,7 +83,8 @@ CREATE TABLE IF NOT EXISTS credit_card_payments (
     amount double precision NOT NULL,
     transaction_detail varchar(255) NOT NULL,
     insertion_date timestamp NOT NULL DEFAULT NOW(),
-    source_file varchar(255) NOT NULL
+    source_file varchar(255) NOT NULL,
+    fingerprint varchar(64)
 );
 
 -- Table: credit_transactions
@@ -93,7 +94,8 @@ CREATE TABLE IF NOT EXISTS credit_transactions (
     amount double precision NOT NULL,
     transaction_detail varchar(255) NOT NULL,
     insertion_date timestamp NOT NULL DEFAULT NOW(),
-    source_file varchar(255) NOT NULL
+    source_file varchar(255) NOT NULL,
+    fingerprint varchar(64)
 );
 
 -- Table: financial_transactions
@@ -105,7 +107,27 @@ CREATE TABLE IF NOT EXISTS financial_transactions (
     transaction_detail varchar(255) NOT NULL,
     transaction_type varchar(255) NOT NULL DEFAULT 'DEBIT'::character varying,
     insertion_date timestamp NOT NULL DEFAULT NOW(),
-    source_file varchar(255) NOT NULL
+    source_file varchar(255) NOT NULL,
+    fingerprint varchar(64)
+);
+
+-- Transaction fingerprints, see TransactionFingerprint. Rows inserted before fingerprints were
+-- introduced have none and are not deduplicated.
+ALTER TABLE credit_card_payments ADD COLUMN IF NOT EXISTS fingerprint varchar(64);
+ALTER TABLE credit_transactions ADD COLUMN IF NOT EXISTS fingerprint varchar(64);
+ALTER TABLE financial_transactions ADD COLUMN IF NOT EXISTS fingerprint varchar(64);
+CREATE UNIQUE INDEX IF NOT EXISTS credit_card_payments_fingerprint_idx ON credit_card_payments (fingerprint);
+CREATE UNIQUE INDEX IF NOT EXISTS credit_transactions_fingerprint_idx ON credit_transactions (fingerprint);
+CREATE UNIQUE INDEX IF NOT EXISTS financial_transactions_fingerprint_idx ON financial_transactions (fingerprint);
+CREATE INDEX IF NOT EXISTS credit_card_payments_date_idx ON credit_card_payments ("date");
+CREATE INDEX IF NOT EXISTS credit_transactions_date_idx ON credit_transactions ("date");
+CREATE INDEX IF NOT EXISTS financial_transactions_date_idx ON financial_transactions ("date");
+
+-- Table: ingested_files
+CREATE TABLE IF NOT EXISTS ingested_files (
+    sha256 varchar(64) PRIMARY KEY,
+    source_file varchar(255) NOT NULL,
+    ingested_at timestamp NOT NULL DEFAULT NOW()
 );
 
 -- Table: categories
@@ -113,4 +135,22 @@ CREATE TABLE IF NOT EXISTS categories(
     id bigint GENERATED ALWAYS AS IDENTITY NOT NULL,
     category varchar(255) NOT NULL UNIQUE,
     PRIMARY KEY(id)
-);
\ No newline at end of file
+);
+
+-- Table: category_cache
+CREATE TABLE IF NOT EXISTS category_cache (
+    merchant_key varchar(255) PRIMARY KEY,
+    category varchar(255) NOT NULL,
+    categories_version varchar(64) NOT NULL,
+    updated_at timestamp NOT NULL DEFAULT NOW()
+);
+
+-- Table: statement_cache
+CREATE TABLE IF NOT EXISTS statement_cache (
+    sha256 varchar(64) NOT NULL,
+    categories_version varchar(64) NOT NULL,
+    statement text NOT NULL,
+    size integer NOT NULL,
+    used_at timestamp NOT NULL DEFAULT NOW(),
+    PRIMARY KEY (sha256, categories_version)
+);
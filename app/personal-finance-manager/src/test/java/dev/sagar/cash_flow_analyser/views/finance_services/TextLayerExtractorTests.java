@@ -0,0 +1,136 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.core.io.ClassPathResource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.sagar.cash_flow_analyser.commonservice.CategoryService;
+import dev.sagar.cash_flow_analyser.dto.FinancialTransaction;
+import dev.sagar.cash_flow_analyser.views.batch_job_services.CategorizeTransactionProcessor;
+import dev.sagar.cash_flow_analyser.views.batch_job_services.LocalCategorizeTransactionProcessor;
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Statement;
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Transaction;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Extracts {@code statements/hsbc-credit-card.pdf}, a two-page statement laid out like the HSBC
+ * Australia credit card statements, with the templates of {@code statement-templates.json}. The
+ * local classifier only knows Woolworths, the other transactions being categorized as "Other" in
+ * place of the LLM.
+ */
+class TextLayerExtractorTests {
+
+	private final ChatClient chatClient = mock(ChatClient.class);
+
+	private TextLayerExtractor extractor;
+
+	@BeforeEach
+	void createExtractor() throws Exception {
+		LocalCategorizeTransactionProcessor localCategorizeTransactionProcessor = mock(
+				LocalCategorizeTransactionProcessor.class);
+		when(localCategorizeTransactionProcessor.process(any())).thenAnswer(invocation -> {
+			FinancialTransaction transaction = invocation.getArgument(0);
+			return transaction.transaction_detail().startsWith("WOOLWORTHS")
+					? withCategory(transaction, "Groceries") : transaction;
+		});
+		CategorizeTransactionProcessor categorizeTransactionProcessor = mock(CategorizeTransactionProcessor.class);
+		when(categorizeTransactionProcessor.categorize(anyList())).thenAnswer(invocation -> {
+			List<FinancialTransaction> transactions = invocation.getArgument(0);
+			return transactions.stream().map(transaction -> withCategory(transaction, "Other")).toList();
+		});
+		extractor = new TextLayerExtractor(chatClient, mock(CategoryService.class),
+				localCategorizeTransactionProcessor, categorizeTransactionProcessor, new ObjectMapper(),
+				new SimpleMeterRegistry(), new ClassPathResource("statement-templates.json"), 5);
+	}
+
+	private static FinancialTransaction withCategory(FinancialTransaction transaction, String category) {
+		return new FinancialTransaction(transaction.date(), transaction.amount(), transaction.transaction_detail(),
+				category, transaction.transaction_type(), transaction.fingerprint());
+	}
+
+	@Test
+	void extractsTheDebitsOfTheStatementWithoutTheLlm() throws Exception {
+		Statement statement = extractor.extract(fixture());
+
+		assertThat(statement.transactions()).containsExactly(
+				new Transaction("02/02/24", "WOOLWORTHS 1234 SYDNEY NSW", "Groceries", 45.2),
+				new Transaction("03/02/24", "AMAZON MKTPLC AU SYDNEY SOUTH AUS", "Other", 120.0),
+				new Transaction("07/02/24", "UBER *TRIP HELP.UBER.COM NL Foreign currency 14.20 EUR", "Other",
+						23.45),
+				new Transaction("12/02/24", "QANTAS AIRWAYS MASCOT", "Other", 1234.5),
+				new Transaction("15/02/24", "INTERNATIONAL TRANSACTION FEE", "Other", 0.69));
+		verifyNoInteractions(chatClient);
+	}
+
+	@Test
+	void assignsTheWordsOfALineToTheColumnsTheyStartIn() throws Exception {
+		Transaction woolworths = extractor.extract(fixture()).transactions().get(0);
+
+		// "02 Feb 24" is three words of the date column, the amount is right-aligned in its column
+		assertThat(woolworths.date()).isEqualTo("02/02/24");
+		assertThat(woolworths.transactionDetail()).isEqualTo("WOOLWORTHS 1234 SYDNEY NSW");
+		assertThat(woolworths.amount()).isEqualTo(45.2);
+	}
+
+	@Test
+	void joinsTheDetailLinesOfATransaction() throws Exception {
+		List<Transaction> transactions = extractor.extract(fixture()).transactions();
+
+		assertThat(transactions).extracting(Transaction::transactionDetail)
+			.contains("AMAZON MKTPLC AU SYDNEY SOUTH AUS", "UBER *TRIP HELP.UBER.COM NL Foreign currency 14.20 EUR")
+			// Neither the table header nor the card number of the second page continue a transaction
+			.noneMatch(detail -> detail.contains("Transaction Details") || detail.contains("XXXX"));
+	}
+
+	@Test
+	void skipsTheCreditsAndTheBalances() throws Exception {
+		List<Transaction> transactions = extractor.extract(fixture()).transactions();
+
+		// "1,500.00CR" is a payment, "-89.00" a refund
+		assertThat(transactions).extracting(Transaction::transactionDetail)
+			.noneMatch(detail -> detail.startsWith("PAYMENT") || detail.startsWith("REFUND")
+					|| detail.endsWith("BALANCE"));
+		assertThat(transactions).extracting(Transaction::amount).allMatch(amount -> amount > 0);
+	}
+
+	@Test
+	void parsesTheThousandsSeparatorOfTheAmounts() throws Exception {
+		List<Transaction> transactions = extractor.extract(fixture()).transactions();
+
+		assertThat(transactions).filteredOn(transaction -> transaction.transactionDetail().startsWith("QANTAS"))
+			.extracting(Transaction::amount)
+			.containsExactly(1234.5);
+	}
+
+	@Test
+	void leavesAStatementWithoutTextToTheLlm(@TempDir Path directory) throws Exception {
+		Path scanned = directory.resolve("scanned.pdf");
+		try (PDDocument document = new PDDocument()) {
+			document.addPage(new PDPage());
+			document.save(scanned.toFile());
+		}
+
+		assertThat(extractor.extract(scanned)).isNull();
+	}
+
+	private static Path fixture() throws Exception {
+		return new ClassPathResource("statements/hsbc-credit-card.pdf").getFile().toPath();
+	}
+
+}
@@ -0,0 +1,138 @@
+package dev.sagar.cash_flow_analyser.views.finance_services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.sagar.cash_flow_analyser.views.finance_services.BankStatementAnalyzer.Transaction;
+
+class TransactionStreamParserTests {
+
+	private static final String STATEMENT = """
+			{"transactions": [
+			  {"date": "01/02/24", "transactionDetail": "WOOLWORTHS \\"METRO\\" 1234", "category": "Groceries", "amount": 12.5},
+			  {"date": "02/02/24", "transactionDetail": "SHELL {COLES} [EXPRESS]", "category": "Transport", "amount": 60.0}
+			]}""";
+
+	private static final List<Transaction> TRANSACTIONS = List.of(
+			new Transaction("01/02/24", "WOOLWORTHS \"METRO\" 1234", "Groceries", 12.5),
+			new Transaction("02/02/24", "SHELL {COLES} [EXPRESS]", "Transport", 60.0));
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void parsesTheStatementSplitAnywhere() throws IOException {
+		for (int split = 0; split <= STATEMENT.length(); split++) {
+			List<Transaction> transactions = new ArrayList<>();
+			TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transactions::add);
+			parser.feed(STATEMENT.substring(0, split));
+			parser.feed(STATEMENT.substring(split));
+			assertThat(parser.finish()).as("split at %d", split).isEqualTo(2);
+			assertThat(transactions).as("split at %d", split).isEqualTo(TRANSACTIONS);
+		}
+	}
+
+	@Test
+	void handsOverEachTransactionAsSoonAsItIsComplete() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transactions::add);
+		int endOfFirst = STATEMENT.indexOf('}') + 1;
+		int endOfSecond = STATEMENT.lastIndexOf("}\n]") + 1;
+		for (int i = 0; i < STATEMENT.length(); i++) {
+			parser.feed(STATEMENT.substring(i, i + 1));
+			assertThat(transactions).as("after %d characters", i + 1)
+				.hasSize(i + 1 < endOfFirst ? 0 : i + 1 < endOfSecond ? 1 : 2);
+		}
+		assertThat(parser.finish()).isEqualTo(2);
+		assertThat(transactions).isEqualTo(TRANSACTIONS);
+	}
+
+	@Test
+	void splitsInsideAnEscapedQuote() throws IOException {
+		int escape = STATEMENT.indexOf("\\\"");
+		List<Transaction> transactions = new ArrayList<>();
+		TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transactions::add);
+		parser.feed(STATEMENT.substring(0, escape + 1));
+		parser.feed(STATEMENT.substring(escape + 1));
+		parser.finish();
+		assertThat(transactions.get(0).transactionDetail()).isEqualTo("WOOLWORTHS \"METRO\" 1234");
+	}
+
+	@Test
+	void parsesAnEmptyTransactionsArray() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transactions::add);
+		parser.feed("{\"transactions\": [");
+		parser.feed("]}");
+		assertThat(parser.finish()).isZero();
+		assertThat(transactions).isEmpty();
+	}
+
+	@Test
+	void rejectsATruncatedStatement() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transactions::add);
+		int cut = STATEMENT.indexOf("SHELL");
+		parser.feed(STATEMENT.substring(0, cut));
+		assertThatIOException().isThrownBy(parser::finish).withMessageContaining("after 1 transactions");
+		assertThat(transactions).containsExactly(TRANSACTIONS.get(0));
+	}
+
+	@Test
+	void rejectsAStatementCutAfterTheLastTransaction() throws IOException {
+		TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transaction -> {
+		});
+		parser.feed(STATEMENT.substring(0, STATEMENT.lastIndexOf(']')));
+		assertThatIOException().isThrownBy(parser::finish);
+	}
+
+	@Test
+	void ignoresTheFieldsAroundTheTransactions() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transactions::add);
+		parser.feed("{\"account\": {\"name\": \"Everyday\", \"balances\": [{\"amount\": 1.0}]}, \"pages\": [1, 2], ");
+		parser.feed(STATEMENT.substring(1, STATEMENT.length() - 1));
+		parser.feed(", \"closingBalance\": {\"amount\": 100.0}}");
+		assertThat(parser.finish()).isEqualTo(2);
+		assertThat(transactions).isEqualTo(TRANSACTIONS);
+	}
+
+	@Test
+	void findsTheTransactionsOfAWrappedStatement() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transactions::add);
+		parser.feed("{\"statement\": {\"pages\": [[1, 2]], \"result\": ");
+		parser.feed(STATEMENT);
+		parser.feed("}}");
+		assertThat(parser.finish()).isEqualTo(2);
+		assertThat(transactions).isEqualTo(TRANSACTIONS);
+	}
+
+	@Test
+	void ignoresTheTextAroundTheStatement() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transactions::add);
+		parser.feed("Here are the transactions:\n```js");
+		parser.feed("on\n" + STATEMENT);
+		parser.feed("\n```\nLet me know if {anything} is missing.");
+		assertThat(parser.finish()).isEqualTo(2);
+		assertThat(transactions).isEqualTo(TRANSACTIONS);
+	}
+
+	@Test
+	void parsesABareArrayOfTransactions() throws IOException {
+		List<Transaction> transactions = new ArrayList<>();
+		TransactionStreamParser parser = new TransactionStreamParser(objectMapper, transactions::add);
+		parser.feed(STATEMENT.substring(STATEMENT.indexOf('['), STATEMENT.lastIndexOf(']') + 1));
+		assertThat(parser.finish()).isEqualTo(2);
+		assertThat(transactions).isEqualTo(TRANSACTIONS);
+	}
+
+}
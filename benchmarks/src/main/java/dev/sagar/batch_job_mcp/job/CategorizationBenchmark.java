@@ -0,0 +1,225 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.support.ClassifierCompositeItemWriter;
+import org.springframework.batch.item.support.CompositeItemProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import dev.sagar.benchmarks.BenchmarkDatabase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Categorizes a chunk of transactions the way the process-file-step does: through the
+ * {@link CompositeItemProcessor} of {@link BatchConfig#compositeProcessor} (known transaction,
+ * credit and credit card payment filters, then the local classifier), and the
+ * {@link CategorizingItemWriter}, which asks the LLM for the transactions the cache and the
+ * classifier could not categorize in a single request. The LLM is a stubbed {@link ChatModel}
+ * answering after {@code llmLatencyMillis}, the database an embedded PostgreSQL, and the JDBC
+ * writers are left out, see {@link TransactionWriterBenchmark}.
+ *
+ * With {@code merchants=recurring} the chunk is made of the merchants of the training data, which
+ * end up in the category cache, with {@code merchants=new} every transaction is of a merchant
+ * never seen before, so that every chunk makes an LLM request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CategorizationBenchmark {
+
+	private static final String[] CATEGORIES = { "Groceries", "Transport", "Entertainment", "Utilities", "Shopping" };
+
+	private static final String[] MERCHANTS = { "WOOLWORTHS 1234 SYDNEY", "UBER *TRIP HELP.UBER.COM",
+			"NETFLIX.COM PREMIUM", "AGL ENERGY BILL 7781", "AMAZON AU MARKETPLACE", "COLES 0456 MELBOURNE",
+			"OPAL TRAVEL CARD TOPUP", "SPOTIFY P1A2B3", "SYDNEY WATER 5521", "KMART 1022 PARRAMATTA" };
+
+	private static final Pattern NUMBERED_TRANSACTION = Pattern.compile("(?m)^\\d+: ");
+
+	@Param("100")
+	int chunkSize;
+
+	@Param({ "recurring", "new" })
+	String merchants;
+
+	@Param("0")
+	long llmLatencyMillis;
+
+	private BenchmarkDatabase database;
+
+	private CompositeItemProcessor<FinancialTransaction, FinancialTransaction> processor;
+
+	private ClassifierCompositeItemWriter<FinancialTransaction> writer;
+
+	private LocalCategorizeTransactionProcessor localCategorizeTransactionProcessor;
+
+	private long merchantSequence;
+
+	private long transactionSequence;
+
+	@Setup(Level.Trial)
+	public void startDatabase() throws Exception {
+		database = BenchmarkDatabase.start();
+		for (String category : CATEGORIES) {
+			database.jdbcClient().sql("INSERT INTO categories (category) VALUES (?)").param(category).update();
+		}
+		// Enough history for the classifier to be trained, years before the transactions of the chunks
+		for (int i = 0; i < 200; i++) {
+			database.jdbcClient()
+				.sql("""
+						INSERT INTO financial_transactions (date, amount, transaction_detail, category, source_file)
+						VALUES (?, ?, ?, ?, 'history.csv')
+						""")
+				.params(LocalDate.of(2020, 1, 1).plusDays(i), -10.0 - i, MERCHANTS[i % MERCHANTS.length],
+						CATEGORIES[i % MERCHANTS.length % CATEGORIES.length])
+				.update();
+		}
+
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		CategoryService categoryService = new CategoryService(database.jdbcClient());
+		categoryService.loadCategories();
+		CategoryCache categoryCache = new CategoryCache(categoryService, database.jdbcClient(),
+				new JdbcTemplate(database.dataSource()), meterRegistry, 10000);
+		categoryCache.initialize();
+		TransactionClassifier transactionClassifier = new TransactionClassifier(database.jdbcClient(),
+				categoryService);
+		transactionClassifier.initialize();
+		localCategorizeTransactionProcessor = new LocalCategorizeTransactionProcessor(transactionClassifier,
+				meterRegistry, 0.8);
+		// Neither the rate nor the number of requests in flight is what is measured
+		LlmRateLimiter llmRateLimiter = new LlmRateLimiter(16, 1, 16, 0.5, Double.MAX_VALUE, Integer.MAX_VALUE,
+				meterRegistry);
+		CategorizeTransactionProcessor categorizeTransactionProcessor = new CategorizeTransactionProcessor(
+				ChatClient.builder(stubbedChatModel()), categoryService, categoryCache, llmRateLimiter,
+				new IngestionMetrics(meterRegistry, categoryCache));
+
+		ItemWriter<FinancialTransaction> discard = chunk -> {
+		};
+		writer = new ClassifierCompositeItemWriter<>();
+		writer.setClassifier(new TransactionRouter(
+				new CategorizingItemWriter(categorizeTransactionProcessor, discard), discard, discard));
+	}
+
+	/**
+	 * A new processor for every iteration, as for every step execution, so that the fingerprints
+	 * of the transactions of the previous iterations are not known.
+	 */
+	@Setup(Level.Iteration)
+	public void createProcessor() {
+		List<ItemProcessor<FinancialTransaction, FinancialTransaction>> delegates = List.of(
+				new KnownTransactionFilterProcessor(database.jdbcClient()),
+				new FilterCreditTransactionsProcessor(), new FilterCreditCardPaymentsProcessor(),
+				localCategorizeTransactionProcessor);
+		processor = new CompositeItemProcessor<>();
+		processor.setDelegates(delegates);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopDatabase() throws Exception {
+		database.close();
+	}
+
+	@Benchmark
+	public void processAndCategorizeChunk(Blackhole blackhole) throws Exception {
+		Chunk<FinancialTransaction> chunk = new Chunk<>();
+		for (int i = 0; i < chunkSize; i++) {
+			FinancialTransaction processed = processor.process(nextTransaction(i));
+			if (processed != null) {
+				chunk.add(processed);
+			}
+		}
+		writer.write(chunk);
+		blackhole.consume(chunk);
+	}
+
+	private FinancialTransaction nextTransaction(int index) {
+		long sequence = transactionSequence++;
+		String detail = merchants.equals("new") ? "MERCHANT " + letters(merchantSequence++)
+				: MERCHANTS[index % MERCHANTS.length];
+		// A tenth of the transactions are credits, routed to the credits table without categorization
+		double amount = (sequence % 10 == 0) ? 1000 : -1 - sequence % 500;
+		LocalDate date = LocalDate.of(2024, 1, 1).plusDays(sequence % 365);
+		// Fingerprinted as by the FingerprintingItemReader of the steps
+		return new FinancialTransaction(date, amount, detail)
+			.withFingerprint(TransactionFingerprint.of(TransactionFingerprint.key(date, amount, detail, "default"), 1));
+	}
+
+	/**
+	 * The sequence in letters, since the merchant key of the category cache drops numbers.
+	 */
+	private static String letters(long sequence) {
+		StringBuilder letters = new StringBuilder();
+		do {
+			letters.append((char) ('A' + sequence % 26));
+			sequence /= 26;
+		}
+		while (sequence > 0);
+		return letters.toString();
+	}
+
+	/**
+	 * Answers every request after {@code llmLatencyMillis}: a structured answer with a category for
+	 * every numbered transaction of a batch request, or a single category.
+	 */
+	private ChatModel stubbedChatModel() {
+		return prompt -> {
+			try {
+				Thread.sleep(llmLatencyMillis);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new ChatResponse(List.of(new Generation(new AssistantMessage(answer(prompt)))));
+		};
+	}
+
+	private static String answer(Prompt prompt) {
+		Matcher numbered = NUMBERED_TRANSACTION.matcher(prompt.getContents());
+		if (!numbered.find()) {
+			return CATEGORIES[0];
+		}
+		StringBuilder answer = new StringBuilder("{\"transactions\":[");
+		int index = 0;
+		do {
+			answer.append(index > 0 ? "," : "")
+				.append("{\"index\":")
+				.append(index)
+				.append(",\"category\":\"")
+				.append(CATEGORIES[index % CATEGORIES.length])
+				.append("\"}");
+			index++;
+		}
+		while (numbered.find());
+		return answer.append("]}").toString();
+	}
+
+}
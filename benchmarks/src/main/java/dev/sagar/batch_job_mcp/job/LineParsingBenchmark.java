@@ -0,0 +1,66 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.file.transform.FieldSet;
+
+/**
+ * The cost per line of the {@link org.springframework.batch.item.file.FlatFileItemReader} of
+ * {@link BatchConfig#flatFileTransactionReader}, without the I/O measured by
+ * {@link TransactionReaderBenchmark}: tokenizing a line, parsing its date with the
+ * multi-pattern {@link BatchConfig#TRANSACTION_DATE_FORMAT}, and both with the mapping to a
+ * {@link FinancialTransaction}. The patterns of the format are tried in order, so the
+ * {@code d/M/yyyy} dates are parsed after the {@code dd/MM/yyyy} pattern failed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineParsingBenchmark {
+
+	@Param({ "05/03/2024", "5/3/2024" })
+	String date;
+
+	private String line;
+
+	private DelimitedLineTokenizer tokenizer;
+
+	@Setup
+	public void createLine() {
+		line = date + ",-42.50,\"UBER *TRIP, HELP.UBER.COM\",+1000.55";
+		// As configured by the FlatFileItemReaderBuilder of the reader
+		tokenizer = new DelimitedLineTokenizer(",");
+		tokenizer.setNames("transactionDate", "amount", "description", "balance");
+	}
+
+	@Benchmark
+	public FieldSet tokenize() {
+		return tokenizer.tokenize(line);
+	}
+
+	@Benchmark
+	public LocalDate parseDate() {
+		return LocalDate.parse(date, BatchConfig.TRANSACTION_DATE_FORMAT);
+	}
+
+	@Benchmark
+	public FinancialTransaction mapLine() {
+		return BatchConfig.mapTransaction(tokenizer.tokenize(line));
+	}
+
+}
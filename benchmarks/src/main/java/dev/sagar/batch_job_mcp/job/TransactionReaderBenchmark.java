@@ -0,0 +1,94 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Reads a generated statement of {@code lines} transactions with the flat file reader the jobs
+ * used to have and with the {@link MappedTransactionReader}. The statement mixes the date
+ * formats, quoted descriptions and credits of real bank exports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" })
+public class TransactionReaderBenchmark {
+
+	private static final String[] MERCHANTS = { "WOOLWORTHS 1234 SYDNEY", "Coles 0456 Melbourne",
+			"\"UBER *TRIP, HELP.UBER.COM\"", "Salary ACME PTY LTD", "\"NETFLIX.COM \"\"PREMIUM\"\"\"",
+			"Transfer to HSBC Card 4321", "BP CONNECT PARRAMATTA", "\"AMAZON AU, MARKETPLACE\"" };
+
+	@Param("1000000")
+	int lines;
+
+	Path statement;
+
+	@Setup(Level.Trial)
+	public void writeStatement() throws IOException {
+		statement = Files.createTempFile("statement-", ".csv");
+		try (BufferedWriter writer = Files.newBufferedWriter(statement)) {
+			for (int i = 0; i < lines; i++) {
+				int day = i % 28 + 1;
+				int month = i / 28 % 12 + 1;
+				String date = (i % 2 == 0) ? "%02d/%02d/2024".formatted(day, month) : "%d/%d/2024".formatted(day, month);
+				String amount = (i % 10 == 0) ? (1000 + i % 5000) + ".00" : "-" + (i % 500) + "." + (i % 90 + 10);
+				writer.write(date + "," + amount + "," + MERCHANTS[i % MERCHANTS.length] + ",+" + (i % 100000) + ".55");
+				writer.newLine();
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteStatement() throws IOException {
+		Files.deleteIfExists(statement);
+	}
+
+	@Benchmark
+	public int flatFileItemReader(Blackhole blackhole) throws Exception {
+		return readAll(BatchConfig.flatFileTransactionReader(new FileSystemResource(statement)), blackhole);
+	}
+
+	@Benchmark
+	public int mappedTransactionReader(Blackhole blackhole) throws Exception {
+		return readAll(new MappedTransactionReader(statement), blackhole);
+	}
+
+	private static int readAll(ItemStreamReader<FinancialTransaction> reader, Blackhole blackhole) throws Exception {
+		reader.open(new ExecutionContext());
+		try {
+			int count = 0;
+			for (FinancialTransaction transaction = reader.read(); transaction != null; transaction = reader.read()) {
+				blackhole.consume(transaction);
+				count++;
+			}
+			return count;
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+}
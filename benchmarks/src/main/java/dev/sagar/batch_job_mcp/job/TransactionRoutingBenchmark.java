@@ -0,0 +1,174 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.support.ClassifierCompositeItemWriter;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import dev.sagar.benchmarks.BenchmarkDatabase;
+
+/**
+ * Writes a statement of {@code rows} transactions, 20% of them credits and 5% credit card
+ * payments, to an embedded PostgreSQL in chunks of {@code chunkSize}, each chunk in a transaction
+ * of its own as in the chunk-oriented steps:
+ * <ul>
+ * <li>{@code perItemInserts}: the credits and card payments are inserted one by one, as the filter
+ * processors did from {@code process()}, and the rest with the {@link JdbcBatchItemWriter} of
+ * {@link BatchConfig#itemWriter}</li>
+ * <li>{@code routingWriter}: everything goes through the {@link ClassifierCompositeItemWriter}
+ * with the {@link TransactionRouter}, one JDBC batch per table and chunk</li>
+ * </ul>
+ * The LLM categorization is left out of both. {@code reWriteBatchedInserts} is the PostgreSQL
+ * JDBC driver option rewriting a batch of inserts into multi-row inserts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TransactionRoutingBenchmark {
+
+	private static final String FILE_NAME = "statement.csv";
+
+	@Param({ "50000" })
+	int rows;
+
+	@Param({ "10", "100" })
+	int chunkSize;
+
+	@Param({ "false", "true" })
+	boolean reWriteBatchedInserts;
+
+	private BenchmarkDatabase database;
+
+	private JdbcClient jdbcClient;
+
+	private JdbcBatchItemWriter<FinancialTransaction> itemWriter;
+
+	private ClassifierCompositeItemWriter<FinancialTransaction> routingItemWriter;
+
+	private TransactionTemplate transactionTemplate;
+
+	private List<Chunk<FinancialTransaction>> chunks;
+
+	@Setup(Level.Trial)
+	public void startDatabase() throws Exception {
+		database = BenchmarkDatabase.start(Map.of("reWriteBatchedInserts", String.valueOf(reWriteBatchedInserts)));
+		jdbcClient = database.jdbcClient();
+		BatchConfig config = new BatchConfig();
+		itemWriter = config.itemWriter(database.dataSource(), FILE_NAME);
+		routingItemWriter = new ClassifierCompositeItemWriter<>();
+		routingItemWriter.setClassifier(new TransactionRouter(itemWriter,
+				config.creditTransactionsWriter(database.dataSource(), FILE_NAME),
+				config.creditCardPaymentsWriter(database.dataSource(), FILE_NAME)));
+		transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database.dataSource()));
+		chunks = new ArrayList<>();
+		for (int from = 0; from < rows; from += chunkSize) {
+			Chunk<FinancialTransaction> chunk = new Chunk<>();
+			for (int id = from; id < Math.min(from + chunkSize, rows); id++) {
+				chunk.add(transaction(id));
+			}
+			chunks.add(chunk);
+		}
+	}
+
+	private static FinancialTransaction transaction(int id) {
+		LocalDate date = LocalDate.of(2024, 1, 1).plusDays(id % 365);
+		String fingerprint = Integer.toHexString(id);
+		if (id % 20 == 0) {
+			return new FinancialTransaction(date, -500.0 - id % 100, "HSBC CREDIT CARD PAYMENT", null,
+					TransactionType.CREDIT_CARD_PAYMENT, fingerprint);
+		}
+		if (id % 5 == 1) {
+			return new FinancialTransaction(date, 1000.0 + id % 100, "SALARY ACME PTY LTD", "Income",
+					TransactionType.CREDIT, fingerprint);
+		}
+		return new FinancialTransaction(date, -1.0 - id % 500, "WOOLWORTHS 1234 SYDNEY", "Groceries",
+				TransactionType.DEBIT, fingerprint);
+	}
+
+	/**
+	 * Empties the tables, so that every iteration inserts into tables of about the same size.
+	 */
+	@TearDown(Level.Iteration)
+	public void truncate() {
+		jdbcClient.sql("TRUNCATE financial_transactions, credit_transactions, credit_card_payments").update();
+	}
+
+	@TearDown(Level.Trial)
+	public void stopDatabase() throws Exception {
+		database.close();
+	}
+
+	@Benchmark
+	public void perItemInserts() {
+		for (Chunk<FinancialTransaction> chunk : chunks) {
+			transactionTemplate.executeWithoutResult(status -> {
+				Chunk<FinancialTransaction> remaining = new Chunk<>();
+				for (FinancialTransaction transaction : chunk) {
+					if (transaction.transaction_type() == TransactionType.CREDIT_CARD_PAYMENT) {
+						insert("credit_card_payments", transaction);
+						continue;
+					}
+					if (transaction.transaction_type() == TransactionType.CREDIT) {
+						insert("credit_transactions", transaction);
+					}
+					remaining.add(transaction);
+				}
+				write(itemWriter, remaining);
+			});
+		}
+	}
+
+	@Benchmark
+	public void routingWriter() {
+		for (Chunk<FinancialTransaction> chunk : chunks) {
+			transactionTemplate.executeWithoutResult(status -> write(routingItemWriter, chunk));
+		}
+	}
+
+	private void insert(String table, FinancialTransaction transaction) {
+		jdbcClient.sql("INSERT INTO " + table
+				+ " (amount, date, transaction_detail, source_file, fingerprint) VALUES (?, ?, ?, ?, ?)")
+			.param(transaction.amount())
+			.param(transaction.date())
+			.param(transaction.transaction_detail())
+			.param(FILE_NAME)
+			.param(transaction.fingerprint())
+			.update();
+	}
+
+	private static void write(ItemWriter<FinancialTransaction> writer,
+			Chunk<FinancialTransaction> chunk) {
+		try {
+			writer.write(chunk);
+		}
+		catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import dev.sagar.benchmarks.BenchmarkDatabase;
+
+/**
+ * Writes chunks of {@code chunkSize} categorized transactions to an embedded PostgreSQL with the
+ * {@link JdbcBatchItemWriter} of {@link BatchConfig#itemWriter}, each chunk in a transaction of
+ * its own as in the chunk-oriented steps. {@code reWriteBatchedInserts} is the PostgreSQL JDBC
+ * driver option rewriting a batch of inserts into multi-row inserts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionWriterBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	int chunkSize;
+
+	@Param({ "false", "true" })
+	boolean reWriteBatchedInserts;
+
+	private BenchmarkDatabase database;
+
+	private JdbcBatchItemWriter<FinancialTransaction> writer;
+
+	private TransactionTemplate transactionTemplate;
+
+	private long sequence;
+
+	@Setup(Level.Trial)
+	public void startDatabase() throws Exception {
+		database = BenchmarkDatabase.start(Map.of("reWriteBatchedInserts", String.valueOf(reWriteBatchedInserts)));
+		writer = new BatchConfig().itemWriter(database.dataSource(), "statement.csv");
+		transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database.dataSource()));
+	}
+
+	/**
+	 * Empties the table, so that every iteration inserts into a table of about the same size.
+	 */
+	@TearDown(Level.Iteration)
+	public void truncate() {
+		database.jdbcClient().sql("TRUNCATE financial_transactions").update();
+	}
+
+	@TearDown(Level.Trial)
+	public void stopDatabase() throws Exception {
+		database.close();
+	}
+
+	@Benchmark
+	public void writeChunk() {
+		Chunk<FinancialTransaction> chunk = new Chunk<>();
+		for (int i = 0; i < chunkSize; i++) {
+			long id = sequence++;
+			chunk.add(new FinancialTransaction(LocalDate.of(2024, 1, 1).plusDays(id % 365), -1.0 - id % 500,
+					"WOOLWORTHS 1234 SYDNEY", "Groceries", TransactionType.DEBIT, Long.toHexString(id)));
+		}
+		transactionTemplate.executeWithoutResult(status -> {
+			try {
+				writer.write(chunk);
+			}
+			catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+}
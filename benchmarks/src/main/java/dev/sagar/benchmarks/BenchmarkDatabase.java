@@ -0,0 +1,67 @@
+package dev.sagar.benchmarks;
+
+import java.io.IOException;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+
+/**
+ * A PostgreSQL server started from the binaries bundled with embedded-postgres, with the
+ * batch-job-mcp schema, for the benchmarks that go through JDBC. Started once per trial: the
+ * server takes a few seconds to start and is not what the benchmarks measure.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+
+	private final EmbeddedPostgres postgres;
+
+	private final HikariDataSource dataSource;
+
+	private final JdbcClient jdbcClient;
+
+	private BenchmarkDatabase(EmbeddedPostgres postgres, Map<String, String> connectionProperties) {
+		this.postgres = postgres;
+		// Pooled like in the applications, so that the benchmarks do not measure connecting
+		HikariConfig config = new HikariConfig();
+		config.setDataSource(postgres.getDatabase("postgres", "postgres", connectionProperties));
+		config.setMaximumPoolSize(4);
+		this.dataSource = new HikariDataSource(config);
+		this.jdbcClient = JdbcClient.create(dataSource);
+		new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+	}
+
+	public static BenchmarkDatabase start() throws IOException {
+		return start(Map.of());
+	}
+
+	/**
+	 * @param connectionProperties properties of the PostgreSQL JDBC driver, such as
+	 * {@code reWriteBatchedInserts}
+	 */
+	public static BenchmarkDatabase start(Map<String, String> connectionProperties) throws IOException {
+		return new BenchmarkDatabase(EmbeddedPostgres.builder().start(), connectionProperties);
+	}
+
+	public DataSource dataSource() {
+		return dataSource;
+	}
+
+	public JdbcClient jdbcClient() {
+		return jdbcClient;
+	}
+
+	@Override
+	public void close() throws IOException {
+		dataSource.close();
+		postgres.close();
+	}
+
+}
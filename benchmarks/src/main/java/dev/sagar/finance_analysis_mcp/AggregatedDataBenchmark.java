@@ -0,0 +1,83 @@
+package dev.sagar.finance_analysis_mcp;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import dev.sagar.benchmarks.BenchmarkDatabase;
+
+/**
+ * Runs a query returning {@code rows} transactions through
+ * {@link DatabaseService#getAggregatedData}, which formats the date of every row, and, as the
+ * baseline, the same query without the post-processing, against an embedded PostgreSQL. The
+ * difference between the two is the cost of the post-processing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregatedDataBenchmark {
+
+	private static final String[] CATEGORIES = { "groceries", "transport", "entertainment", "utilities", "shopping" };
+
+	@Param({ "100", "10000" })
+	int rows;
+
+	private BenchmarkDatabase database;
+
+	private DatabaseService databaseService;
+
+	private String query;
+
+	@Setup(Level.Trial)
+	public void startDatabase() throws Exception {
+		database = BenchmarkDatabase.start();
+		List<Object[]> transactions = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			transactions.add(new Object[] { Date.valueOf(LocalDate.of(2024, 1, 1).plusDays(i % 365)), -1.0 - i % 500,
+					"TRANSACTION " + i, CATEGORIES[i % CATEGORIES.length] });
+		}
+		new JdbcTemplate(database.dataSource()).batchUpdate("""
+				INSERT INTO financial_transactions (date, amount, transaction_detail, category, source_file)
+				VALUES (?, ?, ?, ?, 'statement.csv')
+				""", transactions);
+		databaseService = new DatabaseService(database.jdbcClient());
+		query = "SELECT date, category, amount, transaction_detail FROM financial_transactions ORDER BY date";
+	}
+
+	@TearDown(Level.Trial)
+	public void stopDatabase() throws Exception {
+		database.close();
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> getAggregatedData() {
+		return databaseService.getAggregatedData(query);
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> queryWithoutPostProcessing() {
+		return database.jdbcClient().sql(query).query().listOfRows();
+	}
+
+}
@@ -0,0 +1,79 @@
+package dev.sagar.finance_analysis_mcp;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.util.json.JsonParser;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Serializes the {@code List<Map<String, Object>>} returned by the executeSQLQuery tool, as
+ * {@link DatabaseService#getAggregatedData} returns it (case-insensitive maps with formatted
+ * dates), to the JSON sent back to the client: with {@link JsonParser#toJson}, which the tool
+ * call result converter of Spring AI uses, and with an {@link ObjectWriter} created once for
+ * the type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToolResultSerializationBenchmark {
+
+	private static final String[] CATEGORIES = { "groceries", "transport", "entertainment", "utilities", "shopping" };
+
+	@Param({ "100", "10000" })
+	int rows;
+
+	private List<Map<String, Object>> result;
+
+	private ObjectWriter writer;
+
+	@Setup
+	public void createResult() {
+		DateTimeFormatter formatter = DateTimeFormatter.ofLocalizedDate(FormatStyle.LONG);
+		result = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			// As created by the ColumnMapRowMapper of the JdbcClient
+			Map<String, Object> row = new LinkedCaseInsensitiveMap<>(4);
+			row.put("date", LocalDate.of(2024, 1, 1).plusDays(i % 365).format(formatter));
+			row.put("category", CATEGORIES[i % CATEGORIES.length]);
+			row.put("amount", -1.0 - i % 500);
+			row.put("transaction_detail", "TRANSACTION " + i);
+			result.add(row);
+		}
+		writer = new ObjectMapper().writerFor(List.class);
+	}
+
+	@Benchmark
+	public String jsonParser() {
+		return JsonParser.toJson(result);
+	}
+
+	@Benchmark
+	public byte[] objectWriter() throws JsonProcessingException {
+		return writer.writeValueAsBytes(result);
+	}
+
+}
@@ -0,0 +1,113 @@
+package dev.sagar.batch_job_mcp.job;
+
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.repeat.CompletionPolicy;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.repeat.context.RepeatContextSupport;
+
+/**
+ * Completion policy that adjusts the commit interval of a chunk-oriented step at runtime. After
+ * every chunk the measured time per item is used to size the next chunk so that it takes about
+ * the target duration, within the configured bounds: plain inserts end up in large chunks, items
+ * waiting on the LLM in small ones.
+ *
+ * The current chunk size is kept in the step execution context, so a restarted step resumes with
+ * the size it had reached instead of the initial one.
+ */
+class AdaptiveChunkSizePolicy implements CompletionPolicy, ChunkListener, StepExecutionListener {
+
+	static final String CHUNK_SIZE_KEY = "adaptive.chunk.size";
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AdaptiveChunkSizePolicy.class);
+
+	private final int initialSize;
+
+	private final int minSize;
+
+	private final int maxSize;
+
+	private final long targetNanos;
+
+	private int chunkSize;
+
+	private RepeatContextSupport current;
+
+	private long chunkStartNanos;
+
+	AdaptiveChunkSizePolicy(int initialSize, int minSize, int maxSize, long targetMillis) {
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.initialSize = clamp(initialSize);
+		this.targetNanos = targetMillis * 1_000_000;
+		this.chunkSize = this.initialSize;
+	}
+
+	@Override
+	public void beforeStep(StepExecution stepExecution) {
+		chunkSize = clamp(stepExecution.getExecutionContext().getInt(CHUNK_SIZE_KEY, initialSize));
+		logger.info("Starting step {} with a chunk size of {}", stepExecution.getStepName(), chunkSize);
+	}
+
+	@Override
+	public RepeatContext start(RepeatContext parent) {
+		current = new RepeatContextSupport(parent);
+		return current;
+	}
+
+	@Override
+	public void update(RepeatContext context) {
+		if (context instanceof RepeatContextSupport support) {
+			support.increment();
+		}
+	}
+
+	@Override
+	public boolean isComplete(RepeatContext context) {
+		return context.getStartedCount() >= chunkSize;
+	}
+
+	@Override
+	public boolean isComplete(RepeatContext context, RepeatStatus result) {
+		return result == null || !result.isContinuable() || isComplete(context);
+	}
+
+	@Override
+	public void beforeChunk(ChunkContext context) {
+		chunkStartNanos = System.nanoTime();
+	}
+
+	@Override
+	public void afterChunk(ChunkContext context) {
+		int items = current == null ? 0 : current.getStartedCount();
+		if (items == 0) {
+			return;
+		}
+		chunkSize = nextChunkSize(chunkSize, items, System.nanoTime() - chunkStartNanos);
+		context.getStepContext().getStepExecution().getExecutionContext().putInt(CHUNK_SIZE_KEY, chunkSize);
+	}
+
+	/**
+	 * Sizes the next chunk from the time per item of the last one. The ideal size is averaged
+	 * with the current one and may at most double per chunk, so a single slow or fast item does
+	 * not swing the interval from one bound to the other.
+	 */
+	int nextChunkSize(int currentSize, int items, long elapsedNanos) {
+		double nanosPerItem = Math.max(1.0, (double) elapsedNanos / items);
+		double ideal = targetNanos / nanosPerItem;
+		long next = Math.round(Math.min((currentSize + ideal) / 2, currentSize * 2.0));
+		int size = clamp(next);
+		if (size != currentSize) {
+			logger.debug("Chunk of {} items took {} ms, next chunk size {}", items, elapsedNanos / 1_000_000, size);
+		}
+		return size;
+	}
+
+	private int clamp(long size) {
+		return (int) Math.max(minSize, Math.min(maxSize, size));
+	}
+
+}
@@ -5,40 +5,56 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
 import java.nio.file.*;
 
 import javax.sql.DataSource;
 
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.batch.core.ChunkListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
-import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
 import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.transform.FieldSet;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.batch.integration.async.AsyncItemWriter;
+import org.springframework.batch.item.support.ClassifierCompositeItemWriter;
 import org.springframework.batch.item.support.CompositeItemProcessor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.batch.core.step.tasklet.Tasklet;
 import org.springframework.batch.repeat.RepeatStatus;
 
 /**
  * Configures and returns a Spring Batch Step for processing financial transactions. This step reads
- * data from a CSV file, processes it to filter out credit transactions, and writes the resulting
- * data to a database table.
+ * data from a CSV file, processes it to mark credit transactions and credit card payments,
+ * categorizes each chunk with a single LLM request and writes each transaction to the table it
+ * belongs to.
  *
  * @param jobRepository the JobRepository to manage job execution
  * @param transactionManager the transaction manager to handle transactions
@@ -52,104 +68,315 @@ public class BatchConfig {
 	private static final org.slf4j.Logger logger =
 			org.slf4j.LoggerFactory.getLogger(BatchConfig.class);
 
+	static final DateTimeFormatter TRANSACTION_DATE_FORMAT =
+			DateTimeFormatter.ofPattern("[dd/MM/yyyy][d/M/yyyy][d/MM/yyyy][dd/MM/yyyy]");
+
+	/**
+	 * Every launch is a new job instance (run.id), files that were already ingested are skipped
+	 * by content and already ingested transactions by fingerprint, so a file can safely be
+	 * loaded again.
+	 */
+	@Bean
+	Job job(JobRepository jobRepository, Step stageFileStep, Step processFileStep,
+			Step releaseFileStep, CategoryCache categoryCache,
+			TransactionClassifier transactionClassifier,
+			IngestedFileRegistry ingestedFileRegistry) {
+		return new JobBuilder("load-transactions", jobRepository)
+				.incrementer(new RunIdIncrementer()).listener(categoryCache)
+				.listener(transactionClassifier).listener(ingestedFileRegistry)
+				.start(stageFileStep).next(ingestedFileRegistry)
+				.on(IngestedFileRegistry.ALREADY_INGESTED).to(releaseFileStep)
+				.from(ingestedFileRegistry).on(IngestedFileRegistry.IN_PROGRESS).to(releaseFileStep)
+				.from(ingestedFileRegistry).on(IngestedFileRegistry.NEW_FILE).to(processFileStep)
+				.next(releaseFileStep).end().build();
+	}
+
+	/**
+	 * A variant of the load-transactions job for large statements, where the file is split into
+	 * byte ranges that are read, processed and written by separate worker steps in parallel. Each
+	 * partition has its own step execution, so restarting a failed job only re-runs the
+	 * partitions that did not complete.
+	 */
 	@Bean
-	Job job(JobRepository jobRepository, Step moveFileStep, Step processFileStep,
-			Step cleanupTempFileStep) {
-		return new JobBuilder("load-transactions", jobRepository).start(moveFileStep)
-				.next(processFileStep).next(cleanupTempFileStep).build();
+	Job partitionedJob(JobRepository jobRepository, Step stageFileStep,
+			Step partitionedProcessFileStep, Step releaseFileStep, CategoryCache categoryCache,
+			TransactionClassifier transactionClassifier,
+			IngestedFileRegistry ingestedFileRegistry) {
+		return new JobBuilder("load-transactions-partitioned", jobRepository)
+				.incrementer(new RunIdIncrementer()).listener(categoryCache)
+				.listener(transactionClassifier).listener(ingestedFileRegistry)
+				.start(stageFileStep).next(ingestedFileRegistry)
+				.on(IngestedFileRegistry.ALREADY_INGESTED).to(releaseFileStep)
+				.from(ingestedFileRegistry).on(IngestedFileRegistry.IN_PROGRESS).to(releaseFileStep)
+				.from(ingestedFileRegistry).on(IngestedFileRegistry.NEW_FILE)
+				.to(partitionedProcessFileStep).next(releaseFileStep).end().build();
 	}
 
 	@Bean
-	Step moveFileStep(JobRepository jobRepository,
+	Step stageFileStep(JobRepository jobRepository,
 			DataSourceTransactionManager transactionManager) {
-		return new StepBuilder("move-file-step", jobRepository)
-				.tasklet(moveFileTasklet(null), transactionManager).allowStartIfComplete(true)
-				.build();
+		return new StepBuilder("stage-file-step", jobRepository)
+				.tasklet(stageFileTasklet(null, null), transactionManager)
+				.allowStartIfComplete(true).build();
 	}
 
+	/**
+	 * Stages the input file in the {@link StatementFileStore}, so that the job is not affected
+	 * by the file being moved or replaced while it runs. A restarted job keeps the file it
+	 * staged the first time.
+	 */
 	@StepScope
 	@Bean
-	Tasklet moveFileTasklet(@Value("#{jobParameters['fileName']}") String fileName) {
+	Tasklet stageFileTasklet(@Value("#{jobParameters['fileName']}") String fileName,
+			StatementFileStore statementFileStore) {
 		return (contribution, chunkContext) -> {
-			Path sourcePath = Paths.get(fileName);
-			String resourceFileName = sourcePath.getFileName().toString();
-
-			// Create a temporary file
-			Path tempFile = Files.createTempFile("batch-", "-" + resourceFileName);
+			ExecutionContext jobContext = chunkContext.getStepContext().getStepExecution()
+					.getJobExecution().getExecutionContext();
+			String stagedFilePath = jobContext.getString(StatementFileStore.FILE_PATH_KEY, null);
+			if (stagedFilePath != null && Files.exists(Paths.get(stagedFilePath))) {
+				logger.info("File already staged as: {}", stagedFilePath);
+				return RepeatStatus.FINISHED;
+			}
 
-			// Copy the source file to temporary location
-			Files.copy(sourcePath, tempFile, StandardCopyOption.REPLACE_EXISTING);
+			StatementFileStore.StoredFile stored = statementFileStore.store(Paths.get(fileName));
 
-			logger.info("File copied to temporary location: {}", tempFile);
-
-			// Store the temp file path in the job execution context for next step
-			chunkContext.getStepContext().getStepExecution().getJobExecution().getExecutionContext()
-					.putString("tempFilePath", tempFile.toString());
+			// Store the staged file path and its hash in the job execution context for next steps
+			jobContext.putString(StatementFileStore.FILE_PATH_KEY, stored.path().toString());
+			jobContext.putString(StatementFileStore.FILE_SHA256_KEY, stored.sha256());
 
 			return RepeatStatus.FINISHED;
 		};
 	}
 
+	/**
+	 * By default the transactions are processed one after the other and each chunk is
+	 * categorized with a single LLM request. In concurrent mode
+	 * ({@code app.batch.concurrent.enabled=true}) the transactions the local classifier could
+	 * not categorize are categorized on virtual threads, one LLM request per transaction, within
+	 * the limits of the {@link LlmRateLimiter}. The reader and the filters still run on the step
+	 * thread, in the chunk transaction, so the order of the output and the restart state of the
+	 * reader are unchanged.
+	 *
+	 * Chunks whose LLM requests were throttled are retried, up to
+	 * {@code app.categorization.llm.retry-limit} times, once the {@link LlmRateLimiter} lets
+	 * requests through again, instead of failing the step.
+	 *
+	 * The time every chunk spends reading, processing and writing is recorded by the
+	 * {@link IngestionMetrics}. In concurrent mode the LLM requests are awaited by the writer, so
+	 * their time counts as writing.
+	 */
 	@Bean
 	Step processFileStep(JobRepository jobRepository,
 			DataSourceTransactionManager transactionManager,
 			ItemReader<FinancialTransaction> itemReader,
 			ItemProcessor<FinancialTransaction, FinancialTransaction> itemProcessor,
-			ItemWriter<FinancialTransaction> itemWriter,
-			CompositeItemProcessor<FinancialTransaction, FinancialTransaction> compositeProcessor) {
+			ClassifierCompositeItemWriter<FinancialTransaction> routingItemWriter,
+			CompositeItemProcessor<FinancialTransaction, FinancialTransaction> compositeProcessor,
+			CategorizeTransactionProcessor categorizeTransactionProcessor,
+			AdaptiveChunkSizePolicy chunkSizePolicy, IngestionMetrics ingestionMetrics,
+			@Value("${app.batch.concurrent.enabled:false}") boolean concurrent,
+			@Value("${app.categorization.llm.retry-limit:5}") int retryLimit) {
+		StepBuilder stepBuilder = new StepBuilder("process-file-step", jobRepository);
+		if (!concurrent) {
+			return ingestionMetrics.instrument(stepBuilder
+					.<FinancialTransaction, FinancialTransaction>chunk(chunkSizePolicy,
+							transactionManager)
+					.faultTolerant().retry(TransientAiException.class).retryLimit(retryLimit)
+					.reader(itemReader).processor(compositeProcessor).writer(routingItemWriter)
+					.listener((ChunkListener) chunkSizePolicy)
+					.listener((StepExecutionListener) chunkSizePolicy)).build();
+		}
+
+		AsyncItemProcessor<FinancialTransaction, FinancialTransaction> asyncCategorizer =
+				new AsyncItemProcessor<>();
+		asyncCategorizer.setDelegate(categorizeTransactionProcessor);
+		asyncCategorizer.setTaskExecutor(new VirtualThreadTaskExecutor("categorize-"));
+
+		CompositeItemProcessor<FinancialTransaction, Future<FinancialTransaction>> processor =
+				new CompositeItemProcessor<>();
+		processor.setDelegates(List.of(compositeProcessor, asyncCategorizer));
+
+		AsyncItemWriter<FinancialTransaction> writer = new AsyncItemWriter<>();
+		writer.setDelegate(routingItemWriter);
+
+		return ingestionMetrics.instrument(stepBuilder
+				.<FinancialTransaction, Future<FinancialTransaction>>chunk(chunkSizePolicy,
+						transactionManager)
+				.faultTolerant().retry(TransientAiException.class).retryLimit(retryLimit)
+				.reader(itemReader).processor(processor).writer(writer)
+				.listener((ChunkListener) chunkSizePolicy)
+				.listener((StepExecutionListener) chunkSizePolicy)).build();
+	}
 
-		return new StepBuilder("process-file-step", jobRepository)
-				.<FinancialTransaction, FinancialTransaction>chunk(10, transactionManager)
-				.reader(itemReader).processor(compositeProcessor).writer(itemWriter).build();
+	/**
+	 * The partitions run on local threads, or, in distributed mode
+	 * ({@code app.batch.distributed.enabled=true}), on the {@link PartitionWorker}s of all the
+	 * nodes sharing the database, see {@link WorkQueuePartitionHandler}.
+	 */
+	@Bean
+	Step partitionedProcessFileStep(JobRepository jobRepository,
+			Step processFilePartitionStep, ByteRangePartitioner byteRangePartitioner,
+			JdbcClient jdbcClient, JobExplorer jobExplorer,
+			@Value("${app.batch.partition.grid-size:4}") int gridSize,
+			@Value("${app.batch.partition.max-threads:4}") int maxThreads,
+			@Value("${app.batch.distributed.enabled:false}") boolean distributed,
+			@Value("${app.batch.distributed.poll-interval-ms:1000}") long pollIntervalMillis,
+			@Value("${app.batch.distributed.timeout-ms:3600000}") long timeoutMillis,
+			@Value("${app.batch.distributed.lease-ms:60000}") long leaseMillis) {
+		if (distributed) {
+			WorkQueuePartitionHandler partitionHandler = new WorkQueuePartitionHandler(jdbcClient,
+					jobExplorer, jobRepository, "processFilePartitionStep", pollIntervalMillis, timeoutMillis,
+					leaseMillis);
+			partitionHandler.setGridSize(gridSize);
+			return new StepBuilder("process-file-partitioned-step", jobRepository)
+					.partitioner("process-file-partition-step", byteRangePartitioner)
+					.partitionHandler(partitionHandler).build();
+		}
+
+		SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("partition-");
+		taskExecutor.setConcurrencyLimit(maxThreads);
+
+		return new StepBuilder("process-file-partitioned-step", jobRepository)
+				.partitioner("process-file-partition-step", byteRangePartitioner)
+				.step(processFilePartitionStep).gridSize(gridSize).taskExecutor(taskExecutor)
+				.build();
 	}
 
 	@Bean
-	Step cleanupTempFileStep(JobRepository jobRepository,
-			DataSourceTransactionManager transactionManager) {
-		return new StepBuilder("cleanup-temp-file-step", jobRepository)
+	Step processFilePartitionStep(JobRepository jobRepository,
+			DataSourceTransactionManager transactionManager,
+			ItemReader<FinancialTransaction> partitionItemReader,
+			ClassifierCompositeItemWriter<FinancialTransaction> routingItemWriter,
+			CompositeItemProcessor<FinancialTransaction, FinancialTransaction> compositeProcessor,
+			AdaptiveChunkSizePolicy chunkSizePolicy, IngestionMetrics ingestionMetrics,
+			@Value("${app.categorization.llm.retry-limit:5}") int retryLimit) {
+		return ingestionMetrics.instrument(new StepBuilder("process-file-partition-step", jobRepository)
+				.<FinancialTransaction, FinancialTransaction>chunk(chunkSizePolicy,
+						transactionManager)
+				.faultTolerant().retry(TransientAiException.class).retryLimit(retryLimit)
+				.reader(partitionItemReader).processor(compositeProcessor)
+				.writer(routingItemWriter).listener((ChunkListener) chunkSizePolicy)
+				.listener((StepExecutionListener) chunkSizePolicy)).build();
+	}
+
+	/**
+	 * The commit interval of the chunk-oriented steps, tuned after every chunk towards the target
+	 * transaction duration. Step scoped, so that every step execution, and every partition, tunes
+	 * its own interval.
+	 */
+	@StepScope
+	@Bean
+	AdaptiveChunkSizePolicy chunkSizePolicy(@Value("${app.batch.chunk-size:10}") int chunkSize,
+			@Value("${app.batch.chunk.min-size:1}") int minSize,
+			@Value("${app.batch.chunk.max-size:500}") int maxSize,
+			@Value("${app.batch.chunk.target-duration-ms:2000}") long targetDurationMillis) {
+		return new AdaptiveChunkSizePolicy(chunkSize, minSize, maxSize, targetDurationMillis);
+	}
+
+	@StepScope
+	@Bean
+	ByteRangePartitioner byteRangePartitioner(
+			@Value("#{jobExecutionContext['stagedFilePath']}") String stagedFilePath) {
+		return new ByteRangePartitioner(Paths.get(stagedFilePath));
+	}
+
+	/**
+	 * Releases the job's reference to the staged file, which is deleted once no running job uses
+	 * it anymore.
+	 */
+	@Bean
+	Step releaseFileStep(JobRepository jobRepository,
+			DataSourceTransactionManager transactionManager,
+			StatementFileStore statementFileStore) {
+		return new StepBuilder("release-file-step", jobRepository)
 				.tasklet((contribution, chunkContext) -> {
-					String tempFilePath = chunkContext.getStepContext().getStepExecution()
-							.getJobExecution().getExecutionContext().getString("tempFilePath");
+					String sha256 = chunkContext.getStepContext().getStepExecution()
+							.getJobExecution().getExecutionContext()
+							.getString(StatementFileStore.FILE_SHA256_KEY, null);
 
-					if (tempFilePath != null) {
-						Path tempFile = Paths.get(tempFilePath);
-						Files.deleteIfExists(tempFile);
-						logger.info("Temporary file deleted: {}", tempFile);
+					if (sha256 != null) {
+						statementFileStore.release(sha256);
 					}
 
 					return RepeatStatus.FINISHED;
 				}, transactionManager).build();
 	}
 
+	/**
+	 * Reads the statement with the {@link MappedTransactionReader}, or with a
+	 * {@link FlatFileItemReader} when {@code app.batch.reader.memory-mapped=false}, and
+	 * fingerprints the transactions with the {@link FingerprintingItemReader}.
+	 */
+	@StepScope
+	@Bean
+	ItemStreamReader<FinancialTransaction> itemReader(
+			@Value("#{jobExecutionContext['stagedFilePath']}") String stagedFilePath,
+			@Value("${app.batch.reader.memory-mapped:true}") boolean memoryMapped,
+			@Value("#{jobParameters['account'] ?: 'default'}") String account) {
+		logger.info("Reading file from: {}", stagedFilePath);
+
+		return new FingerprintingItemReader(rangeReader(Paths.get(stagedFilePath), memoryMapped), 0, -1,
+				account);
+	}
+
 	@StepScope
 	@Bean
-	FlatFileItemReader<FinancialTransaction> itemReader(
-			@Value("#{jobExecutionContext['tempFilePath']}") String tempFilePath) {
-		logger.info("Reading file from: {}", tempFilePath);
+	ItemStreamReader<FinancialTransaction> partitionItemReader(
+			@Value("#{jobExecutionContext['stagedFilePath']}") String stagedFilePath,
+			@Value("#{stepExecutionContext['startByte']}") long startByte,
+			@Value("#{stepExecutionContext['endByte']}") long endByte,
+			@Value("${app.batch.reader.memory-mapped:true}") boolean memoryMapped,
+			@Value("#{jobParameters['account'] ?: 'default'}") String account) {
+		logger.info("Reading bytes [{}, {}) of file: {}", startByte, endByte, stagedFilePath);
+
+		return new FingerprintingItemReader(rangeReader(Paths.get(stagedFilePath), memoryMapped), startByte,
+				endByte, account);
+	}
 
+	/**
+	 * Creates the readers of byte ranges of the file, an end of {@code -1} being the end of the
+	 * file.
+	 */
+	static BiFunction<Long, Long, ItemStreamReader<FinancialTransaction>> rangeReader(Path file,
+			boolean memoryMapped) {
+		return (startByte, endByte) -> {
+			if (memoryMapped) {
+				return new MappedTransactionReader(file, startByte, endByte);
+			}
+			if (startByte == 0 && endByte < 0) {
+				return flatFileTransactionReader(new FileSystemResource(file));
+			}
+			return flatFileTransactionReader(new ByteRangeResource(file, startByte, endByte));
+		};
+	}
+
+	static FlatFileItemReader<FinancialTransaction> flatFileTransactionReader(Resource resource) {
 		return new FlatFileItemReaderBuilder<FinancialTransaction>()
-				.name("financialTransactionItemReader")
-				.resource(new FileSystemResource(tempFilePath)).delimited().delimiter(",")
+				.name("financialTransactionItemReader").resource(resource).delimited()
+				.delimiter(",")
 				.names(new String[] {"transactionDate", "amount", "description", "balance"})
-				.fieldSetMapper(fieldSet -> new FinancialTransaction(
-						LocalDate.parse(fieldSet.readString("transactionDate"),
-								DateTimeFormatter.ofPattern(
-										"[dd/MM/yyyy][d/M/yyyy][d/MM/yyyy][dd/MM/yyyy]")),
-						fieldSet.readDouble("amount"), fieldSet.readString("description")))
-				.saveState(true).build();
+				.fieldSetMapper(BatchConfig::mapTransaction).saveState(true).build();
+	}
+
+	static FinancialTransaction mapTransaction(FieldSet fieldSet) {
+		return new FinancialTransaction(
+				LocalDate.parse(fieldSet.readString("transactionDate"), TRANSACTION_DATE_FORMAT),
+				fieldSet.readDouble("amount"), fieldSet.readString("description"));
 	}
 
 	@StepScope
 	@Bean
 	@Primary
 	CompositeItemProcessor<FinancialTransaction, FinancialTransaction> compositeProcessor(
-			CategorizeTransactionProcessor categorizeTransactionProcessor, DataSource dataSource,
-			@Value("#{jobParameters['fileName']}") String name) {
+			LocalCategorizeTransactionProcessor localCategorizeTransactionProcessor,
+			JdbcClient jdbcClient, IngestionMetrics ingestionMetrics) {
 		List<ItemProcessor<FinancialTransaction, FinancialTransaction>> delegates =
-				new ArrayList<>(3);
-		delegates.add(new FilterCreditTransactionsProcessor(dataSource, name));
-		delegates.add(new FilterCreditCardPaymentsProcessor(dataSource, name));
-		delegates.add(categorizeTransactionProcessor);
+				new ArrayList<>(4);
+		// The only one filtering items out, the others are counted by the routing writer
+		delegates.add(ingestionMetrics.counting(new KnownTransactionFilterProcessor(jdbcClient)));
+		delegates.add(new FilterCreditTransactionsProcessor());
+		delegates.add(new FilterCreditCardPaymentsProcessor());
+		delegates.add(localCategorizeTransactionProcessor);
 
 		CompositeItemProcessor<FinancialTransaction, FinancialTransaction> processor =
 				new CompositeItemProcessor<>();
@@ -165,8 +392,9 @@ public class BatchConfig {
 			@Value("#{jobParameters['fileName']}") String name) {
 		return new JdbcBatchItemWriterBuilder<FinancialTransaction>().dataSource(dataSource)
 				.sql("""
-						INSERT INTO financial_transactions (date, amount, transaction_detail, category, transaction_type, source_file)
-						VALUES (?, ?, ?, ?, ?, ?)
+						INSERT INTO financial_transactions (date, amount, transaction_detail, category, transaction_type, source_file, fingerprint)
+						VALUES (?, ?, ?, ?, ?, ?, ?)
+						ON CONFLICT (fingerprint) DO NOTHING
 						""")
 				.itemPreparedStatementSetter((item, ps) -> {
 					ps.setDate(1, Date.valueOf(item.date()));
@@ -175,26 +403,91 @@ public class BatchConfig {
 					ps.setString(4, item.category());
 					ps.setString(5, item.transaction_type().name());
 					ps.setString(6, name);
-				}).build();
+					ps.setString(7, item.fingerprint());
+				}).assertUpdates(false).build();
+	}
+
+	/**
+	 * Wraps the JDBC writer so that the transactions of each chunk the local classifier could not
+	 * categorize are categorized with a single LLM request instead of one request per transaction.
+	 */
+	@StepScope
+	@Bean
+	CategorizingItemWriter categorizingItemWriter(
+			CategorizeTransactionProcessor categorizeTransactionProcessor,
+			JdbcBatchItemWriter<FinancialTransaction> itemWriter) {
+		return new CategorizingItemWriter(categorizeTransactionProcessor, itemWriter);
+	}
+
+	@StepScope
+	@Bean
+	JdbcBatchItemWriter<FinancialTransaction> creditTransactionsWriter(DataSource dataSource,
+			@Value("#{jobParameters['fileName']}") String name) {
+		return sourceTableWriter(dataSource, "credit_transactions", name);
+	}
+
+	@StepScope
+	@Bean
+	JdbcBatchItemWriter<FinancialTransaction> creditCardPaymentsWriter(DataSource dataSource,
+			@Value("#{jobParameters['fileName']}") String name) {
+		return sourceTableWriter(dataSource, "credit_card_payments", name);
+	}
+
+	private static JdbcBatchItemWriter<FinancialTransaction> sourceTableWriter(
+			DataSource dataSource, String table, String name) {
+		return new JdbcBatchItemWriterBuilder<FinancialTransaction>().dataSource(dataSource)
+				.sql("INSERT INTO " + table
+						+ " (amount, date, transaction_detail, source_file, fingerprint) VALUES (?, ?, ?, ?, ?)"
+						+ " ON CONFLICT (fingerprint) DO NOTHING")
+				.itemPreparedStatementSetter((item, ps) -> {
+					ps.setDouble(1, item.amount());
+					ps.setDate(2, Date.valueOf(item.date()));
+					ps.setString(3, item.transaction_detail());
+					ps.setString(4, name);
+					ps.setString(5, item.fingerprint());
+				}).assertUpdates(false).build();
+	}
+
+	/**
+	 * Routes every transaction of a chunk to the writers of the tables it belongs to, with one
+	 * JDBC batch per table, all in the chunk transaction. The items routed to each table are
+	 * counted by {@link IngestionMetrics}.
+	 */
+	@StepScope
+	@Bean
+	ClassifierCompositeItemWriter<FinancialTransaction> routingItemWriter(
+			CategorizingItemWriter categorizingItemWriter,
+			JdbcBatchItemWriter<FinancialTransaction> creditTransactionsWriter,
+			JdbcBatchItemWriter<FinancialTransaction> creditCardPaymentsWriter,
+			IngestionMetrics ingestionMetrics) {
+		ClassifierCompositeItemWriter<FinancialTransaction> writer =
+				new ClassifierCompositeItemWriter<>();
+		writer.setClassifier(new TransactionRouter(
+				ingestionMetrics.countingRouted("financial_transactions", categorizingItemWriter),
+				ingestionMetrics.countingRouted("credit_transactions", creditTransactionsWriter),
+				ingestionMetrics.countingRouted("credit_card_payments", creditCardPaymentsWriter)));
+		return writer;
 	}
 
 	/**
 	 * Configures and provides a JobLauncher bean for launching batch jobs.
 	 *
 	 * This method creates an instance of TaskExecutorJobLauncher, sets the provided JobRepository,
-	 * and assigns a SimpleAsyncTaskExecutor to handle task execution asynchronously. It ensures
-	 * that all required properties are set before returning the configured JobLauncher instance.
+	 * and assigns the JobScheduler to run the jobs asynchronously on its bounded worker pool. It
+	 * ensures that all required properties are set before returning the configured JobLauncher
+	 * instance.
 	 * 
 	 * @param jobRepository the JobRepository to be used by the JobLauncher for managing job
 	 *        executions
+	 * @param jobScheduler the JobScheduler running the launched jobs
 	 * @return a fully configured JobLauncher instance
 	 * @throws Exception if there is an error during the initialization of the JobLauncher
 	 */
 	@Bean("asyncJobLauncher")
-	JobLauncher jobLauncher(JobRepository jobRepository) throws Exception {
+	JobLauncher jobLauncher(JobRepository jobRepository, JobScheduler jobScheduler) throws Exception {
 		TaskExecutorJobLauncher jobLauncher = new TaskExecutorJobLauncher();
 		jobLauncher.setJobRepository(jobRepository);
-		jobLauncher.setTaskExecutor(new SimpleAsyncTaskExecutor());
+		jobLauncher.setTaskExecutor(jobScheduler);
 		jobLauncher.afterPropertiesSet();
 		return jobLauncher;
 	}
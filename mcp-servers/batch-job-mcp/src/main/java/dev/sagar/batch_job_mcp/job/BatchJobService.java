@@ -5,44 +5,106 @@ import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
 import org.springframework.batch.core.explore.JobExplorer;
-import org.springframework.batch.core.launch.JobLauncher;
-import org.springframework.batch.core.launch.JobOperator;
 import org.springframework.batch.core.launch.NoSuchJobExecutionException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import org.springframework.beans.factory.annotation.Qualifier;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Service
 public class BatchJobService {
 
 	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(BatchJobService.class);
 
-	private final JobLauncher asyncJobLauncher;
+	// The key of the RunIdIncrementer
+	private static final String RUN_ID = "run.id";
+
+	private final JobScheduler jobScheduler;
 
 	private final Job job;
 
-	private final JobExplorer jobExplorer;
+	private final Job partitionedJob;
+
+	private final Job bulkJob;
 
-	private final JobOperator jobOperator;
+	private final Job multiFileJob;
 
-	public BatchJobService(Job job, @Qualifier("asyncJobLauncher") JobLauncher asyncJobLauncher,
-			JobExplorer jobExplorer, JobOperator jobOperator) {
+	private final JobExplorer jobExplorer;
+
+	public BatchJobService(@Qualifier("job") Job job, @Qualifier("partitionedJob") Job partitionedJob,
+			@Qualifier("bulkJob") Job bulkJob, @Qualifier("multiFileJob") Job multiFileJob,
+			JobScheduler jobScheduler, JobExplorer jobExplorer) {
 		this.job = job;
-		this.asyncJobLauncher = asyncJobLauncher;
+		this.partitionedJob = partitionedJob;
+		this.bulkJob = bulkJob;
+		this.multiFileJob = multiFileJob;
+		this.jobScheduler = jobScheduler;
 		this.jobExplorer = jobExplorer;
-		this.jobOperator = jobOperator;
 	}
 
 	@Tool(description = "Triggers a batch job based on the provided file name.")
-	public ResponseEntity<JobDetails> startJob(@ToolParam(description = "The name of the file") String fileName)
+	public ResponseEntity<JobDetails> startJob(@ToolParam(description = "The name of the file") String fileName,
+			@ToolParam(description = "The account the statement belongs to", required = false) String account)
 			throws Exception {
+		return launch(job, JobPriority.INTERACTIVE, fileName, account);
+	}
 
+	@Tool(description = "Triggers a partitioned batch job based on the provided file name. "
+			+ "Use this for large files, such as statements spanning several years.")
+	public ResponseEntity<JobDetails> startPartitionedJob(
+			@ToolParam(description = "The name of the file") String fileName,
+			@ToolParam(description = "The account the statement belongs to", required = false) String account)
+			throws Exception {
+		return launch(partitionedJob, JobPriority.BACKFILL, fileName, account);
+	}
+
+	@Tool(description = "Triggers a bulk load batch job based on the provided file name. "
+			+ "Use this for historical loads of many transactions at once.")
+	public ResponseEntity<JobDetails> startBulkLoadJob(
+			@ToolParam(description = "The name of the file") String fileName,
+			@ToolParam(description = "The account the statement belongs to", required = false) String account)
+			throws Exception {
+		return launch(bulkJob, JobPriority.BACKFILL, fileName, account);
+	}
+
+	@Tool(description = "Triggers a single batch job for several files, such as a backfill of monthly statements. "
+			+ "Each file is processed in parallel and its status is reported by getJobStatus.")
+	public ResponseEntity<JobDetails> startMultiFileJob(
+			@ToolParam(description = "A glob, such as statements/2024-*.csv, or a comma separated list of file names") String files,
+			@ToolParam(description = "The account the statements belong to", required = false) String account)
+			throws Exception {
+		Path directory = Paths.get(System.getProperty("user.home"), "Downloads");
+		List<Path> paths = MultiFilePartitioner.resolve(directory, files);
+		List<Path> missing = paths.stream().filter(path -> !Files.isRegularFile(path)).toList();
+		if (paths.isEmpty() || !missing.isEmpty()) {
+			logger.error("Files not found for {}: {}", files, missing);
+			return ResponseEntity.badRequest().body(new JobDetails("File not found", -1L, -1L, "", null));
+		}
+
+		JobParametersBuilder parameters = nextJobParameters(jobExplorer, multiFileJob, account)
+			.addString("directory", directory.toAbsolutePath().toString())
+			.addString("files", files.strip());
+		logger.info("Launching a multi-file job for {} files", paths.size());
+		return submit(multiFileJob, JobPriority.BACKFILL, parameters, account);
+	}
+
+	/**
+	 * Queues the job on the {@link JobScheduler}, fair-queued by account.
+	 */
+	private ResponseEntity<JobDetails> launch(Job job, JobPriority priority, String fileName, String account)
+			throws Exception {
 		Path filePath;
 		try {
 			filePath = getFilePath(fileName);
@@ -58,14 +120,41 @@ public class BatchJobService {
 			return ResponseEntity.badRequest().body(new JobDetails("IO error occurred", -1L, -1L, "", null));
 		}
 
-		JobExecution execution = asyncJobLauncher.run(job,
-				new JobParametersBuilder().addString("fileName", filePath.toAbsolutePath().toString())
-					.toJobParameters());
-		return ResponseEntity.ok(new JobDetails(execution.getStatus().name(), execution.getId(),
-				execution.getJobInstance().getInstanceId(), execution.getJobInstance().getJobName(),
-				execution.getCreateTime()));
+		// A new job instance for every launch, files already ingested are skipped by the job itself
+		JobParametersBuilder parameters = nextJobParameters(jobExplorer, job, account)
+			.addString("fileName", filePath.toAbsolutePath().toString());
+		return submit(job, priority, parameters, account);
+	}
+
+	/**
+	 * The parameters of a new instance of the job: the next run id and the account, which
+	 * defaults to {@link JobScheduler#DEFAULT_SOURCE}. Nothing else is taken from the last
+	 * instance, whose parameters {@link JobParametersBuilder#getNextJobParameters(Job)} starts
+	 * from, so that the account of a previous launch is never carried over.
+	 */
+	static JobParametersBuilder nextJobParameters(JobExplorer jobExplorer, Job job, String account) {
+		Long runId = new JobParametersBuilder(jobExplorer).getNextJobParameters(job)
+			.toJobParameters()
+			.getLong(RUN_ID);
+		return new JobParametersBuilder().addLong(RUN_ID, runId)
+			.addString("account", StringUtils.hasText(account) ? account.strip() : JobScheduler.DEFAULT_SOURCE,
+					false);
+	}
+
+	private ResponseEntity<JobDetails> submit(Job job, JobPriority priority, JobParametersBuilder parameters,
+			String account) throws Exception {
+		JobDetails jobDetails = jobScheduler.submit(job, parameters.toJobParameters(), priority,
+				StringUtils.hasText(account) ? account : JobScheduler.DEFAULT_SOURCE);
+		if (JobDetails.REJECTED.equals(jobDetails.status())) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(jobDetails);
+		}
+		return ResponseEntity.ok(jobDetails);
 	}
 
+	/**
+	 * Restarts the job instance of the execution by launching it again with the same parameters,
+	 * queued on the {@link JobScheduler} like any other launch.
+	 */
 	@Tool(description = "Restarts a failed job based on the job execution ID.")
 	public ResponseEntity<?> restartJob(@ToolParam(description = "The job execution ID") Long executionId)
 			throws Exception {
@@ -73,12 +162,15 @@ public class BatchJobService {
 
 		if (lastExecution != null && (lastExecution.getStatus() == BatchStatus.FAILED
 				|| lastExecution.getStatus() == BatchStatus.STOPPED)) {
-
-			Long restartId = jobOperator.restart(executionId);
-			JobExecution currentExecution = jobExplorer.getJobExecution(restartId);
-			return ResponseEntity.ok(new JobDetails(currentExecution.getStatus().name(), currentExecution.getId(),
-					currentExecution.getJobInstance().getInstanceId(), currentExecution.getJobInstance().getJobName(),
-					currentExecution.getCreateTime()));
+			Job restartedJob = jobNamed(lastExecution.getJobInstance().getJobName());
+			if (restartedJob == null) {
+				return ResponseEntity.badRequest()
+					.body("Job " + lastExecution.getJobInstance().getJobName() + " cannot be restarted");
+			}
+			JobParameters parameters = lastExecution.getJobParameters();
+			logger.info("Restarting job execution {} of {}", executionId, restartedJob.getName());
+			return submit(restartedJob, restartedJob == job ? JobPriority.INTERACTIVE : JobPriority.BACKFILL,
+					new JobParametersBuilder(parameters), parameters.getString("account"));
 		}
 
 		if (lastExecution == null) {
@@ -88,6 +180,14 @@ public class BatchJobService {
 		return ResponseEntity.badRequest().body("No JobExecution found for id: " + executionId);
 	}
 
+	private Job jobNamed(String jobName) {
+		return List.of(job, partitionedJob, bulkJob, multiFileJob)
+			.stream()
+			.filter(candidate -> candidate.getName().equals(jobName))
+			.findFirst()
+			.orElse(null);
+	}
+
 	@Tool(description = "Retrieves the status of a batch job based on the job execution ID.")
 	public ResponseEntity<JobDetails> getJobStatus(@ToolParam(description = "The job execution ID") Long executionId)
 			throws Exception {
@@ -97,9 +197,51 @@ public class BatchJobService {
 		if (execution == null) {
 			throw new NoSuchJobExecutionException("No JobExecution found for id: [" + executionId + "]");
 		}
-		return ResponseEntity.ok(new JobDetails(execution.getStatus().name(), execution.getId(),
+		Map<String, String> files = fileStatuses(execution);
+		return ResponseEntity.ok(new JobDetails(status(execution, files), execution.getId(),
 				execution.getJobInstance().getInstanceId(), execution.getJobInstance().getJobName(),
-				execution.getCreateTime(), execution.getEndTime(), execution.getLastUpdated()));
+				execution.getCreateTime(), execution.getEndTime(), execution.getLastUpdated(), files));
+	}
+
+	@Tool(description = "Retrieves the metrics of a batch job based on the job execution ID: for every step, "
+			+ "the items read, filtered and written, the items per second, the time spent reading, processing and "
+			+ "writing, the LLM requests and their latency, and the category cache hits and misses.")
+	public ResponseEntity<JobMetrics> getJobMetrics(@ToolParam(description = "The job execution ID") Long executionId)
+			throws Exception {
+
+		JobExecution execution = jobExplorer.getJobExecution(executionId);
+
+		if (execution == null) {
+			throw new NoSuchJobExecutionException("No JobExecution found for id: [" + executionId + "]");
+		}
+		return ResponseEntity.ok(JobMetrics.of(execution));
+	}
+
+	/**
+	 * The status of the job, or {@link IngestedFileRegistry#SKIPPED_IN_PROGRESS} for a job that
+	 * skipped its file as another job was ingesting it. A multi-file job reports the files it
+	 * skipped in their own status.
+	 */
+	private static String status(JobExecution execution, Map<String, String> files) {
+		if (execution.getStatus() == BatchStatus.COMPLETED && files.isEmpty()
+				&& IngestedFileRegistry.SKIPPED_IN_PROGRESS.equals(execution.getExitStatus().getExitCode())) {
+			return IngestedFileRegistry.SKIPPED_IN_PROGRESS;
+		}
+		return execution.getStatus().name();
+	}
+
+	/**
+	 * The exit code of every file of a multi-file job, empty for the other jobs.
+	 */
+	private static Map<String, String> fileStatuses(JobExecution execution) {
+		Map<String, String> files = new TreeMap<>();
+		execution.getStepExecutions()
+			.stream()
+			.filter(stepExecution -> stepExecution.getExecutionContext().containsKey(MultiFilePartitioner.FILE_NAME_KEY))
+			.forEach(stepExecution -> files.put(
+					stepExecution.getExecutionContext().getString(MultiFilePartitioner.FILE_NAME_KEY),
+					stepExecution.getExitStatus().getExitCode()));
+		return files;
 	}
 
 	private Path getFilePath(String fileName) throws IOException {
@@ -0,0 +1,58 @@
+package dev.sagar.batch_job_mcp.job;
+
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+/**
+ * Configures the bulk (ELT) variant of the load-transactions job, meant for historical loads. The
+ * statement is copied into a staging table, categorized per distinct transaction detail and then
+ * routed to the target tables with set-based SQL, see {@link StagingTableLoader}.
+ */
+@Configuration
+class BulkLoadConfig {
+
+	@Bean
+	Job bulkJob(JobRepository jobRepository, Step stageFileStep, Step copyToStagingStep,
+			Step categorizeStagingStep, Step routeStagingStep, Step releaseFileStep,
+			CategoryCache categoryCache, TransactionClassifier transactionClassifier,
+			IngestedFileRegistry ingestedFileRegistry) {
+		return new JobBuilder("load-transactions-bulk", jobRepository)
+				.incrementer(new RunIdIncrementer()).listener(categoryCache)
+				.listener(transactionClassifier).listener(ingestedFileRegistry)
+				.start(stageFileStep).next(ingestedFileRegistry)
+				.on(IngestedFileRegistry.ALREADY_INGESTED).to(releaseFileStep)
+				.from(ingestedFileRegistry).on(IngestedFileRegistry.IN_PROGRESS).to(releaseFileStep)
+				.from(ingestedFileRegistry).on(IngestedFileRegistry.NEW_FILE).to(copyToStagingStep)
+				.next(categorizeStagingStep).next(routeStagingStep).next(releaseFileStep)
+				.end().build();
+	}
+
+	@Bean
+	Step copyToStagingStep(JobRepository jobRepository,
+			DataSourceTransactionManager transactionManager, StagingTableLoader stagingTableLoader) {
+		return new StepBuilder("copy-to-staging-step", jobRepository)
+				.tasklet(stagingTableLoader::copy, transactionManager).build();
+	}
+
+	@Bean
+	Step categorizeStagingStep(JobRepository jobRepository,
+			DataSourceTransactionManager transactionManager, StagingTableLoader stagingTableLoader) {
+		return new StepBuilder("categorize-staging-step", jobRepository)
+				.tasklet(stagingTableLoader::categorize, transactionManager).build();
+	}
+
+	@Bean
+	Step routeStagingStep(JobRepository jobRepository,
+			DataSourceTransactionManager transactionManager, StagingTableLoader stagingTableLoader) {
+		return new StepBuilder("route-staging-step", jobRepository)
+				.tasklet(stagingTableLoader::route, transactionManager).build();
+	}
+
+}
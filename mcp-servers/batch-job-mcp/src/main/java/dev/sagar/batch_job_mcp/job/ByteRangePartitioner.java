@@ -0,0 +1,81 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+/**
+ * Splits a CSV file into contiguous byte ranges of roughly equal size, one per partition. Every
+ * range starts at the beginning of a line and ends right after a newline (or at the end of the
+ * file), so that no line is split between two partitions.
+ */
+class ByteRangePartitioner implements Partitioner {
+
+	static final String START_BYTE = "startByte";
+
+	static final String END_BYTE = "endByte";
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ByteRangePartitioner.class);
+
+	private final Path file;
+
+	ByteRangePartitioner(Path file) {
+		this.file = file;
+	}
+
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long start = 0;
+			for (int i = 0; i < gridSize && start < size; i++) {
+				long end = (i == gridSize - 1) ? size
+						: nextLineStart(channel, Math.max(start, size * (i + 1) / gridSize), size);
+
+				ExecutionContext context = new ExecutionContext();
+				context.putLong(START_BYTE, start);
+				context.putLong(END_BYTE, end);
+				partitions.put("partition" + i, context);
+				logger.info("Partition {} of {}: bytes [{}, {})", i, file, start, end);
+				start = end;
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Could not partition " + file, e);
+		}
+		return partitions;
+	}
+
+	/**
+	 * Returns the offset of the first line that starts after the given position, or the size of
+	 * the file if there is none.
+	 */
+	private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long offset = position;
+		while (offset < size) {
+			buffer.clear();
+			int read = channel.read(buffer, offset);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return offset + i + 1;
+				}
+			}
+			offset += read;
+		}
+		return size;
+	}
+
+}
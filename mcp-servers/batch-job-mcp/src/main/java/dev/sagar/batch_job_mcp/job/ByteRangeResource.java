@@ -0,0 +1,102 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.springframework.core.io.AbstractResource;
+
+/**
+ * A resource exposing only the bytes {@code [start, end)} of a file, so that a
+ * {@link org.springframework.batch.item.file.FlatFileItemReader} can read a single partition of
+ * it. Because every stream starts again at {@code start}, the reader's restart state (the number
+ * of items read) stays relative to the partition.
+ */
+class ByteRangeResource extends AbstractResource {
+
+	private final Path file;
+
+	private final long start;
+
+	private final long end;
+
+	ByteRangeResource(Path file, long start, long end) {
+		this.file = file;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public boolean exists() {
+		return Files.exists(file);
+	}
+
+	@Override
+	public String getDescription() {
+		return "bytes [" + start + ", " + end + ") of file [" + file.toAbsolutePath() + "]";
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ).position(start);
+		return new RangeInputStream(Channels.newInputStream(channel), end - start);
+	}
+
+	private static class RangeInputStream extends FilterInputStream {
+
+		private long remaining;
+
+		RangeInputStream(InputStream in, long length) {
+			super(in);
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = super.read(b, off, (int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+	}
+
+}
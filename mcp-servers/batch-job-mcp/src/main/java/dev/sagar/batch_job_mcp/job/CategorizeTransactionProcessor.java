@@ -1,8 +1,13 @@
 package dev.sagar.batch_job_mcp.job;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.retry.TransientAiException;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
 @Component
 class CategorizeTransactionProcessor implements ItemProcessor<FinancialTransaction, FinancialTransaction> {
@@ -14,29 +19,163 @@ class CategorizeTransactionProcessor implements ItemProcessor<FinancialTransacti
 
 	private final CategoryService categoryService;
 
+	private final CategoryCache categoryCache;
+
+	private final LlmRateLimiter llmRateLimiter;
+
+	private final IngestionMetrics ingestionMetrics;
+
 	private static final String SYSTEM_PROMPT = """
 			You are a financial assistant. You will be given a transaction and you need to categorize it into one of the following categories: {categories}.
 			Please provide the category in a single word.
 			If you are unsure about the category, use "Other".
 			""";
 
-	public CategorizeTransactionProcessor(ChatClient.Builder builder, CategoryService categoryService) {
+	private static final String BATCH_SYSTEM_PROMPT = """
+			You are a financial assistant. You will be given a numbered list of transactions and you need to categorize each of them into one of the following categories: {categories}.
+			Return exactly one entry per transaction, using the index shown in front of the transaction.
+			Please provide each category in a single word.
+			If you are unsure about the category, use "Other".
+			""";
+
+	record CategorizedTransaction(int index, String category) {
+	}
+
+	record CategorizedTransactions(List<CategorizedTransaction> transactions) {
+	}
+
+	public CategorizeTransactionProcessor(ChatClient.Builder builder, CategoryService categoryService,
+			CategoryCache categoryCache, LlmRateLimiter llmRateLimiter, IngestionMetrics ingestionMetrics) {
 		this.chatClient = builder.build();
 		this.categoryService = categoryService;
+		this.categoryCache = categoryCache;
+		this.llmRateLimiter = llmRateLimiter;
+		this.ingestionMetrics = ingestionMetrics;
 	}
 
 	@Override
 	public FinancialTransaction process(FinancialTransaction transaction) throws Exception {
-		var category = chatClient.prompt()
+		if (StringUtils.hasText(transaction.category())
+				|| transaction.transaction_type() == TransactionType.CREDIT_CARD_PAYMENT) {
+			return transaction;
+		}
+		var category = categoryCache.get(transaction.transaction_detail());
+		if (category == null) {
+			category = requestCategory(transaction);
+		}
+		return withCategory(transaction, category);
+	}
+
+	/**
+	 * Categorizes all the given transactions, answering from the {@link CategoryCache} where
+	 * possible and with a single structured-output request for the rest. The categories
+	 * returned by the model are mapped back to the transactions by index, and any transaction
+	 * the model did not answer for (or the whole list, if the answer is malformed) is
+	 * categorized with a per-item call instead.
+	 * @param transactions the transactions to categorize
+	 * @return the categorized transactions, in the same order as the input
+	 */
+	public List<FinancialTransaction> categorize(List<? extends FinancialTransaction> transactions)
+			throws Exception {
+		String[] categories = categoryCache
+			.getAll(transactions.stream().map(FinancialTransaction::transaction_detail).toList());
+
+		List<FinancialTransaction> uncached = new ArrayList<>();
+		List<Integer> uncachedIndexes = new ArrayList<>();
+		for (int i = 0; i < categories.length; i++) {
+			if (categories[i] == null) {
+				uncached.add(transactions.get(i));
+				uncachedIndexes.add(i);
+			}
+		}
+
+		String[] requested = requestCategories(uncached);
+		for (int i = 0; i < requested.length; i++) {
+			if (requested[i] != null) {
+				categoryCache.put(uncached.get(i).transaction_detail(), requested[i]);
+				categories[uncachedIndexes.get(i)] = requested[i];
+			}
+		}
+
+		List<FinancialTransaction> categorized = new ArrayList<>(transactions.size());
+		int fallbacks = 0;
+		for (int i = 0; i < transactions.size(); i++) {
+			if (categories[i] == null) {
+				fallbacks++;
+				categories[i] = requestCategory(transactions.get(i));
+			}
+			categorized.add(withCategory(transactions.get(i), categories[i]));
+		}
+		logger.debug("Categorized {} transactions, {} from the cache, {} with per-item fallback",
+				transactions.size(), transactions.size() - uncached.size(), fallbacks);
+		return categorized;
+	}
+
+	private String requestCategory(FinancialTransaction transaction) {
+		long queuedAt = System.nanoTime();
+		var category = llmRateLimiter.execute(() -> ingestionMetrics.timeLlmRequest(1, queuedAt, () -> chatClient.prompt()
 			.system(systemMessage -> systemMessage.text(SYSTEM_PROMPT)
 				.param("categories", categoryService.getCategories()))
 			.user(String.format("Categorize the transaction: %s", transaction.transaction_detail()))
 			.call()
-			.content();
+			.content()));
 		logger.debug("Transaction: {} -> Category: {}", transaction.transaction_detail(), category);
 
+		categoryCache.put(transaction.transaction_detail(), category);
+		return category;
+	}
+
+	private String[] requestCategories(List<? extends FinancialTransaction> transactions) {
+		String[] categories = new String[transactions.size()];
+		if (transactions.isEmpty()) {
+			return categories;
+		}
+
+		StringBuilder numberedTransactions = new StringBuilder();
+		for (int i = 0; i < transactions.size(); i++) {
+			numberedTransactions.append(i).append(": ").append(transactions.get(i).transaction_detail()).append('\n');
+		}
+
+		CategorizedTransactions response;
+		long queuedAt = System.nanoTime();
+		try {
+			response = llmRateLimiter.execute(() -> ingestionMetrics.timeLlmRequest(transactions.size(), queuedAt,
+					() -> chatClient.prompt()
+						.system(systemMessage -> systemMessage.text(BATCH_SYSTEM_PROMPT)
+							.param("categories", categoryService.getCategories()))
+						.user(userMessage -> userMessage.text("Categorize the transactions:\n{transactions}")
+							.param("transactions", numberedTransactions.toString()))
+						.call()
+						.entity(CategorizedTransactions.class)));
+		}
+		catch (TransientAiException e) {
+			// Throttled, falling back to per-item calls would only make it worse
+			throw e;
+		}
+		catch (RuntimeException e) {
+			logger.warn("Malformed batch categorization response, falling back to per-item calls: {}",
+					e.getMessage());
+			return categories;
+		}
+
+		if (response == null || response.transactions() == null) {
+			logger.warn("Empty batch categorization response, falling back to per-item calls");
+			return categories;
+		}
+
+		for (CategorizedTransaction entry : response.transactions()) {
+			if (entry != null && entry.index() >= 0 && entry.index() < categories.length
+					&& categories[entry.index()] == null && StringUtils.hasText(entry.category())) {
+				categories[entry.index()] = entry.category().strip();
+			}
+		}
+		return categories;
+	}
+
+	private FinancialTransaction withCategory(FinancialTransaction transaction, String category) {
 		return new FinancialTransaction(transaction.date(), Math.abs(transaction.amount()),
-				transaction.transaction_detail(), category, transaction.transaction_type());
+				transaction.transaction_detail(), category, transaction.transaction_type(),
+				transaction.fingerprint());
 	}
 
 }
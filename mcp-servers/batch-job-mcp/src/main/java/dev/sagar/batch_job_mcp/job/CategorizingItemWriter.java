@@ -0,0 +1,46 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.util.StringUtils;
+
+/**
+ * Categorizes the transactions of a whole chunk with one request to the
+ * {@link CategorizeTransactionProcessor} before handing them over to the delegate writer.
+ * Transactions that were already categorized earlier in the step are written as they are.
+ */
+class CategorizingItemWriter implements ItemWriter<FinancialTransaction> {
+
+	private final CategorizeTransactionProcessor categorizeTransactionProcessor;
+
+	private final ItemWriter<FinancialTransaction> delegate;
+
+	CategorizingItemWriter(CategorizeTransactionProcessor categorizeTransactionProcessor,
+			ItemWriter<FinancialTransaction> delegate) {
+		this.categorizeTransactionProcessor = categorizeTransactionProcessor;
+		this.delegate = delegate;
+	}
+
+	@Override
+	public void write(Chunk<? extends FinancialTransaction> chunk) throws Exception {
+		List<FinancialTransaction> items = new ArrayList<>(chunk.getItems());
+		List<FinancialTransaction> uncategorized = new ArrayList<>();
+		List<Integer> uncategorizedIndexes = new ArrayList<>();
+		for (int i = 0; i < items.size(); i++) {
+			if (!StringUtils.hasText(items.get(i).category())) {
+				uncategorized.add(items.get(i));
+				uncategorizedIndexes.add(i);
+			}
+		}
+
+		List<FinancialTransaction> categorized = categorizeTransactionProcessor.categorize(uncategorized);
+		for (int i = 0; i < categorized.size(); i++) {
+			items.set(uncategorizedIndexes.get(i), categorized.get(i));
+		}
+		delegate.write(new Chunk<>(items));
+	}
+
+}
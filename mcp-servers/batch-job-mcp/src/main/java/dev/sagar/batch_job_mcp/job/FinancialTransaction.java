@@ -7,7 +7,8 @@ record FinancialTransaction(
                 Double amount,
                 String transaction_detail,
                 String category,
-                TransactionType transaction_type) {
+                TransactionType transaction_type,
+                String fingerprint) {
 
         FinancialTransaction(LocalDate date, Double amount, String description) {
                 this(date, amount, description, "", TransactionType.DEBIT);
@@ -20,11 +21,22 @@ record FinancialTransaction(
 
         FinancialTransaction(LocalDate date, Double amount, String transaction_detail, String category,
                         TransactionType transaction_type) {
+                this(date, amount, transaction_detail, category, transaction_type, null);
+        }
+
+        FinancialTransaction(LocalDate date, Double amount, String transaction_detail, String category,
+                        TransactionType transaction_type, String fingerprint) {
                 this.date = date;
                 this.amount = amount;
                 this.transaction_detail = transaction_detail;
                 this.category = category;
                 this.transaction_type = transaction_type;
+                this.fingerprint = fingerprint;
+        }
+
+        FinancialTransaction withFingerprint(String fingerprint) {
+                return new FinancialTransaction(date, amount, transaction_detail, category, transaction_type,
+                                fingerprint);
         }
 
 }
\ No newline at end of file
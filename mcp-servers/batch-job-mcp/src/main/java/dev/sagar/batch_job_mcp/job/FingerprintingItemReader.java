@@ -0,0 +1,115 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+
+/**
+ * Fingerprints the transactions as they are read, see {@link TransactionFingerprint}. The
+ * occurrence of a transaction is its rank among the identical transactions of the whole file, in
+ * the order of the lines, which is also how {@link StagingTableLoader} numbers them in SQL.
+ *
+ * The occurrences are assigned when reading rather than when processing, as a chunk retried
+ * after a rollback processes its items again but does not read them again. When the reader is
+ * opened on a range that does not start the file (a partition), or on a restarted step, the
+ * counts of the transactions before its position are rebuilt by reading them again, so that the
+ * occurrences are the same as if the whole file had been read in one go.
+ */
+class FingerprintingItemReader extends ItemStreamSupport implements ItemStreamReader<FinancialTransaction> {
+
+	private static final String READ_COUNT = "read.count";
+
+	private final BiFunction<Long, Long, ItemStreamReader<FinancialTransaction>> rangeReader;
+
+	private final long startByte;
+
+	private final long endByte;
+
+	private final String account;
+
+	private final ItemStreamReader<FinancialTransaction> delegate;
+
+	private final Map<String, Integer> occurrences = new HashMap<>();
+
+	private long readCount;
+
+	/**
+	 * @param rangeReader creates a reader of the bytes {@code [start, end)} of the file, where an
+	 * end of {@code -1} is the end of the file
+	 * @param endByte the end of the range read (exclusive), or {@code -1} for the end of the file
+	 */
+	FingerprintingItemReader(BiFunction<Long, Long, ItemStreamReader<FinancialTransaction>> rangeReader,
+			long startByte, long endByte, String account) {
+		this.rangeReader = rangeReader;
+		this.startByte = startByte;
+		this.endByte = endByte;
+		this.account = account;
+		this.delegate = rangeReader.apply(startByte, endByte);
+		setName("fingerprintingItemReader");
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) {
+		occurrences.clear();
+		readCount = executionContext.getLong(getExecutionContextKey(READ_COUNT), 0);
+		if (startByte > 0) {
+			count(rangeReader.apply(0L, startByte), Long.MAX_VALUE);
+		}
+		if (readCount > 0) {
+			count(rangeReader.apply(startByte, endByte), readCount);
+		}
+		delegate.open(executionContext);
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) {
+		delegate.update(executionContext);
+		executionContext.putLong(getExecutionContextKey(READ_COUNT), readCount);
+	}
+
+	@Override
+	public void close() {
+		delegate.close();
+	}
+
+	@Override
+	public FinancialTransaction read() throws Exception {
+		FinancialTransaction transaction = delegate.read();
+		if (transaction == null) {
+			return null;
+		}
+		readCount++;
+		String key = key(transaction);
+		return transaction.withFingerprint(TransactionFingerprint.of(key, occurrences.merge(key, 1, Integer::sum)));
+	}
+
+	/**
+	 * Counts the first {@code limit} transactions of the given reader.
+	 */
+	private void count(ItemStreamReader<FinancialTransaction> reader, long limit) {
+		reader.open(new ExecutionContext());
+		try {
+			FinancialTransaction transaction;
+			for (long i = 0; i < limit && (transaction = reader.read()) != null; i++) {
+				occurrences.merge(key(transaction), 1, Integer::sum);
+			}
+		}
+		catch (Exception e) {
+			throw new ItemStreamException("Failed to count the transactions before the read position", e);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private String key(FinancialTransaction transaction) {
+		return TransactionFingerprint.key(transaction.date(), transaction.amount(), transaction.transaction_detail(),
+				account);
+	}
+
+}
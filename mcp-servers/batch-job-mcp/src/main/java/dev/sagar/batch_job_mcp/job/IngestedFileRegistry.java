@@ -0,0 +1,199 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps track of the statement files that were already ingested, by SHA-256 of their content.
+ * As a decider, it sends jobs for a file that was already ingested straight to the end of the
+ * job; as a listener, it records the file once the job has completed.
+ *
+ * A job claims its file with a row of {@code ingested_files} owned by its node, from the decision
+ * to the end of the job, so that two jobs, on this node or on any other node sharing the
+ * database, never ingest the same file at the same time. A job that finds the file claimed skips
+ * it, as the file is being ingested by the job holding the claim, and ends with the
+ * {@value #SKIPPED_IN_PROGRESS} exit status rather than passing for a job that ingested it. The node renews the heartbeat of
+ * its claims every third of {@code app.batch.ingested-files.lease-ms}; the claim of a node that
+ * stopped renewing it, having died, expires and can be taken over by the next job for the file.
+ */
+@Component
+class IngestedFileRegistry implements JobExecutionDecider, JobExecutionListener, SmartLifecycle {
+
+	static final String ALREADY_INGESTED = "ALREADY_INGESTED";
+
+	static final String NEW_FILE = "NEW_FILE";
+
+	static final String IN_PROGRESS = "IN_PROGRESS";
+
+	static final String SKIPPED_IN_PROGRESS = "SKIPPED_IN_PROGRESS";
+
+	private static final String DECISION_KEY = "ingestedFileDecision";
+
+	// Inserts the claim, or takes over the expired claim of a dead node
+	private static final String CLAIM = """
+			INSERT INTO ingested_files (sha256, source_file, claimed_by, heartbeat_at)
+			VALUES (:sha256, :sourceFile, :node, NOW())
+			ON CONFLICT (sha256) DO UPDATE
+			SET source_file = EXCLUDED.source_file, claimed_by = EXCLUDED.claimed_by, heartbeat_at = NOW()
+			WHERE ingested_files.ingested_at IS NULL
+			  AND (ingested_files.claimed_by IS NULL
+			    OR ingested_files.heartbeat_at < NOW() - make_interval(secs => :leaseSeconds))
+			""";
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(IngestedFileRegistry.class);
+
+	private final JdbcClient jdbcClient;
+
+	private final long leaseMillis;
+
+	// pid@host
+	private final String node = ManagementFactory.getRuntimeMXBean().getName();
+
+	// The SHA-256 of the files claimed by this node, by job execution ID
+	private final Map<Long, String> claims = new ConcurrentHashMap<>();
+
+	private volatile Thread renewer;
+
+	IngestedFileRegistry(JdbcClient jdbcClient,
+			@Value("${app.batch.ingested-files.lease-ms:60000}") long leaseMillis) {
+		this.jdbcClient = jdbcClient;
+		this.leaseMillis = leaseMillis;
+	}
+
+	@Override
+	public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution) {
+		// The file was hashed when it was staged
+		String sha256 = jobExecution.getExecutionContext().getString(StatementFileStore.FILE_SHA256_KEY, null);
+		if (sha256 == null) {
+			try {
+				sha256 = TransactionFingerprint.ofFile(statementFile(jobExecution));
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			jobExecution.getExecutionContext().putString(StatementFileStore.FILE_SHA256_KEY, sha256);
+		}
+
+		String fileName = jobExecution.getJobParameters().getString("fileName");
+		boolean claimed = jdbcClient.sql(CLAIM)
+			.param("sha256", sha256)
+			.param("sourceFile", fileName)
+			.param("node", node)
+			.param("leaseSeconds", leaseMillis / 1000.0)
+			.update() > 0;
+		if (claimed) {
+			claims.put(jobExecution.getId(), sha256);
+			return new FlowExecutionStatus(NEW_FILE);
+		}
+
+		// A claim released in the meantime was one of a job that failed, the file is not ingested
+		boolean ingested = jdbcClient.sql("SELECT ingested_at IS NOT NULL FROM ingested_files WHERE sha256 = :sha256")
+			.param("sha256", sha256)
+			.query(Boolean.class)
+			.optional()
+			.orElse(false);
+		if (ingested) {
+			logger.info("File {} (SHA-256 {}) was already ingested, skipping it", fileName, sha256);
+			return new FlowExecutionStatus(ALREADY_INGESTED);
+		}
+		logger.info("File {} (SHA-256 {}) is being ingested by another job, skipping it", fileName, sha256);
+		jobExecution.getExecutionContext().putString(DECISION_KEY, IN_PROGRESS);
+		return new FlowExecutionStatus(IN_PROGRESS);
+	}
+
+	@Override
+	public void afterJob(JobExecution jobExecution) {
+		if (jobExecution.getStatus() == BatchStatus.COMPLETED
+				&& IN_PROGRESS.equals(jobExecution.getExecutionContext().getString(DECISION_KEY, null))) {
+			jobExecution.setExitStatus(new ExitStatus(SKIPPED_IN_PROGRESS, "The file is being ingested by another job"));
+		}
+
+		// Only the job holding the claim ingested the file
+		String sha256 = claims.remove(jobExecution.getId());
+		if (sha256 == null) {
+			return;
+		}
+		if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
+			// Recorded even if the claim was taken over, the file being ingested anyway
+			jdbcClient.sql("""
+					UPDATE ingested_files SET ingested_at = NOW(), claimed_by = NULL, heartbeat_at = NULL
+					WHERE sha256 = :sha256
+					""")
+				.param("sha256", sha256)
+				.update();
+		}
+		else {
+			jdbcClient.sql("""
+					DELETE FROM ingested_files
+					WHERE sha256 = :sha256 AND claimed_by = :node AND ingested_at IS NULL
+					""")
+				.param("sha256", sha256)
+				.param("node", node)
+				.update();
+		}
+	}
+
+	@Override
+	public void start() {
+		renewer = Thread.ofPlatform().name("ingested-file-claim-renewer").daemon().start(this::renewClaims);
+	}
+
+	@Override
+	public void stop() {
+		Thread renewer = this.renewer;
+		if (renewer != null) {
+			renewer.interrupt();
+			this.renewer = null;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return renewer != null;
+	}
+
+	private void renewClaims() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(leaseMillis / 3);
+				if (!claims.isEmpty()) {
+					jdbcClient.sql("""
+							UPDATE ingested_files SET heartbeat_at = NOW()
+							WHERE claimed_by = :node AND ingested_at IS NULL
+							""")
+						.param("node", node)
+						.update();
+				}
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			catch (RuntimeException e) {
+				logger.warn("Failed to renew the file claims of {}: {}", node, e.getMessage());
+			}
+		}
+	}
+
+	private static Path statementFile(JobExecution jobExecution) {
+		String stagedFilePath = jobExecution.getExecutionContext().getString(StatementFileStore.FILE_PATH_KEY, null);
+		return Paths.get(stagedFilePath != null ? stagedFilePath : jobExecution.getJobParameters().getString("fileName"));
+	}
+
+}
@@ -1,15 +1,32 @@
 package dev.sagar.batch_job_mcp.job;
 
 import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.springframework.batch.core.JobExecution;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 
 record JobDetails(String status, Long jobExecutionId, @JsonInclude(Include.NON_NULL) Long jobInstanceId, String jobName,
 		LocalDateTime startTime, @JsonInclude(Include.NON_NULL) LocalDateTime endTime,
-		@JsonInclude(Include.NON_NULL) LocalDateTime lastUpdated) {
+		@JsonInclude(Include.NON_NULL) LocalDateTime lastUpdated,
+		@JsonInclude(Include.NON_EMPTY) Map<String, String> files) {
+
+	static final String QUEUED = "QUEUED";
+
+	static final String REJECTED = "REJECTED";
 
 	public JobDetails(String status, Long jobExecutionId, Long jobInstanceId, String jobName, LocalDateTime startTime) {
-		this(status, jobExecutionId, jobInstanceId, jobName, startTime, null, null);
+		this(status, jobExecutionId, jobInstanceId, jobName, startTime, null, null, null);
+	}
+
+	static JobDetails queued(JobExecution execution) {
+		return new JobDetails(QUEUED, execution.getId(), execution.getJobInstance().getInstanceId(),
+				execution.getJobInstance().getJobName(), execution.getCreateTime());
+	}
+
+	static JobDetails rejected(String jobName) {
+		return new JobDetails(REJECTED, -1L, null, jobName, null);
 	}
 }
@@ -0,0 +1,97 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Where a job execution spent its time, step by step, as recorded by {@link IngestionMetrics}.
+ * The steps that are not chunk-oriented only have their counts and duration. The metrics of a
+ * running step are those of its last committed chunk.
+ */
+record JobMetrics(Long jobExecutionId, String jobName, String status, long durationMillis, double itemsPerSecond,
+		List<StepMetrics> steps) {
+
+	record StepMetrics(String stepName, String status, long readCount, long filterCount, long writeCount,
+			long skipCount, long commitCount, long rollbackCount, long durationMillis, double itemsPerSecond,
+			long chunks, long readMillis, long processMillis, long writeMillis, long llmRequests, long llmItems,
+			long llmMillis, long llmWaitMillis, long cacheHits, long cacheMisses,
+			@JsonInclude(Include.NON_EMPTY) Map<String, Long> filtered,
+			@JsonInclude(Include.NON_EMPTY) Map<String, Long> routed) {
+
+		static StepMetrics of(StepExecution stepExecution) {
+			ExecutionContext context = stepExecution.getExecutionContext();
+			long durationMillis = elapsedMillis(stepExecution.getStartTime(), stepExecution.getEndTime());
+			return new StepMetrics(stepExecution.getStepName(), stepExecution.getStatus().name(),
+					stepExecution.getReadCount(), stepExecution.getFilterCount(), stepExecution.getWriteCount(),
+					stepExecution.getSkipCount(), stepExecution.getCommitCount(), stepExecution.getRollbackCount(),
+					durationMillis, perSecond(stepExecution.getWriteCount(), durationMillis),
+					context.getLong(IngestionMetrics.CHUNKS, 0), millis(context, IngestionMetrics.READ_NANOS),
+					millis(context, IngestionMetrics.PROCESS_NANOS), millis(context, IngestionMetrics.WRITE_NANOS),
+					context.getLong(IngestionMetrics.LLM_REQUESTS, 0), context.getLong(IngestionMetrics.LLM_ITEMS, 0),
+					millis(context, IngestionMetrics.LLM_NANOS), millis(context, IngestionMetrics.LLM_WAIT_NANOS),
+					context.getLong(IngestionMetrics.CACHE_HITS, 0), context.getLong(IngestionMetrics.CACHE_MISSES, 0),
+					totals(context, IngestionMetrics.FILTERED), totals(context, IngestionMetrics.ROUTED));
+		}
+
+		/**
+		 * The totals saved under the given prefix, by the rest of their key.
+		 */
+		private static Map<String, Long> totals(ExecutionContext context, String prefix) {
+			Map<String, Long> totals = new TreeMap<>();
+			context.entrySet()
+				.stream()
+				.filter(entry -> entry.getKey().startsWith(prefix))
+				.forEach(entry -> totals.put(entry.getKey().substring(prefix.length()),
+						((Number) entry.getValue()).longValue()));
+			return totals;
+		}
+
+		private static long millis(ExecutionContext context, String key) {
+			return TimeUnit.NANOSECONDS.toMillis(context.getLong(key, 0));
+		}
+
+	}
+
+	static JobMetrics of(JobExecution execution) {
+		List<StepMetrics> steps = execution.getStepExecutions()
+			.stream()
+			.sorted((a, b) -> Long.compare(a.getId(), b.getId()))
+			.map(StepMetrics::of)
+			.toList();
+		long durationMillis = elapsedMillis(execution.getStartTime(), execution.getEndTime());
+		// Partitioned steps count the items of their partitions again, only the steps doing the work are summed
+		long written = execution.getStepExecutions()
+			.stream()
+			.filter(stepExecution -> stepExecution.getExecutionContext().containsKey(IngestionMetrics.CHUNKS))
+			.mapToLong(StepExecution::getWriteCount)
+			.sum();
+		return new JobMetrics(execution.getId(), execution.getJobInstance().getJobName(), execution.getStatus().name(),
+				durationMillis, perSecond(written, durationMillis), steps);
+	}
+
+	/**
+	 * The time between the start and the end, or until now while running.
+	 */
+	private static long elapsedMillis(LocalDateTime startTime, LocalDateTime endTime) {
+		if (startTime == null) {
+			return 0;
+		}
+		return Duration.between(startTime, endTime != null ? endTime : LocalDateTime.now()).toMillis();
+	}
+
+	private static double perSecond(long items, long millis) {
+		return millis > 0 ? items * 1000.0 / millis : 0;
+	}
+
+}
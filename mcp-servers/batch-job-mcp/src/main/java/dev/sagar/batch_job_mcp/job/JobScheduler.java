@@ -0,0 +1,373 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Runs the batch jobs on a bounded number of worker threads, so that a burst of launches does not
+ * start as many jobs competing for the connection pool and the LLM quota.
+ *
+ * Launched jobs wait in a queue ordered by {@link JobPriority}. Within a priority, the sources
+ * (accounts, watched directories) take turns, so that one source queueing many statements does
+ * not hold back the others. A launch is refused when the queue holds {@code capacity} jobs, or
+ * {@code maxQueuedPerSource} jobs of the same source. The room of a launch is reserved before its
+ * job execution is created, so that a refused launch leaves no execution behind.
+ *
+ * A queued job execution is {@code STARTING} until a worker runs it. The executions still queued
+ * when the scheduler is shut down, and those left {@code STARTING} by a previous run of this node
+ * that did not shut down, are marked as failed, so that they can be restarted.
+ *
+ * Also used as the task executor of the job launcher, for launches that do not go through
+ * {@link #submit}.
+ */
+@Component
+class JobScheduler implements TaskExecutor, SmartInitializingSingleton, DisposableBean {
+
+	static final String DEFAULT_SOURCE = "default";
+
+	// Key of the node that queued a job execution, in its execution context
+	static final String QUEUED_BY_KEY = "scheduler.queued-by";
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JobScheduler.class);
+
+	private final JobRepository jobRepository;
+
+	private final JobExplorer jobExplorer;
+
+	// The host, which unlike the pid is the same after a restart
+	private final String node = ManagementFactory.getRuntimeMXBean().getName().replaceFirst("^\\d+@", "");
+
+	private final int capacity;
+
+	private final int maxQueuedPerSource;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	// The queued jobs of every priority, per source in the order the sources take turns
+	private final Map<JobPriority, LinkedHashMap<String, ArrayDeque<QueuedJob>>> queues =
+			new EnumMap<>(JobPriority.class);
+
+	private final Map<JobPriority, Integer> queuedPerPriority = new EnumMap<>(JobPriority.class);
+
+	private final Map<String, Integer> queuedPerSource = new HashMap<>();
+
+	// Room reserved by the launches whose job execution is being created
+	private int reserved;
+
+	private final Map<String, Integer> reservedPerSource = new HashMap<>();
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private final Map<JobPriority, Timer> waitTimers = new EnumMap<>(JobPriority.class);
+
+	private final Counter rejected;
+
+	JobScheduler(JobRepository jobRepository, JobExplorer jobExplorer, MeterRegistry meterRegistry,
+			@Value("${app.batch.jobs.max-concurrent:2}") int maxConcurrent,
+			@Value("${app.batch.jobs.queue-capacity:50}") int capacity,
+			@Value("${app.batch.jobs.max-queued-per-source:20}") int maxQueuedPerSource) {
+		this.jobRepository = jobRepository;
+		this.jobExplorer = jobExplorer;
+		this.capacity = capacity;
+		this.maxQueuedPerSource = maxQueuedPerSource;
+		for (JobPriority priority : JobPriority.values()) {
+			queues.put(priority, new LinkedHashMap<>());
+			queuedPerPriority.put(priority, 0);
+			Gauge.builder("batch.jobs.queued", this, scheduler -> scheduler.queued(priority))
+				.description("Jobs waiting for a worker")
+				.tag("priority", priority.name())
+				.register(meterRegistry);
+			waitTimers.put(priority, Timer.builder("batch.jobs.wait")
+				.description("Time from launching a job to a worker starting it")
+				.tag("priority", priority.name())
+				.register(meterRegistry));
+		}
+		Gauge.builder("batch.jobs.running", running, AtomicInteger::get)
+			.description("Jobs being run by the workers")
+			.register(meterRegistry);
+		this.rejected = Counter.builder("batch.jobs.rejected")
+			.description("Launches refused because the queue was full")
+			.register(meterRegistry);
+		for (int i = 0; i < maxConcurrent; i++) {
+			workers.add(Thread.ofVirtual().name("batch-job-worker-" + i).start(this::work));
+		}
+	}
+
+	JobDetails submit(Job job, JobParameters parameters, JobPriority priority, String source)
+			throws JobExecutionException {
+		return submit(job, parameters, priority, source, () -> {
+		});
+	}
+
+	/**
+	 * Creates the job execution and queues it.
+	 * @param source the source the job is fair-queued by
+	 * @param onCompletion called once the job has ended, whatever its outcome
+	 * @return the details of the queued job execution, or a {@code REJECTED} status if the queue
+	 * is full
+	 */
+	JobDetails submit(Job job, JobParameters parameters, JobPriority priority, String source, Runnable onCompletion)
+			throws JobExecutionException {
+		if (!reserve(source)) {
+			rejected.increment();
+			logger.warn("Job queue is full, refused to launch {} for {}", job.getName(), source);
+			return JobDetails.rejected(job.getName());
+		}
+
+		AtomicReference<JobExecution> queuedExecution = new AtomicReference<>();
+		TaskExecutorJobLauncher jobLauncher = new TaskExecutorJobLauncher();
+		jobLauncher.setJobRepository(jobRepository);
+		jobLauncher.setTaskExecutor(task -> enqueue(new QueuedJob(task, priority, source, onCompletion, queuedExecution)));
+		JobExecution execution;
+		try {
+			jobLauncher.afterPropertiesSet();
+			execution = jobLauncher.run(job, parameters);
+		}
+		catch (JobExecutionException | RuntimeException e) {
+			release(source);
+			throw e;
+		}
+		catch (Exception e) {
+			release(source);
+			throw new IllegalStateException(e);
+		}
+		execution.getExecutionContext().putString(QUEUED_BY_KEY, node);
+		jobRepository.updateExecutionContext(execution);
+		queuedExecution.set(execution);
+		logger.info("Queued job execution {} of {} for {} with priority {}", execution.getId(), job.getName(),
+				source, priority);
+		return JobDetails.queued(execution);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if (!reserve(DEFAULT_SOURCE)) {
+			throw new TaskRejectedException("Job queue is full");
+		}
+		enqueue(new QueuedJob(task, JobPriority.INTERACTIVE, DEFAULT_SOURCE, () -> {
+		}, new AtomicReference<>()));
+	}
+
+	/**
+	 * Reserves room in the queue for a job of the source.
+	 * @return whether there was room for it
+	 */
+	private boolean reserve(String source) {
+		lock.lock();
+		try {
+			int queued = queuedPerPriority.values().stream().mapToInt(Integer::intValue).sum();
+			if (queued + reserved >= capacity || queuedPerSource.getOrDefault(source, 0)
+					+ reservedPerSource.getOrDefault(source, 0) >= maxQueuedPerSource) {
+				return false;
+			}
+			reserved++;
+			reservedPerSource.merge(source, 1, Integer::sum);
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void release(String source) {
+		lock.lock();
+		try {
+			reserved--;
+			reservedPerSource.computeIfPresent(source, (key, count) -> count > 1 ? count - 1 : null);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues a job whose room was reserved.
+	 */
+	private void enqueue(QueuedJob job) {
+		lock.lock();
+		try {
+			release(job.source());
+			queues.get(job.priority()).computeIfAbsent(job.source(), source -> new ArrayDeque<>()).add(job);
+			queuedPerPriority.merge(job.priority(), 1, Integer::sum);
+			queuedPerSource.merge(job.source(), 1, Integer::sum);
+			notEmpty.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the next job of the highest priority that has any, from the source whose turn it
+	 * is, and moves that source to the end of the line.
+	 */
+	private QueuedJob take() throws InterruptedException {
+		lock.lock();
+		try {
+			while (true) {
+				for (JobPriority priority : JobPriority.values()) {
+					Iterator<Map.Entry<String, ArrayDeque<QueuedJob>>> sources = queues.get(priority)
+						.entrySet()
+						.iterator();
+					if (sources.hasNext()) {
+						Map.Entry<String, ArrayDeque<QueuedJob>> next = sources.next();
+						sources.remove();
+						QueuedJob job = next.getValue().poll();
+						if (!next.getValue().isEmpty()) {
+							queues.get(priority).put(next.getKey(), next.getValue());
+						}
+						queuedPerPriority.merge(priority, -1, Integer::sum);
+						queuedPerSource.computeIfPresent(job.source(), (source, count) -> count > 1 ? count - 1 : null);
+						return job;
+					}
+				}
+				notEmpty.await();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void work() {
+		while (true) {
+			QueuedJob job;
+			try {
+				job = take();
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			waitTimers.get(job.priority()).record(System.nanoTime() - job.queuedAt(), TimeUnit.NANOSECONDS);
+			running.incrementAndGet();
+			try {
+				job.task().run();
+			}
+			catch (RuntimeException e) {
+				logger.error("Job of {} failed", job.source(), e);
+			}
+			finally {
+				running.decrementAndGet();
+				job.onCompletion().run();
+			}
+		}
+	}
+
+	private int queued(JobPriority priority) {
+		lock.lock();
+		try {
+			return queuedPerPriority.get(priority);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Fails the job executions this node left {@code STARTING} when it last stopped without
+	 * shutting down, which no worker will ever run.
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		for (String jobName : jobExplorer.getJobNames()) {
+			for (JobExecution execution : jobExplorer.findRunningJobExecutions(jobName)) {
+				if (execution.getStatus() == BatchStatus.STARTING
+						&& node.equals(execution.getExecutionContext().getString(QUEUED_BY_KEY, null))) {
+					fail(execution, "The job was still queued when " + node + " stopped");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the workers and fails the job executions still queued.
+	 */
+	@Override
+	public void destroy() {
+		workers.forEach(Thread::interrupt);
+		List<QueuedJob> queued = new ArrayList<>();
+		lock.lock();
+		try {
+			queues.values().forEach(sources -> sources.values().forEach(queued::addAll));
+			queues.values().forEach(Map::clear);
+			queuedPerPriority.replaceAll((priority, count) -> 0);
+			queuedPerSource.clear();
+		}
+		finally {
+			lock.unlock();
+		}
+		for (QueuedJob job : queued) {
+			JobExecution execution = job.execution().get();
+			if (execution != null) {
+				fail(execution, "The job was still queued when the job scheduler was shut down");
+			}
+			job.onCompletion().run();
+		}
+	}
+
+	private void fail(JobExecution execution, String reason) {
+		try {
+			execution.upgradeStatus(BatchStatus.FAILED);
+			execution.setExitStatus(ExitStatus.FAILED.addExitDescription(reason));
+			execution.setEndTime(LocalDateTime.now());
+			jobRepository.update(execution);
+			logger.warn("Failed job execution {} of {}: {}", execution.getId(), execution.getJobInstance().getJobName(),
+					reason);
+		}
+		catch (RuntimeException e) {
+			logger.error("Could not mark job execution {} as failed", execution.getId(), e);
+		}
+	}
+
+	/**
+	 * @param execution the job execution of the job, once the launcher has returned it
+	 */
+	private record QueuedJob(Runnable task, JobPriority priority, String source, Runnable onCompletion,
+			AtomicReference<JobExecution> execution, long queuedAt) {
+
+		QueuedJob(Runnable task, JobPriority priority, String source, Runnable onCompletion,
+				AtomicReference<JobExecution> execution) {
+			this(task, priority, source, onCompletion, execution, System.nanoTime());
+		}
+
+	}
+
+}
@@ -0,0 +1,72 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.ResponseErrorHandler;
+
+/**
+ * Error handler of the OpenAI client, replacing the one of the Spring AI retry auto-configuration
+ * so that throttling responses keep their status and {@code Retry-After} for the
+ * {@link LlmRateLimiter}. 429 and 5xx responses are thrown as {@link LlmThrottledException},
+ * other client errors as {@link NonTransientAiException}.
+ */
+@Component
+class LlmResponseErrorHandler implements ResponseErrorHandler {
+
+	// Sent by OpenAI and Azure OpenAI alongside Retry-After, with a millisecond resolution
+	private static final String RETRY_AFTER_MS = "retry-after-ms";
+
+	@Override
+	public boolean hasError(ClientHttpResponse response) throws IOException {
+		return response.getStatusCode().isError();
+	}
+
+	@Override
+	public void handleError(URI url, HttpMethod method, ClientHttpResponse response) throws IOException {
+		HttpStatusCode status = response.getStatusCode();
+		String message = "%s - %s %s - %s".formatted(status.value(), method, url,
+				StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8));
+		if (status.value() == HttpStatus.TOO_MANY_REQUESTS.value() || status.is5xxServerError()) {
+			throw new LlmThrottledException(message, status.value(), retryAfter(response.getHeaders()));
+		}
+		throw new NonTransientAiException(message);
+	}
+
+	static Duration retryAfter(HttpHeaders headers) {
+		String millis = headers.getFirst(RETRY_AFTER_MS);
+		String value = headers.getFirst(HttpHeaders.RETRY_AFTER);
+		try {
+			if (millis != null) {
+				return Duration.ofMillis((long) Double.parseDouble(millis.strip()));
+			}
+			if (value == null) {
+				return null;
+			}
+			if (value.strip().chars().allMatch(Character::isDigit)) {
+				return Duration.ofSeconds(Long.parseLong(value.strip()));
+			}
+			Instant at = ZonedDateTime.parse(value.strip(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+			Duration untilThen = Duration.between(Instant.now(), at);
+			return untilThen.isNegative() ? Duration.ZERO : untilThen;
+		}
+		catch (NumberFormatException | DateTimeParseException e) {
+			return null;
+		}
+	}
+
+}
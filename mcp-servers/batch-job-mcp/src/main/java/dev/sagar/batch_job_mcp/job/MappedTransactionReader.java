@@ -0,0 +1,337 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.file.FlatFileParseException;
+
+/**
+ * Reads the transactions of a bank statement ({@code date,amount,description,balance}) from a
+ * memory-mapped file, parsing the columns straight from the bytes of each line instead of going
+ * through a {@link org.springframework.batch.item.file.transform.FieldSet}. Dates are parsed by
+ * hand ({@code d/M/yyyy} with one or two digit days and months) and amounts with a fast path for
+ * plain decimals, so a line costs a copy of its bytes and the description string.
+ *
+ * The file is mapped in windows of at most {@link #DEFAULT_WINDOW_SIZE} bytes, and a range of it
+ * can be read on its own, see {@link ByteRangePartitioner}. The restart state is the byte offset
+ * of the next line, so a restarted step seeks to it instead of reading and skipping the lines
+ * that were already processed.
+ */
+class MappedTransactionReader extends ItemStreamSupport implements ItemStreamReader<FinancialTransaction> {
+
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static final String BYTE_OFFSET = "byte.offset";
+
+	private static final String LINE_COUNT = "line.count";
+
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final Path file;
+
+	private final long startByte;
+
+	private final long endByte;
+
+	private final int windowSize;
+
+	private FileChannel channel;
+
+	private MappedByteBuffer window;
+
+	private long windowStart;
+
+	private long end;
+
+	private long position;
+
+	private long lineCount;
+
+	private byte[] line = new byte[256];
+
+	private int lineLength;
+
+	// Bounds of the last field found by nextField, escaped if it contains doubled quotes
+	private int fieldFrom;
+
+	private int fieldTo;
+
+	private boolean fieldEscaped;
+
+	MappedTransactionReader(Path file) {
+		this(file, 0, -1);
+	}
+
+	/**
+	 * Reads the lines of the given byte range, which must start at the beginning of a line.
+	 * @param endByte the end of the range (exclusive), or {@code -1} for the end of the file
+	 */
+	MappedTransactionReader(Path file, long startByte, long endByte) {
+		this(file, startByte, endByte, DEFAULT_WINDOW_SIZE);
+	}
+
+	MappedTransactionReader(Path file, long startByte, long endByte, int windowSize) {
+		this.file = file;
+		this.startByte = startByte;
+		this.endByte = endByte;
+		this.windowSize = windowSize;
+		setName("financialTransactionItemReader");
+	}
+
+	@Override
+	public void open(ExecutionContext executionContext) {
+		try {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+			end = endByte < 0 ? channel.size() : Math.min(endByte, channel.size());
+		}
+		catch (IOException e) {
+			throw new ItemStreamException("Failed to open " + file, e);
+		}
+		position = executionContext.getLong(getExecutionContextKey(BYTE_OFFSET), startByte);
+		lineCount = executionContext.getLong(getExecutionContextKey(LINE_COUNT), 0);
+		window = null;
+	}
+
+	@Override
+	public void update(ExecutionContext executionContext) {
+		executionContext.putLong(getExecutionContextKey(BYTE_OFFSET), position);
+		executionContext.putLong(getExecutionContextKey(LINE_COUNT), lineCount);
+	}
+
+	@Override
+	public void close() {
+		window = null;
+		if (channel != null) {
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				throw new ItemStreamException("Failed to close " + file, e);
+			}
+			finally {
+				channel = null;
+			}
+		}
+	}
+
+	@Override
+	public FinancialTransaction read() throws IOException {
+		while (position < end) {
+			readLine();
+			lineCount++;
+			if (lineLength > 0 && line[lineLength - 1] == '\r') {
+				lineLength--;
+			}
+			if (lineLength > 0) {
+				return parseLine();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Copies the line at the current position to the line buffer and moves past its line feed,
+	 * mapping the next window of the file when the line does not end in the current one.
+	 */
+	private void readLine() throws IOException {
+		while (true) {
+			if (window == null || position >= windowStart + window.limit()) {
+				map(position);
+			}
+			int from = (int) (position - windowStart);
+			int limit = window.limit();
+			int newline = from;
+			while (newline < limit && window.get(newline) != '\n') {
+				newline++;
+			}
+			boolean lastWindow = windowStart + limit >= end;
+			if (newline < limit || lastWindow) {
+				lineLength = newline - from;
+				if (line.length < lineLength) {
+					line = Arrays.copyOf(line, Math.max(lineLength, line.length * 2));
+				}
+				window.get(from, line, 0, lineLength);
+				position = windowStart + Math.min(newline + 1, limit);
+				return;
+			}
+			if (from == 0) {
+				throw new FlatFileParseException("Line longer than " + windowSize + " bytes at offset " + position,
+						"", (int) lineCount + 1);
+			}
+			map(position);
+		}
+	}
+
+	private void map(long from) throws IOException {
+		windowStart = from;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(windowSize, end - from));
+	}
+
+	private FinancialTransaction parseLine() {
+		int cursor = 0;
+		try {
+			cursor = nextField(cursor);
+			LocalDate date = parseDate(fieldFrom, fieldTo);
+			cursor = nextField(cursor);
+			double amount = parseAmount(fieldFrom, fieldTo);
+			cursor = nextField(cursor);
+			String description = new String(line, fieldFrom, fieldTo - fieldFrom, StandardCharsets.UTF_8).strip();
+			if (fieldEscaped) {
+				description = description.replace("\"\"", "\"");
+			}
+			return new FinancialTransaction(date, amount, description);
+		}
+		catch (IllegalArgumentException | DateTimeException e) {
+			throw new FlatFileParseException("Parsing error at line: " + lineCount + " in resource=[" + file
+					+ "], input=[" + input() + "]", e, input(), (int) lineCount);
+		}
+	}
+
+	/**
+	 * Finds the bounds of the field starting at the given index, without its quotes and
+	 * surrounding blanks, and returns the index of the next field.
+	 */
+	private int nextField(int from) {
+		if (from > lineLength) {
+			throw new IllegalArgumentException("Expected at least 3 columns");
+		}
+		int cursor = skipBlanks(from);
+		fieldEscaped = false;
+		if (cursor < lineLength && line[cursor] == '"') {
+			fieldFrom = ++cursor;
+			while (true) {
+				if (cursor >= lineLength) {
+					throw new IllegalArgumentException("Unterminated quoted field");
+				}
+				if (line[cursor] == '"') {
+					if (cursor + 1 < lineLength && line[cursor + 1] == '"') {
+						fieldEscaped = true;
+						cursor += 2;
+						continue;
+					}
+					break;
+				}
+				cursor++;
+			}
+			fieldTo = cursor;
+			cursor = skipBlanks(cursor + 1);
+		}
+		else {
+			fieldFrom = cursor;
+			while (cursor < lineLength && line[cursor] != ',') {
+				cursor++;
+			}
+			fieldTo = cursor;
+		}
+		if (cursor < lineLength && line[cursor] != ',') {
+			throw new IllegalArgumentException("Unexpected character after quoted field");
+		}
+		fieldFrom = skipBlanks(fieldFrom);
+		while (fieldTo > fieldFrom && line[fieldTo - 1] == ' ') {
+			fieldTo--;
+		}
+		return cursor + 1;
+	}
+
+	private int skipBlanks(int cursor) {
+		while (cursor < lineLength && line[cursor] == ' ') {
+			cursor++;
+		}
+		return cursor;
+	}
+
+	/**
+	 * Parses {@code d/M/yyyy}, where the day and the month have one or two digits.
+	 */
+	private LocalDate parseDate(int from, int to) {
+		int cursor = from;
+		int day = 0;
+		int digits = 0;
+		for (; cursor < to && line[cursor] != '/'; cursor++, digits++) {
+			day = day * 10 + digit(line[cursor]);
+		}
+		if (digits == 0 || digits > 2 || cursor == to) {
+			throw new IllegalArgumentException("Invalid day");
+		}
+		int month = 0;
+		digits = 0;
+		for (cursor++; cursor < to && line[cursor] != '/'; cursor++, digits++) {
+			month = month * 10 + digit(line[cursor]);
+		}
+		if (digits == 0 || digits > 2 || cursor == to) {
+			throw new IllegalArgumentException("Invalid month");
+		}
+		int year = 0;
+		digits = 0;
+		for (cursor++; cursor < to; cursor++, digits++) {
+			year = year * 10 + digit(line[cursor]);
+		}
+		if (digits != 4) {
+			throw new IllegalArgumentException("Invalid year");
+		}
+		return LocalDate.of(year, month, day);
+	}
+
+	/**
+	 * Parses a plain decimal such as {@code -12.50}. Up to 15 significant digits the result is the
+	 * exact quotient of two doubles, and therefore the same as {@link Double#parseDouble(String)},
+	 * which is used for anything else.
+	 */
+	private double parseAmount(int from, int to) {
+		int cursor = from;
+		boolean negative = false;
+		if (cursor < to && (line[cursor] == '-' || line[cursor] == '+')) {
+			negative = line[cursor++] == '-';
+		}
+		long mantissa = 0;
+		int scale = -1;
+		int digits = 0;
+		for (; cursor < to; cursor++) {
+			byte b = line[cursor];
+			if (b == '.' && scale < 0) {
+				scale = 0;
+			}
+			else if (b >= '0' && b <= '9' && mantissa < MAX_EXACT_MANTISSA / 10) {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (scale >= 0) {
+					scale++;
+				}
+			}
+			else {
+				break;
+			}
+		}
+		if (cursor < to || digits == 0 || scale >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(new String(line, from, to - from, StandardCharsets.US_ASCII));
+		}
+		double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+		return negative ? -value : value;
+	}
+
+	private static int digit(byte b) {
+		if (b < '0' || b > '9') {
+			throw new IllegalArgumentException("Invalid digit");
+		}
+		return b - '0';
+	}
+
+	private String input() {
+		return new String(line, 0, lineLength, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,93 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+/**
+ * Configures the multi-file variant of the load-transactions job, meant for backfills of many
+ * statements at once. Every file is a partition of the job, run in parallel as a
+ * load-transactions-file job, which is the load-transactions flow for a single file. The files
+ * share the category cache and the LLM rate limiter, and the cache is refreshed and the local
+ * classifier trained once per multi-file job rather than once per file.
+ */
+@Configuration
+class MultiFileConfig {
+
+	@Bean
+	Job multiFileJob(JobRepository jobRepository, Step multiFileStep, CategoryCache categoryCache,
+			TransactionClassifier transactionClassifier) {
+		return new JobBuilder("load-transactions-multi-file", jobRepository)
+				.incrementer(new RunIdIncrementer()).listener(categoryCache)
+				.listener(transactionClassifier).start(multiFileStep).build();
+	}
+
+	@Bean
+	Job fileJob(JobRepository jobRepository, Step stageFileStep, Step processFileStep,
+			Step releaseFileStep, IngestedFileRegistry ingestedFileRegistry) {
+		return new JobBuilder("load-transactions-file", jobRepository)
+				.listener(ingestedFileRegistry).start(stageFileStep).next(ingestedFileRegistry)
+				.on(IngestedFileRegistry.ALREADY_INGESTED).to(releaseFileStep)
+				.from(ingestedFileRegistry).on(IngestedFileRegistry.IN_PROGRESS).to(releaseFileStep)
+				.from(ingestedFileRegistry).on(IngestedFileRegistry.NEW_FILE).to(processFileStep)
+				.next(releaseFileStep).end().build();
+	}
+
+	/**
+	 * Runs the files on up to {@code app.batch.multi-file.max-threads} threads. Restarting a failed
+	 * execution only restarts the files that did not complete.
+	 */
+	@Bean
+	Step multiFileStep(JobRepository jobRepository, Step fileStep,
+			MultiFilePartitioner multiFilePartitioner,
+			@Value("${app.batch.multi-file.max-threads:4}") int maxThreads) {
+		SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("file-");
+		taskExecutor.setConcurrencyLimit(maxThreads);
+
+		return new StepBuilder("multi-file-step", jobRepository)
+				.partitioner("file-step", multiFilePartitioner).step(fileStep)
+				.taskExecutor(taskExecutor).build();
+	}
+
+	/**
+	 * Runs the load-transactions-file job for the file of the partition, on the partition's
+	 * thread. The file job is identified by the parameters of the multi-file job and the file, so
+	 * that it is restarted along with the multi-file job.
+	 */
+	@Bean
+	Step fileStep(JobRepository jobRepository, Job fileJob) throws Exception {
+		TaskExecutorJobLauncher jobLauncher = new TaskExecutorJobLauncher();
+		jobLauncher.setJobRepository(jobRepository);
+		jobLauncher.afterPropertiesSet();
+
+		return new StepBuilder("file-step", jobRepository).job(fileJob).launcher(jobLauncher)
+				.parametersExtractor((job, stepExecution) -> new JobParametersBuilder(
+						stepExecution.getJobParameters())
+						.addString("fileName", stepExecution.getExecutionContext()
+								.getString(MultiFilePartitioner.FILE_NAME_KEY))
+						.toJobParameters())
+				.build();
+	}
+
+	@StepScope
+	@Bean
+	MultiFilePartitioner multiFilePartitioner(
+			@Value("#{jobParameters['directory']}") String directory,
+			@Value("#{jobParameters['files']}") String files) throws IOException {
+		return new MultiFilePartitioner(MultiFilePartitioner.resolve(Paths.get(directory), files));
+	}
+
+}
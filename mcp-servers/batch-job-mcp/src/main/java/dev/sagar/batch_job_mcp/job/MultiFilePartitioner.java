@@ -0,0 +1,69 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.util.StringUtils;
+
+/**
+ * Partitions the multi-file job by statement: every file is a partition of its own, whatever the
+ * grid size, so that each file is staged, processed and reported on separately.
+ */
+class MultiFilePartitioner implements Partitioner {
+
+	static final String FILE_NAME_KEY = "fileName";
+
+	private final List<Path> files;
+
+	MultiFilePartitioner(List<Path> files) {
+		this.files = files;
+	}
+
+	@Override
+	public Map<String, ExecutionContext> partition(int gridSize) {
+		Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+		for (int i = 0; i < files.size(); i++) {
+			ExecutionContext context = new ExecutionContext();
+			context.putString(FILE_NAME_KEY, files.get(i).toAbsolutePath().toString());
+			partitions.put("file" + i, context);
+		}
+		return partitions;
+	}
+
+	/**
+	 * Resolves the files of a multi-file job in the given directory.
+	 * @param files a glob, such as {@code statements/2024-*.csv}, or a comma separated list of
+	 * file names
+	 * @return the matching files sorted by path, or the listed files, whether they exist or not
+	 */
+	static List<Path> resolve(Path directory, String files) throws IOException {
+		String spec = files.strip();
+		if (spec.chars().noneMatch(c -> "*?[{".indexOf(c) >= 0)) {
+			return Arrays.stream(spec.split(","))
+				.map(String::strip)
+				.filter(StringUtils::hasText)
+				.map(directory::resolve)
+				.toList();
+		}
+
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + spec);
+		int maxDepth = spec.contains("**") ? Integer.MAX_VALUE : spec.split("/").length;
+		try (Stream<Path> paths = Files.walk(directory, maxDepth)) {
+			return paths.filter(Files::isRegularFile)
+				.filter(path -> matcher.matches(directory.relativize(path)))
+				.sorted()
+				.toList();
+		}
+	}
+
+}
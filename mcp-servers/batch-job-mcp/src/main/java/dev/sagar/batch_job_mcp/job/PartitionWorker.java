@@ -0,0 +1,180 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.integration.partition.BeanFactoryStepLocator;
+import org.springframework.batch.integration.partition.StepExecutionRequest;
+import org.springframework.batch.integration.partition.StepExecutionRequestHandler;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the partitions published by the {@link WorkQueuePartitionHandler} of any node sharing the
+ * database. Each of the {@code app.batch.distributed.worker-threads} threads claims the oldest
+ * unclaimed partition with {@code FOR UPDATE SKIP LOCKED}, so that the nodes never wait for nor
+ * run the same partition, and executes its step execution as the job repository has it. The
+ * partition is removed from the queue once its step has ended, whatever its outcome.
+ *
+ * While it runs partitions, the node renews their claims every third of
+ * {@code app.batch.distributed.lease-ms}. The claims of a node that stopped renewing them, having
+ * died, expire, and the {@link WorkQueuePartitionHandler} then fails their step executions.
+ *
+ * The partitions read the staged file by path, so the nodes must share the staging directory,
+ * as they do when they run on the same host.
+ */
+@Component
+@ConditionalOnProperty(name = "app.batch.distributed.enabled", havingValue = "true")
+class PartitionWorker implements SmartLifecycle {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PartitionWorker.class);
+
+	private static final String CLAIM = """
+			UPDATE partition_work_queue SET claimed_by = :node, claimed_at = NOW()
+			WHERE step_execution_id = (
+			    SELECT step_execution_id FROM partition_work_queue
+			    WHERE claimed_by IS NULL
+			    ORDER BY created_at
+			    LIMIT 1
+			    FOR UPDATE SKIP LOCKED)
+			RETURNING step_execution_id, job_execution_id, step_name
+			""";
+
+	private final JdbcClient jdbcClient;
+
+	private final JobRepository jobRepository;
+
+	private final StepExecutionRequestHandler requestHandler = new StepExecutionRequestHandler();
+
+	private final int threads;
+
+	private final long pollIntervalMillis;
+
+	private final long leaseMillis;
+
+	// pid@host
+	private final String node = ManagementFactory.getRuntimeMXBean().getName();
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private volatile boolean running;
+
+	PartitionWorker(JdbcClient jdbcClient, JobExplorer jobExplorer, JobRepository jobRepository,
+			BeanFactory beanFactory, @Value("${app.batch.distributed.worker-threads:2}") int threads,
+			@Value("${app.batch.distributed.poll-interval-ms:1000}") long pollIntervalMillis,
+			@Value("${app.batch.distributed.lease-ms:60000}") long leaseMillis) {
+		this.jdbcClient = jdbcClient;
+		this.jobRepository = jobRepository;
+		this.threads = threads;
+		this.pollIntervalMillis = pollIntervalMillis;
+		this.leaseMillis = leaseMillis;
+		BeanFactoryStepLocator stepLocator = new BeanFactoryStepLocator();
+		stepLocator.setBeanFactory(beanFactory);
+		requestHandler.setStepLocator(stepLocator);
+		requestHandler.setJobExplorer(jobExplorer);
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		for (int i = 0; i < threads; i++) {
+			workers.add(Thread.ofPlatform().name("partition-worker-" + i).daemon().start(this::work));
+		}
+		workers.add(Thread.ofPlatform().name("partition-lease-renewer").daemon().start(this::renewLeases));
+		logger.info("Running partitions from the work queue as {} on {} threads", node, threads);
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		workers.forEach(Thread::interrupt);
+		workers.clear();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	private void work() {
+		while (running) {
+			try {
+				Optional<StepExecutionRequest> claimed = claim();
+				if (claimed.isPresent()) {
+					run(claimed.get());
+				}
+				else {
+					Thread.sleep(pollIntervalMillis);
+				}
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			catch (RuntimeException e) {
+				logger.error("Failed to claim a partition", e);
+				try {
+					Thread.sleep(pollIntervalMillis);
+				}
+				catch (InterruptedException interrupted) {
+					return;
+				}
+			}
+		}
+	}
+
+	private void renewLeases() {
+		while (running) {
+			try {
+				Thread.sleep(leaseMillis / 3);
+				jdbcClient.sql("UPDATE partition_work_queue SET claimed_at = NOW() WHERE claimed_by = :node")
+					.param("node", node)
+					.update();
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			catch (RuntimeException e) {
+				logger.warn("Failed to renew the claims of {}: {}", node, e.getMessage());
+			}
+		}
+	}
+
+	private Optional<StepExecutionRequest> claim() {
+		return jdbcClient.sql(CLAIM)
+			.param("node", node)
+			.query((rs, rowNum) -> new StepExecutionRequest(rs.getString("step_name"), rs.getLong("job_execution_id"),
+					rs.getLong("step_execution_id")))
+			.optional();
+	}
+
+	private void run(StepExecutionRequest request) {
+		logger.info("Running partition {} of job execution {}", request.getStepExecutionId(),
+				request.getJobExecutionId());
+		try {
+			StepExecution stepExecution = requestHandler.handle(request);
+			// The handler leaves the failures it caught itself to be saved by the caller
+			jobRepository.update(stepExecution);
+			logger.info("Partition {} of job execution {} ended with {}", request.getStepExecutionId(),
+					request.getJobExecutionId(), stepExecution.getStatus());
+		}
+		catch (RuntimeException e) {
+			logger.error("Failed to run partition {} of job execution {}", request.getStepExecutionId(),
+					request.getJobExecutionId(), e);
+		}
+		finally {
+			jdbcClient.sql("DELETE FROM partition_work_queue WHERE step_execution_id = :stepExecutionId")
+				.param("stepExecutionId", request.getStepExecutionId())
+				.update();
+		}
+	}
+
+}
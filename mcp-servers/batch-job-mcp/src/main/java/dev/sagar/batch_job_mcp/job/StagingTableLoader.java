@@ -0,0 +1,269 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * The tasklets of the bulk (ELT) variant of the load-transactions job. The statement is streamed
+ * as is into the unlogged {@code staging_transactions} table with {@code COPY FROM STDIN}, the
+ * distinct transaction details are categorized in batches, and finally a few set-based statements
+ * route the staged rows to {@code credit_transactions}, {@code credit_card_payments} and
+ * {@code financial_transactions}, the same way the filter processors and the
+ * {@link TransactionRouter} do.
+ *
+ * Staged rows are keyed by job instance, so a restarted execution picks up the rows (and the
+ * categories) of the failed one. Every staged row gets the same fingerprint as
+ * {@link TransactionFingerprint} computes for the chunk-oriented jobs, so rows that were already
+ * ingested are neither categorized nor inserted again.
+ */
+@Component
+class StagingTableLoader {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(StagingTableLoader.class);
+
+	private static final String COPY = """
+			COPY staging_transactions (transaction_date, amount, description, balance)
+			FROM STDIN WITH (FORMAT csv)
+			""";
+
+	// COPY reads an empty field as NULL, which no routing predicate on the description would
+	// match, so an empty description is kept empty as the chunk-oriented jobs read it
+	private static final String TRIM = """
+			UPDATE staging_transactions
+			SET transaction_date = btrim(transaction_date), amount = btrim(amount),
+				description = coalesce(btrim(description), '')
+			WHERE job_instance_id = :jobInstanceId
+			""";
+
+	private static final String FINGERPRINT = """
+			UPDATE staging_transactions s SET fingerprint = f.fingerprint
+			FROM (
+				SELECT line_number, encode(sha256(convert_to(concat_ws('|', transaction_key,
+					row_number() OVER (PARTITION BY transaction_key ORDER BY line_number)), 'UTF8')), 'hex') AS fingerprint
+				FROM (
+					SELECT line_number, concat_ws('|', to_char(to_date(transaction_date, 'DD/MM/YYYY'), 'YYYY-MM-DD'),
+						trim_scale(amount::numeric)::text, lower(regexp_replace(description, '\\s+', ' ', 'g')),
+						:account) AS transaction_key
+					FROM staging_transactions
+					WHERE job_instance_id = :jobInstanceId
+				) k
+			) f
+			WHERE s.job_instance_id = :jobInstanceId AND s.line_number = f.line_number
+			""";
+
+	private static final String SELECT_UNCATEGORIZED = """
+			SELECT DISTINCT description, amount::double precision > 0 AS credit
+			FROM staging_transactions s
+			WHERE job_instance_id = :jobInstanceId AND category IS NULL AND lower(description) NOT LIKE '%hsbc%'
+				AND NOT EXISTS (SELECT 1 FROM financial_transactions f WHERE f.fingerprint = s.fingerprint)
+			LIMIT :limit
+			""";
+
+	private static final String UPDATE_CATEGORY = """
+			UPDATE staging_transactions SET category = ?
+			WHERE job_instance_id = ? AND description = ? AND (amount::double precision > 0) = ? AND category IS NULL
+			""";
+
+	private static final String INSERT_CREDIT_TRANSACTIONS = """
+			INSERT INTO credit_transactions (amount, date, transaction_detail, source_file, fingerprint)
+			SELECT amount::double precision, to_date(transaction_date, 'DD/MM/YYYY'), description, :sourceFile,
+				fingerprint
+			FROM staging_transactions
+			WHERE job_instance_id = :jobInstanceId AND amount::double precision > 0
+			ORDER BY line_number
+			ON CONFLICT (fingerprint) DO NOTHING
+			""";
+
+	private static final String INSERT_CREDIT_CARD_PAYMENTS = """
+			INSERT INTO credit_card_payments (amount, date, transaction_detail, source_file, fingerprint)
+			SELECT amount::double precision, to_date(transaction_date, 'DD/MM/YYYY'), description, :sourceFile,
+				fingerprint
+			FROM staging_transactions
+			WHERE job_instance_id = :jobInstanceId AND lower(description) LIKE '%hsbc%'
+			ORDER BY line_number
+			ON CONFLICT (fingerprint) DO NOTHING
+			""";
+
+	private static final String INSERT_FINANCIAL_TRANSACTIONS = """
+			INSERT INTO financial_transactions (date, amount, transaction_detail, category, transaction_type, source_file, fingerprint)
+			SELECT to_date(transaction_date, 'DD/MM/YYYY'), abs(amount::double precision), description,
+				coalesce(category, 'Other'),
+				CASE WHEN amount::double precision > 0 THEN 'CREDIT' ELSE 'DEBIT' END, :sourceFile, fingerprint
+			FROM staging_transactions
+			WHERE job_instance_id = :jobInstanceId AND lower(description) NOT LIKE '%hsbc%'
+			ORDER BY line_number
+			ON CONFLICT (fingerprint) DO NOTHING
+			""";
+
+	private final DataSource dataSource;
+
+	private final JdbcClient jdbcClient;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final LocalCategorizeTransactionProcessor localCategorizeTransactionProcessor;
+
+	private final CategorizeTransactionProcessor categorizeTransactionProcessor;
+
+	private final int categorizeBatchSize;
+
+	// Throttled batches are sent again once the LlmRateLimiter lets requests through
+	private final RetryTemplate llmRetryTemplate;
+
+	StagingTableLoader(DataSource dataSource, JdbcClient jdbcClient, JdbcTemplate jdbcTemplate,
+			LocalCategorizeTransactionProcessor localCategorizeTransactionProcessor,
+			CategorizeTransactionProcessor categorizeTransactionProcessor,
+			@Value("${app.batch.bulk.categorize-batch-size:50}") int categorizeBatchSize,
+			@Value("${app.categorization.llm.retry-limit:5}") int retryLimit) {
+		this.dataSource = dataSource;
+		this.jdbcClient = jdbcClient;
+		this.jdbcTemplate = jdbcTemplate;
+		this.localCategorizeTransactionProcessor = localCategorizeTransactionProcessor;
+		this.categorizeTransactionProcessor = categorizeTransactionProcessor;
+		this.categorizeBatchSize = categorizeBatchSize;
+		this.llmRetryTemplate = RetryTemplate.builder()
+			.maxAttempts(retryLimit)
+			.retryOn(TransientAiException.class)
+			.noBackoff()
+			.build();
+	}
+
+	/**
+	 * Streams the statement into the staging table, replacing whatever a previous execution of
+	 * the same job instance staged.
+	 */
+	RepeatStatus copy(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		long jobInstanceId = jobInstanceId(chunkContext);
+		Path stagedFile = Paths.get(chunkContext.getStepContext().getStepExecution().getJobExecution()
+			.getExecutionContext()
+			.getString(StatementFileStore.FILE_PATH_KEY));
+
+		jdbcClient.sql("DELETE FROM staging_transactions WHERE job_instance_id = :jobInstanceId")
+			.param("jobInstanceId", jobInstanceId)
+			.update();
+		// Rows copied in this transaction default to this job instance, see schema.sql
+		jdbcClient.sql("SELECT set_config('batch.job_instance_id', :jobInstanceId, true)")
+			.param("jobInstanceId", String.valueOf(jobInstanceId))
+			.query()
+			.singleValue();
+
+		long rows;
+		Connection connection = DataSourceUtils.getConnection(dataSource);
+		try (Reader reader = Files.newBufferedReader(stagedFile)) {
+			rows = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY, reader);
+		}
+		finally {
+			DataSourceUtils.releaseConnection(connection, dataSource);
+		}
+		jdbcClient.sql(TRIM).param("jobInstanceId", jobInstanceId).update();
+		Object account = chunkContext.getStepContext().getJobParameters().get("account");
+		jdbcClient.sql(FINGERPRINT)
+			.param("jobInstanceId", jobInstanceId)
+			.param("account", account != null ? account : "default")
+			.update();
+
+		contribution.incrementWriteCount(rows);
+		logger.info("Copied {} rows from {} to the staging table", rows, stagedFile);
+		return RepeatStatus.FINISHED;
+	}
+
+	/**
+	 * Categorizes the next batch of distinct uncategorized transaction details, first with the
+	 * local classifier and then with the cache and the LLM. Every batch is committed on its own,
+	 * and the tasklet is called again until nothing is left to categorize.
+	 */
+	RepeatStatus categorize(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+		long jobInstanceId = jobInstanceId(chunkContext);
+		// The amount only tells credits from debits, the sign is all the categorizers look at
+		List<FinancialTransaction> transactions = jdbcClient.sql(SELECT_UNCATEGORIZED)
+			.param("jobInstanceId", jobInstanceId)
+			.param("limit", categorizeBatchSize)
+			.query((rs, rowNum) -> rs.getBoolean("credit")
+					? new FinancialTransaction(null, 1.0, rs.getString("description"), TransactionType.CREDIT)
+					: new FinancialTransaction(null, -1.0, rs.getString("description"), TransactionType.DEBIT))
+			.list();
+		if (transactions.isEmpty()) {
+			return RepeatStatus.FINISHED;
+		}
+
+		List<FinancialTransaction> categorized = new ArrayList<>(transactions.size());
+		List<FinancialTransaction> uncategorized = new ArrayList<>();
+		for (FinancialTransaction transaction : transactions) {
+			FinancialTransaction local = localCategorizeTransactionProcessor.process(transaction);
+			if (StringUtils.hasText(local.category())) {
+				categorized.add(local);
+			}
+			else {
+				uncategorized.add(local);
+			}
+		}
+		categorized.addAll(llmRetryTemplate.execute(retry -> categorizeTransactionProcessor.categorize(uncategorized)));
+
+		List<Object[]> updates = categorized.stream()
+			.map(transaction -> new Object[] {
+					StringUtils.hasText(transaction.category()) ? transaction.category() : "Other", jobInstanceId,
+					transaction.transaction_detail(), transaction.transaction_type() == TransactionType.CREDIT })
+			.toList();
+		jdbcTemplate.batchUpdate(UPDATE_CATEGORY, updates);
+
+		contribution.incrementWriteCount(categorized.size());
+		logger.debug("Categorized {} distinct staged transactions, {} locally", categorized.size(),
+				categorized.size() - uncategorized.size());
+		return RepeatStatus.continueIf(transactions.size() == categorizeBatchSize);
+	}
+
+	/**
+	 * Moves the staged rows to the credits, credit card payments and financial transactions
+	 * tables in a single transaction.
+	 */
+	RepeatStatus route(StepContribution contribution, ChunkContext chunkContext) {
+		long jobInstanceId = jobInstanceId(chunkContext);
+		String sourceFile = (String) chunkContext.getStepContext().getJobParameters().get("fileName");
+
+		int credits = jdbcClient.sql(INSERT_CREDIT_TRANSACTIONS)
+			.param("jobInstanceId", jobInstanceId)
+			.param("sourceFile", sourceFile)
+			.update();
+		int creditCardPayments = jdbcClient.sql(INSERT_CREDIT_CARD_PAYMENTS)
+			.param("jobInstanceId", jobInstanceId)
+			.param("sourceFile", sourceFile)
+			.update();
+		int financialTransactions = jdbcClient.sql(INSERT_FINANCIAL_TRANSACTIONS)
+			.param("jobInstanceId", jobInstanceId)
+			.param("sourceFile", sourceFile)
+			.update();
+		jdbcClient.sql("DELETE FROM staging_transactions WHERE job_instance_id = :jobInstanceId")
+			.param("jobInstanceId", jobInstanceId)
+			.update();
+
+		contribution.incrementWriteCount(credits + creditCardPayments + financialTransactions);
+		logger.info("Routed staged rows: {} credits, {} credit card payments, {} financial transactions", credits,
+				creditCardPayments, financialTransactions);
+		return RepeatStatus.FINISHED;
+	}
+
+	private static long jobInstanceId(ChunkContext chunkContext) {
+		return chunkContext.getStepContext().getStepExecution().getJobExecution().getJobInstance().getInstanceId();
+	}
+
+}
@@ -0,0 +1,262 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches the drop directories ({@code app.ingestion.watch.directories}) for new statements and
+ * queues a load-transactions job for each of them on the {@link JobScheduler}, as a backfill
+ * fair-queued by directory, so that statements are ingested without asking for it in the chat.
+ *
+ * A statement is only queued once its size and modification time have not changed for the
+ * debounce interval, so that files still being downloaded or copied are not read half written.
+ * When the scheduler refuses the job, the statement stays pending and is offered again on the
+ * next poll.
+ * Statements already in the directories on startup are queued as well; the ones that were
+ * already ingested are skipped by the job, see {@link IngestedFileRegistry}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.ingestion.watch.enabled", havingValue = "true")
+class StatementDirectoryWatcher implements SmartLifecycle {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(StatementDirectoryWatcher.class);
+
+	private final String[] directories;
+
+	private final PathMatcher matcher;
+
+	private final long debounceNanos;
+
+	private final long pollMillis;
+
+	private final Job job;
+
+	private final JobExplorer jobExplorer;
+
+	private final JobScheduler jobScheduler;
+
+	// Files waiting for their content to settle, only used by the watcher thread
+	private final Map<Path, Snapshot> pending = new HashMap<>();
+
+	private final Set<Path> queued = ConcurrentHashMap.newKeySet();
+
+	private WatchService watchService;
+
+	private Thread watcher;
+
+	private volatile boolean running;
+
+	StatementDirectoryWatcher(
+			@Value("${app.ingestion.watch.directories:${user.home}/Downloads/statements}") String[] directories,
+			@Value("${app.ingestion.watch.pattern:glob:*.csv}") String pattern,
+			@Value("${app.ingestion.watch.debounce-ms:2000}") long debounceMillis, @Qualifier("job") Job job,
+			JobExplorer jobExplorer, JobScheduler jobScheduler) {
+		this.directories = directories;
+		this.matcher = FileSystems.getDefault().getPathMatcher(pattern);
+		this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+		this.pollMillis = Math.max(100, debounceMillis / 2);
+		this.job = job;
+		this.jobExplorer = jobExplorer;
+		this.jobScheduler = jobScheduler;
+	}
+
+	@Override
+	public void start() {
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			for (String directory : directories) {
+				Path path = Files.createDirectories(Paths.get(directory.strip()));
+				path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+				scan(path);
+				logger.info("Watching {} for new statements", path);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Failed to watch the statement directories", e);
+		}
+		running = true;
+		watcher = Thread.ofPlatform().name("statement-watcher").daemon().start(this::watch);
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		try {
+			watchService.close();
+		}
+		catch (IOException e) {
+			logger.warn("Failed to close the watch service", e);
+		}
+		watcher.interrupt();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Polls the watch service until stopped. A failure with one directory or one statement is
+	 * logged and the other directories keep being watched.
+	 */
+	private void watch() {
+		try {
+			while (running) {
+				WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+				try {
+					if (key != null) {
+						handle(key);
+					}
+					queueSettledFiles();
+				}
+				catch (ClosedWatchServiceException e) {
+					throw e;
+				}
+				catch (RuntimeException e) {
+					logger.error("Failed to process the statement directories, carrying on watching them", e);
+				}
+			}
+		}
+		catch (ClosedWatchServiceException | InterruptedException e) {
+			// Stopped
+		}
+		finally {
+			running = false;
+			logger.debug("Stopped watching the statement directories");
+		}
+	}
+
+	private void handle(WatchKey key) {
+		Path directory = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				try {
+					scan(directory);
+				}
+				catch (IOException e) {
+					logger.warn("Failed to scan {} after missing some of its events", directory, e);
+				}
+			}
+			else {
+				track(directory.resolve((Path) event.context()));
+			}
+		}
+		if (!key.reset()) {
+			logger.warn("Stopped watching {}, which was removed or can no longer be read", directory);
+		}
+	}
+
+	private void scan(Path directory) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				track(file);
+			}
+		}
+	}
+
+	private void track(Path file) {
+		if (matcher.matches(file.getFileName()) && !queued.contains(file)) {
+			Snapshot snapshot = Snapshot.of(file);
+			if (snapshot != null) {
+				pending.put(file, snapshot);
+			}
+		}
+	}
+
+	private void queueSettledFiles() {
+		long now = System.nanoTime();
+		for (Iterator<Map.Entry<Path, Snapshot>> it = pending.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<Path, Snapshot> entry = it.next();
+			Path file = entry.getKey();
+			Snapshot current = Snapshot.of(file);
+			if (current == null) {
+				it.remove();
+			}
+			else if (!current.sameContentAs(entry.getValue())) {
+				entry.setValue(current);
+			}
+			else if (now - entry.getValue().since() >= debounceNanos) {
+				queued.add(file);
+				if (launch(file)) {
+					it.remove();
+				}
+				else {
+					queued.remove(file);
+				}
+			}
+		}
+	}
+
+	private boolean launch(Path file) {
+		try {
+			JobDetails jobDetails = jobScheduler.submit(job,
+					BatchJobService.nextJobParameters(jobExplorer, job, null)
+						.addString("fileName", file.toAbsolutePath().toString())
+						.toJobParameters(),
+					JobPriority.BACKFILL, file.getParent().toString(), () -> queued.remove(file));
+			if (JobDetails.REJECTED.equals(jobDetails.status())) {
+				logger.debug("Job queue is full, {} stays pending", file);
+				return false;
+			}
+			return true;
+		}
+		catch (JobExecutionException e) {
+			logger.error("Failed to launch a job for {}", file, e);
+			queued.remove(file);
+			return true;
+		}
+		catch (RuntimeException e) {
+			// Such as the job repository being unreachable, offered again on the next poll
+			logger.warn("Failed to launch a job for {}, it stays pending: {}", file, e.getMessage());
+			return false;
+		}
+	}
+
+	private record Snapshot(long size, FileTime lastModified, long since) {
+
+		static Snapshot of(Path file) {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				return attributes.isRegularFile()
+						? new Snapshot(attributes.size(), attributes.lastModifiedTime(), System.nanoTime()) : null;
+			}
+			catch (IOException e) {
+				return null;
+			}
+		}
+
+		boolean sameContentAs(Snapshot other) {
+			return size == other.size && lastModified.equals(other.lastModified);
+		}
+
+	}
+
+}
@@ -0,0 +1,155 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Content-addressed store of the statement files the jobs are processing. A statement is stored
+ * under its SHA-256, as a hard link to the original file when the store is on the same file
+ * system, so that staging a file only costs the read needed to hash it. On another file system
+ * the file is copied and hashed in a single pass.
+ *
+ * Jobs for identical files share the stored file. The number of jobs using it is kept in the
+ * {@code staged_files} table, and the file is deleted when the last of them releases it. As the
+ * nodes sharing the database also share the store, a file is only stored and released under a
+ * transaction-scoped Postgres advisory lock on its SHA-256, so that one node cannot delete a file
+ * another node has just taken a reference to.
+ */
+@Component
+class StatementFileStore {
+
+	static final String FILE_PATH_KEY = "stagedFilePath";
+
+	static final String FILE_SHA256_KEY = "fileSha256";
+
+	// First key of the advisory locks, the second one is the hash of the file's SHA-256
+	private static final int LOCK_NAMESPACE = 0x73746167;
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(StatementFileStore.class);
+
+	private final JdbcClient jdbcClient;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final Path directory;
+
+	StatementFileStore(JdbcClient jdbcClient, DataSourceTransactionManager transactionManager,
+			@Value("${app.batch.staging.directory:${user.home}/.batch-job-mcp/staging}") Path directory) {
+		this.jdbcClient = jdbcClient;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.directory = directory;
+	}
+
+	/**
+	 * Stores the given file, or takes another reference to the stored file when an identical one
+	 * was already stored.
+	 */
+	StoredFile store(Path source) throws IOException {
+		Files.createDirectories(directory);
+		Path incoming = directory.resolve("incoming-" + UUID.randomUUID());
+		String sha256;
+		try {
+			Files.createLink(incoming, source);
+			sha256 = TransactionFingerprint.ofFile(incoming);
+		}
+		catch (UnsupportedOperationException | FileSystemException e) {
+			logger.debug("Could not link {} into {}, copying it instead: {}", source, directory, e.getMessage());
+			sha256 = copy(source, incoming);
+		}
+
+		Path stored = directory.resolve(sha256);
+		String storedSha256 = sha256;
+		inLockedTransaction(sha256, () -> {
+			jdbcClient.sql("""
+					INSERT INTO staged_files (sha256, ref_count) VALUES (:sha256, 1)
+					ON CONFLICT (sha256) DO UPDATE SET ref_count = staged_files.ref_count + 1
+					""").param("sha256", storedSha256).update();
+			if (Files.exists(stored)) {
+				Files.delete(incoming);
+				logger.info("File {} is identical to the stored file {}", source, stored);
+			}
+			else {
+				Files.move(incoming, stored, StandardCopyOption.ATOMIC_MOVE);
+				logger.info("File {} stored as {}", source, stored);
+			}
+		});
+		return new StoredFile(stored, sha256);
+	}
+
+	/**
+	 * Releases a reference to the stored file, deleting it when no other job uses it.
+	 */
+	void release(String sha256) throws IOException {
+		inLockedTransaction(sha256, () -> {
+			jdbcClient.sql("UPDATE staged_files SET ref_count = ref_count - 1 WHERE sha256 = :sha256")
+				.param("sha256", sha256)
+				.update();
+			int deleted = jdbcClient.sql("DELETE FROM staged_files WHERE sha256 = :sha256 AND ref_count <= 0")
+				.param("sha256", sha256)
+				.update();
+			if (deleted > 0) {
+				Files.deleteIfExists(directory.resolve(sha256));
+				logger.info("Stored file {} deleted", sha256);
+			}
+		});
+	}
+
+	/**
+	 * Runs the given work in a transaction holding the advisory lock of the file, which is only
+	 * released when the transaction ends. Joins the transaction of the calling step, if any.
+	 */
+	private void inLockedTransaction(String sha256, FileWork work) throws IOException {
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				jdbcClient.sql("SELECT pg_advisory_xact_lock(:namespace, hashtext(:sha256))")
+					.param("namespace", LOCK_NAMESPACE)
+					.param("sha256", sha256)
+					.query()
+					.listOfRows();
+				try {
+					work.run();
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	@FunctionalInterface
+	private interface FileWork {
+
+		void run() throws IOException;
+
+	}
+
+	private static String copy(Path source, Path target) throws IOException {
+		MessageDigest digest = TransactionFingerprint.sha256();
+		try (InputStream in = new DigestInputStream(Files.newInputStream(source), digest)) {
+			Files.copy(in, target);
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	record StoredFile(Path path, String sha256) {
+	}
+
+}
@@ -0,0 +1,208 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Multinomial naive Bayes classifier over the character n-grams and words of normalized
+ * transaction details, trained on the already categorized {@code financial_transactions} rows.
+ * The model is trained from the whole table at startup and, after every completed job,
+ * incrementally with the rows added since.
+ *
+ * The confidence of a prediction is the posterior probability of the predicted category scaled
+ * by the share of the transaction's features the model has seen before, so that unfamiliar
+ * merchants score low even when naive Bayes is (as usual) over-confident about them.
+ */
+@Component
+class TransactionClassifier implements JobExecutionListener {
+
+	private static final org.slf4j.Logger logger =
+			org.slf4j.LoggerFactory.getLogger(TransactionClassifier.class);
+
+	private static final double SMOOTHING = 0.1;
+
+	private static final int MIN_TRAINING_ROWS = 20;
+
+	record Prediction(String category, double confidence) {
+	}
+
+	private record TrainingRow(String transactionDetail, TransactionType transactionType,
+			String category) {
+	}
+
+	private final JdbcClient jdbcClient;
+
+	private final CategoryService categoryService;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final List<String> categories = new ArrayList<>();
+
+	private final Map<String, Integer> categoryIndexes = new HashMap<>();
+
+	private final Map<String, int[]> featureCounts = new HashMap<>();
+
+	private long[] rowCounts = new long[0];
+
+	private long[] featureTotals = new long[0];
+
+	private long trainedRows;
+
+	private long lastTrainedId;
+
+	public TransactionClassifier(JdbcClient jdbcClient, CategoryService categoryService) {
+		this.jdbcClient = jdbcClient;
+		this.categoryService = categoryService;
+	}
+
+	static List<String> features(String transactionDetail, TransactionType transactionType) {
+		String key = CategoryCache.merchantKey(transactionDetail);
+		List<String> features = new ArrayList<>();
+		if (key.isEmpty()) {
+			return features;
+		}
+		String padded = " " + key + " ";
+		for (int n = 3; n <= 4; n++) {
+			for (int i = 0; i + n <= padded.length(); i++) {
+				features.add(padded.substring(i, i + n));
+			}
+		}
+		for (String word : key.split(" ")) {
+			features.add("w:" + word);
+		}
+		features.add("t:" + transactionType.name());
+		return features;
+	}
+
+	@PostConstruct
+	void initialize() {
+		trainOnNewTransactions();
+	}
+
+	@Override
+	public void afterJob(JobExecution jobExecution) {
+		if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
+			trainOnNewTransactions();
+		}
+	}
+
+	/**
+	 * Trains the model on the transactions inserted since it was last trained.
+	 */
+	synchronized void trainOnNewTransactions() {
+		List<TrainingRow> rows = new ArrayList<>();
+		long[] lastId = { lastTrainedId };
+		jdbcClient.sql(
+				"SELECT id, transaction_detail, transaction_type, category FROM financial_transactions WHERE id > :id ORDER BY id")
+				.param("id", lastTrainedId).query(rs -> {
+					lastId[0] = rs.getLong("id");
+					String category = categoryService.findCategory(rs.getString("category"));
+					if (category != null) {
+						rows.add(new TrainingRow(rs.getString("transaction_detail"),
+								TransactionType.valueOf(rs.getString("transaction_type")), category));
+					}
+				});
+
+		lock.writeLock().lock();
+		try {
+			rows.forEach(row -> train(row.transactionDetail(), row.transactionType(), row.category()));
+			lastTrainedId = lastId[0];
+		}
+		finally {
+			lock.writeLock().unlock();
+		}
+		logger.info("Trained the transaction classifier on {} new transactions ({} in total)",
+				rows.size(), trainedRows);
+	}
+
+	private void train(String transactionDetail, TransactionType transactionType,
+			String category) {
+		List<String> features = features(transactionDetail, transactionType);
+		if (features.isEmpty()) {
+			return;
+		}
+		int index = categoryIndexes.computeIfAbsent(category, c -> {
+			categories.add(c);
+			rowCounts = Arrays.copyOf(rowCounts, categories.size());
+			featureTotals = Arrays.copyOf(featureTotals, categories.size());
+			return categories.size() - 1;
+		});
+		for (String feature : features) {
+			int[] counts = featureCounts.compute(feature, (f, c) -> c == null
+					? new int[categories.size()]
+					: c.length <= index ? Arrays.copyOf(c, categories.size()) : c);
+			counts[index]++;
+		}
+		rowCounts[index]++;
+		featureTotals[index] += features.size();
+		trainedRows++;
+	}
+
+	/**
+	 * Predicts the category of a transaction.
+	 * @return the most likely category and its confidence, or {@code null} if the model has not
+	 *         been trained enough or has never seen any of the transaction's features
+	 */
+	Prediction predict(String transactionDetail, TransactionType transactionType) {
+		List<String> features = features(transactionDetail, transactionType);
+		lock.readLock().lock();
+		try {
+			if (trainedRows < MIN_TRAINING_ROWS || features.isEmpty()) {
+				return null;
+			}
+
+			double[] scores = new double[categories.size()];
+			for (int c = 0; c < scores.length; c++) {
+				scores[c] = Math.log((rowCounts[c] + 1.0) / (trainedRows + scores.length));
+			}
+
+			int known = 0;
+			double vocabulary = featureCounts.size();
+			for (String feature : features) {
+				int[] counts = featureCounts.get(feature);
+				if (counts == null) {
+					continue;
+				}
+				known++;
+				for (int c = 0; c < scores.length; c++) {
+					int count = c < counts.length ? counts[c] : 0;
+					scores[c] +=
+							Math.log((count + SMOOTHING) / (featureTotals[c] + SMOOTHING * vocabulary));
+				}
+			}
+			if (known == 0) {
+				return null;
+			}
+
+			int best = 0;
+			for (int c = 1; c < scores.length; c++) {
+				if (scores[c] > scores[best]) {
+					best = c;
+				}
+			}
+			double sum = 0;
+			for (double score : scores) {
+				sum += Math.exp(score - scores[best]);
+			}
+			double coverage = (double) known / features.size();
+			return new Prediction(categories.get(best), coverage / sum);
+		}
+		finally {
+			lock.readLock().unlock();
+		}
+	}
+
+}
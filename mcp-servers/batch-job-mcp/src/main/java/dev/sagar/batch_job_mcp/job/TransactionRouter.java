@@ -0,0 +1,55 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.util.List;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.support.CompositeItemWriter;
+import org.springframework.classify.Classifier;
+
+/**
+ * Routes each processed transaction to the writer of the table(s) it belongs to:
+ * <ul>
+ * <li>credit card payments to {@code credit_card_payments}, and also to
+ * {@code credit_transactions} when they are credits</li>
+ * <li>other credits to {@code credit_transactions} and {@code financial_transactions}</li>
+ * <li>everything else to {@code financial_transactions}</li>
+ * </ul>
+ * Used with a {@link org.springframework.batch.item.support.ClassifierCompositeItemWriter}, so
+ * every destination is written with its own JDBC batch in the chunk transaction.
+ */
+class TransactionRouter implements Classifier<FinancialTransaction, ItemWriter<? super FinancialTransaction>> {
+
+	private final ItemWriter<FinancialTransaction> financialTransactionsWriter;
+
+	private final ItemWriter<FinancialTransaction> creditCardPaymentsWriter;
+
+	private final ItemWriter<FinancialTransaction> creditCardRefundsWriter;
+
+	private final ItemWriter<FinancialTransaction> creditsWriter;
+
+	TransactionRouter(ItemWriter<FinancialTransaction> financialTransactionsWriter,
+			ItemWriter<FinancialTransaction> creditTransactionsWriter,
+			ItemWriter<FinancialTransaction> creditCardPaymentsWriter) {
+		this.financialTransactionsWriter = financialTransactionsWriter;
+		this.creditCardPaymentsWriter = creditCardPaymentsWriter;
+		this.creditCardRefundsWriter = composite(creditTransactionsWriter, creditCardPaymentsWriter);
+		this.creditsWriter = composite(creditTransactionsWriter, financialTransactionsWriter);
+	}
+
+	@Override
+	public ItemWriter<? super FinancialTransaction> classify(FinancialTransaction transaction) {
+		if (transaction.transaction_type() == TransactionType.CREDIT_CARD_PAYMENT) {
+			return transaction.amount() > 0 ? creditCardRefundsWriter : creditCardPaymentsWriter;
+		}
+		if (transaction.transaction_type() == TransactionType.CREDIT) {
+			return creditsWriter;
+		}
+		return financialTransactionsWriter;
+	}
+
+	private static ItemWriter<FinancialTransaction> composite(ItemWriter<FinancialTransaction> first,
+			ItemWriter<FinancialTransaction> second) {
+		return new CompositeItemWriter<>(List.of(first, second));
+	}
+
+}
@@ -2,6 +2,6 @@ package dev.sagar.batch_job_mcp.job;
 
 enum TransactionType {
 
-	CREDIT, DEBIT, UNKNOWN;
+	CREDIT, DEBIT, CREDIT_CARD_PAYMENT, UNKNOWN;
 
 }
\ No newline at end of file
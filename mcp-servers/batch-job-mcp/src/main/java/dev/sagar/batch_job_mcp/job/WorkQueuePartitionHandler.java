@@ -0,0 +1,145 @@
+package dev.sagar.batch_job_mcp.job;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.partition.support.AbstractPartitionHandler;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+/**
+ * Hands the partitions of a step over to the {@link PartitionWorker}s of all the nodes sharing
+ * the database, instead of running them on local threads. Every partition is published as a
+ * row of the {@code partition_work_queue} table, and the handler then polls the
+ * {@link JobExplorer} until the workers have ended all the partition step executions. The step
+ * executions read back from the job repository are what the manager step aggregates.
+ *
+ * A partition whose claim was not renewed for {@code leaseMillis}, its worker having died, is
+ * removed from the queue and its step execution marked as failed, so that the job fails instead
+ * of waiting for it until the timeout, and can be restarted.
+ */
+class WorkQueuePartitionHandler extends AbstractPartitionHandler {
+
+	private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(WorkQueuePartitionHandler.class);
+
+	private final JdbcClient jdbcClient;
+
+	private final JobExplorer jobExplorer;
+
+	private final JobRepository jobRepository;
+
+	private final String stepName;
+
+	private final long pollIntervalMillis;
+
+	private final long timeoutMillis;
+
+	private final long leaseMillis;
+
+	/**
+	 * @param stepName the name of the bean of the partition step, as the workers look it up
+	 */
+	WorkQueuePartitionHandler(JdbcClient jdbcClient, JobExplorer jobExplorer, JobRepository jobRepository,
+			String stepName, long pollIntervalMillis, long timeoutMillis, long leaseMillis) {
+		this.jdbcClient = jdbcClient;
+		this.jobExplorer = jobExplorer;
+		this.jobRepository = jobRepository;
+		this.stepName = stepName;
+		this.pollIntervalMillis = pollIntervalMillis;
+		this.timeoutMillis = timeoutMillis;
+		this.leaseMillis = leaseMillis;
+	}
+
+	@Override
+	protected Set<StepExecution> doHandle(StepExecution managerStepExecution,
+			Set<StepExecution> partitionStepExecutions) throws Exception {
+		long jobExecutionId = managerStepExecution.getJobExecutionId();
+		for (StepExecution partition : partitionStepExecutions) {
+			jdbcClient.sql("""
+					INSERT INTO partition_work_queue (step_execution_id, job_execution_id, step_name)
+					VALUES (:stepExecutionId, :jobExecutionId, :stepName)
+					""")
+				.param("stepExecutionId", partition.getId())
+				.param("jobExecutionId", jobExecutionId)
+				.param("stepName", stepName)
+				.update();
+		}
+		logger.info("Published {} partitions of job execution {} to the work queue", partitionStepExecutions.size(),
+				jobExecutionId);
+
+		try {
+			return awaitPartitions(jobExecutionId,
+					partitionStepExecutions.stream().map(StepExecution::getId).toList());
+		}
+		finally {
+			// Partitions nobody claimed in time are not run anymore
+			jdbcClient.sql("DELETE FROM partition_work_queue WHERE job_execution_id = :jobExecutionId")
+				.param("jobExecutionId", jobExecutionId)
+				.update();
+		}
+	}
+
+	private Set<StepExecution> awaitPartitions(long jobExecutionId, List<Long> stepExecutionIds)
+			throws InterruptedException, TimeoutException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (true) {
+			failExpiredClaims(jobExecutionId);
+			Set<StepExecution> ended = new HashSet<>();
+			for (Long stepExecutionId : stepExecutionIds) {
+				StepExecution partition = jobExplorer.getStepExecution(jobExecutionId, stepExecutionId);
+				if (partition != null && !partition.getStatus().isRunning()) {
+					ended.add(partition);
+				}
+			}
+			if (ended.size() == stepExecutionIds.size()) {
+				return ended;
+			}
+			if (timeoutMillis > 0 && System.nanoTime() - deadline > 0) {
+				throw new TimeoutException("Timed out waiting for " + (stepExecutionIds.size() - ended.size())
+						+ " partitions of job execution " + jobExecutionId);
+			}
+			Thread.sleep(pollIntervalMillis);
+		}
+	}
+
+	/**
+	 * Removes the partitions of the job whose claims expired from the queue, and fails their step
+	 * executions if they are still running.
+	 */
+	private void failExpiredClaims(long jobExecutionId) {
+		List<ExpiredClaim> expired = jdbcClient.sql("""
+				DELETE FROM partition_work_queue
+				WHERE job_execution_id = :jobExecutionId AND claimed_at < NOW() - make_interval(secs => :leaseSeconds)
+				RETURNING step_execution_id, claimed_by
+				""")
+			.param("jobExecutionId", jobExecutionId)
+			.param("leaseSeconds", leaseMillis / 1000.0)
+			.query((rs, rowNum) -> new ExpiredClaim(rs.getLong("step_execution_id"), rs.getString("claimed_by")))
+			.list();
+		for (ExpiredClaim claim : expired) {
+			StepExecution partition = jobExplorer.getStepExecution(jobExecutionId, claim.stepExecutionId());
+			if (partition == null || !partition.getStatus().isRunning()) {
+				continue;
+			}
+			logger.warn("Claim of partition {} of job execution {} by {} expired, failing it", claim.stepExecutionId(),
+					jobExecutionId, claim.node());
+			partition.setStatus(BatchStatus.FAILED);
+			partition.setExitStatus(ExitStatus.FAILED
+				.addExitDescription("The claim of " + claim.node() + " expired, the worker is presumed dead"));
+			partition.setEndTime(LocalDateTime.now());
+			jobRepository.update(partition);
+		}
+	}
+
+	private record ExpiredClaim(long stepExecutionId, String node) {
+	}
+
+}
@@ -5,7 +5,8 @@ CREATE TABLE IF NOT EXISTS credit_card_payments (
     amount double precision NOT NULL,
     transaction_detail varchar(255) NOT NULL,
     insertion_date timestamp NOT NULL DEFAULT NOW(),
-    source_file varchar(255) NOT NULL
+    source_file varchar(255) NOT NULL,
+    fingerprint varchar(64)
 );
 
 -- Table: credit_transactions
@@ -15,7 +16,8 @@ CREATE TABLE IF NOT EXISTS credit_transactions (
     amount double precision NOT NULL,
     transaction_detail varchar(255) NOT NULL,
     insertion_date timestamp NOT NULL DEFAULT NOW(),
-    source_file varchar(255) NOT NULL
+    source_file varchar(255) NOT NULL,
+    fingerprint varchar(64)
 );
 
 -- Table: financial_transactions
@@ -27,12 +29,88 @@ CREATE TABLE IF NOT EXISTS financial_transactions (
     transaction_detail varchar(255) NOT NULL,
     transaction_type varchar(255) NOT NULL DEFAULT 'DEBIT'::character varying,
     insertion_date timestamp NOT NULL DEFAULT NOW(),
-    source_file varchar(255) NOT NULL
+    source_file varchar(255) NOT NULL,
+    fingerprint varchar(64)
 );
 
+-- Transaction fingerprints, see TransactionFingerprint. Rows inserted before fingerprints were
+-- introduced have none and are not deduplicated.
+ALTER TABLE credit_card_payments ADD COLUMN IF NOT EXISTS fingerprint varchar(64);
+ALTER TABLE credit_transactions ADD COLUMN IF NOT EXISTS fingerprint varchar(64);
+ALTER TABLE financial_transactions ADD COLUMN IF NOT EXISTS fingerprint varchar(64);
+CREATE UNIQUE INDEX IF NOT EXISTS credit_card_payments_fingerprint_idx ON credit_card_payments (fingerprint);
+CREATE UNIQUE INDEX IF NOT EXISTS credit_transactions_fingerprint_idx ON credit_transactions (fingerprint);
+CREATE UNIQUE INDEX IF NOT EXISTS financial_transactions_fingerprint_idx ON financial_transactions (fingerprint);
+CREATE INDEX IF NOT EXISTS credit_card_payments_date_idx ON credit_card_payments ("date");
+CREATE INDEX IF NOT EXISTS credit_transactions_date_idx ON credit_transactions ("date");
+CREATE INDEX IF NOT EXISTS financial_transactions_date_idx ON financial_transactions ("date");
+
+-- Table: ingested_files
+-- Files already ingested, which have an ingested_at, and files being ingested, claimed by the
+-- node running their job. The node renews the heartbeat_at of its claims while the job runs.
+CREATE TABLE IF NOT EXISTS ingested_files (
+    sha256 varchar(64) PRIMARY KEY,
+    source_file varchar(255) NOT NULL,
+    ingested_at timestamp,
+    claimed_by varchar(255),
+    heartbeat_at timestamp
+);
+
+ALTER TABLE ingested_files ADD COLUMN IF NOT EXISTS claimed_by varchar(255);
+ALTER TABLE ingested_files ADD COLUMN IF NOT EXISTS heartbeat_at timestamp;
+ALTER TABLE ingested_files ALTER COLUMN ingested_at DROP NOT NULL;
+ALTER TABLE ingested_files ALTER COLUMN ingested_at DROP DEFAULT;
+
+-- Table: staged_files
+CREATE TABLE IF NOT EXISTS staged_files (
+    sha256 varchar(64) PRIMARY KEY,
+    ref_count integer NOT NULL,
+    staged_at timestamp NOT NULL DEFAULT NOW()
+);
+
+-- Table: partition_work_queue
+-- Partitions of the load-transactions-partitioned job waiting for, or being run by, a worker
+-- node in distributed mode.
+CREATE TABLE IF NOT EXISTS partition_work_queue (
+    step_execution_id bigint PRIMARY KEY,
+    job_execution_id bigint NOT NULL,
+    step_name varchar(100) NOT NULL,
+    claimed_by varchar(255),
+    claimed_at timestamp,
+    created_at timestamp NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS partition_work_queue_unclaimed_idx
+    ON partition_work_queue (created_at) WHERE claimed_by IS NULL;
+
+-- Table: staging_transactions
+-- Raw statement rows copied by the bulk load job, keyed by the job instance that set
+-- batch.job_instance_id in the copying transaction.
+CREATE UNLOGGED TABLE IF NOT EXISTS staging_transactions (
+    line_number bigint GENERATED ALWAYS AS IDENTITY,
+    job_instance_id bigint NOT NULL DEFAULT current_setting('batch.job_instance_id')::bigint,
+    transaction_date text,
+    amount text,
+    description text,
+    balance text,
+    category varchar(255),
+    fingerprint varchar(64)
+);
+
+CREATE INDEX IF NOT EXISTS staging_transactions_description_idx
+    ON staging_transactions (job_instance_id, description);
+
 -- Table: categories
 CREATE TABLE IF NOT EXISTS categories(
     id bigint GENERATED ALWAYS AS IDENTITY NOT NULL,
     category varchar(255) NOT NULL UNIQUE,
     PRIMARY KEY(id)
-);
\ No newline at end of file
+);
+
+-- Table: category_cache
+CREATE TABLE IF NOT EXISTS category_cache (
+    merchant_key varchar(255) PRIMARY KEY,
+    category varchar(255) NOT NULL,
+    categories_version varchar(64) NOT NULL,
+    updated_at timestamp NOT NULL DEFAULT NOW()
+);
@@ -0,0 +1,62 @@
+package dev.sagar.batch_job_mcp.job;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+
+class ByteRangePartitionerTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void partitionsAreLineAlignedAndCoverTheWholeFile() throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			lines.add("01/02/2024,-" + i + ".50,\"MERCHANT " + "X".repeat(i % 37) + "\",100.00");
+		}
+		Path file = Files.write(tempDir.resolve("statement.csv"), lines);
+
+		Map<String, ExecutionContext> partitions = new ByteRangePartitioner(file).partition(7);
+
+		assertThat(partitions).hasSize(7);
+		List<String> read = new ArrayList<>();
+		long expectedStart = 0;
+		for (ExecutionContext context : partitions.values()) {
+			long start = context.getLong(ByteRangePartitioner.START_BYTE);
+			long end = context.getLong(ByteRangePartitioner.END_BYTE);
+			assertThat(start).isEqualTo(expectedStart);
+			assertThat(end).isGreaterThan(start);
+			String content = new String(new ByteRangeResource(file, start, end).getContentAsByteArray(),
+					StandardCharsets.UTF_8);
+			assertThat(content).endsWith("\n");
+			read.addAll(content.lines().toList());
+			expectedStart = end;
+		}
+		assertThat(expectedStart).isEqualTo(Files.size(file));
+		assertThat(read).isEqualTo(lines);
+	}
+
+	@Test
+	void smallFilesProduceFewerPartitions() throws IOException {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), "01/02/2024,-1.00,\"SHOP\",0");
+
+		Map<String, ExecutionContext> partitions = new ByteRangePartitioner(file).partition(4);
+
+		assertThat(partitions).hasSize(1);
+		ExecutionContext context = partitions.values().iterator().next();
+		assertThat(context.getLong(ByteRangePartitioner.START_BYTE)).isZero();
+		assertThat(context.getLong(ByteRangePartitioner.END_BYTE)).isEqualTo(Files.size(file));
+	}
+
+}
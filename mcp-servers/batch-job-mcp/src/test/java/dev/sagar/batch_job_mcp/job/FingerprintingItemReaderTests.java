@@ -0,0 +1,135 @@
+package dev.sagar.batch_job_mcp.job;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.repository.support.ResourcelessJobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+
+class FingerprintingItemReaderTests {
+
+	// Two identical coffees on either side of the other transactions, and two identical rents
+	private static final String STATEMENT = "01/02/2024,-4.50,COFFEE CART,+100.00\n"
+			+ "01/02/2024,-1500.00,RENT,0\n"
+			+ "01/02/2024,-12.00,LUNCH,0\n"
+			+ "01/02/2024,-4.50,COFFEE CART,0\n"
+			+ "01/02/2024,-1500.00,RENT,0\n"
+			+ "01/02/2024,-4.50,COFFEE CART,0\n"
+			+ "02/02/2024,-4.50,COFFEE CART,0\n";
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void numbersIdenticalTransactionsByTheirOccurrence() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), STATEMENT);
+
+		List<String> fingerprints = fingerprints(reader(file, 0, -1), new ExecutionContext());
+
+		String coffee = TransactionFingerprint.key(LocalDate.of(2024, 2, 1), -4.5, "COFFEE CART",
+				"default");
+		assertThat(fingerprints).doesNotHaveDuplicates()
+			.containsSubsequence(TransactionFingerprint.of(coffee, 1), TransactionFingerprint.of(coffee, 2),
+					TransactionFingerprint.of(coffee, 3));
+	}
+
+	@Test
+	void restartsWithTheOccurrencesOfTheTransactionsAlreadyRead() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), STATEMENT);
+		List<String> all = fingerprints(reader(file, 0, -1), new ExecutionContext());
+
+		ExecutionContext executionContext = new ExecutionContext();
+		FingerprintingItemReader reader = reader(file, 0, -1);
+		reader.open(executionContext);
+		for (int i = 0; i < 4; i++) {
+			reader.read();
+		}
+		reader.update(executionContext);
+		reader.close();
+
+		assertThat(fingerprints(reader(file, 0, -1), executionContext)).isEqualTo(all.subList(4, all.size()));
+	}
+
+	@Test
+	void numbersThePartitionsAsTheWholeFile() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), STATEMENT);
+		List<String> all = fingerprints(reader(file, 0, -1), new ExecutionContext());
+
+		List<String> partitioned = new ArrayList<>();
+		for (ExecutionContext context : new ByteRangePartitioner(file).partition(3).values()) {
+			partitioned.addAll(fingerprints(reader(file, context.getLong(ByteRangePartitioner.START_BYTE),
+					context.getLong(ByteRangePartitioner.END_BYTE)), new ExecutionContext()));
+		}
+
+		assertThat(partitioned).isEqualTo(all);
+	}
+
+	@Test
+	void keepsTheFingerprintsOfARetriedChunk() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), STATEMENT);
+		List<String> all = fingerprints(reader(file, 0, -1), new ExecutionContext());
+
+		ResourcelessJobRepository jobRepository = new ResourcelessJobRepository();
+		List<String> written = new ArrayList<>();
+		AtomicBoolean failed = new AtomicBoolean();
+		Step step = new StepBuilder("step", jobRepository)
+			.<FinancialTransaction, FinancialTransaction>chunk(3, new ResourcelessTransactionManager())
+			.faultTolerant()
+			.retry(TransientAiException.class)
+			.retryLimit(2)
+			.reader(reader(file, 0, -1))
+			.processor(transaction -> transaction)
+			.writer(chunk -> {
+				if (!written.isEmpty() && failed.compareAndSet(false, true)) {
+					throw new TransientAiException("Too many requests");
+				}
+				chunk.forEach(transaction -> written.add(transaction.fingerprint()));
+			})
+			.build();
+
+		JobExecution jobExecution = jobRepository.createJobExecution("job", new JobParameters());
+		StepExecution stepExecution = jobExecution.createStepExecution("step");
+		step.execute(stepExecution);
+
+		assertThat(stepExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+		assertThat(failed).isTrue();
+		assertThat(written).isEqualTo(all);
+	}
+
+	private static FingerprintingItemReader reader(Path file, long startByte, long endByte) {
+		return new FingerprintingItemReader(BatchConfig.rangeReader(file, true), startByte, endByte, "default");
+	}
+
+	private static List<String> fingerprints(ItemStreamReader<FinancialTransaction> reader,
+			ExecutionContext executionContext) throws Exception {
+		List<String> fingerprints = new ArrayList<>();
+		reader.open(executionContext);
+		try {
+			for (FinancialTransaction transaction = reader.read(); transaction != null; transaction = reader.read()) {
+				fingerprints.add(transaction.fingerprint());
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return fingerprints;
+	}
+
+}
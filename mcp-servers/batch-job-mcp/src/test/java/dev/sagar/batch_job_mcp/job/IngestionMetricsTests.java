@@ -0,0 +1,153 @@
+package dev.sagar.batch_job_mcp.job;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class IngestionMetricsTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final CategoryCache categoryCache = mock(CategoryCache.class);
+
+	private final IngestionMetrics metrics = new IngestionMetrics(meterRegistry, categoryCache);
+
+	@AfterEach
+	void close() {
+		StepSynchronizationManager.close();
+	}
+
+	@Test
+	void stepTotalsAreSavedInTheExecutionContext() throws Exception {
+		given(categoryCache.stats()).willReturn(new CategoryCache.CacheStats(10, 0, 5),
+				new CategoryCache.CacheStats(13, 1, 7));
+		StepExecution stepExecution = stepExecution("process-file-partition-step:partition0");
+		metrics.beforeStep(stepExecution);
+		StepSynchronizationManager.register(stepExecution);
+		ItemProcessor<String, String> filter = metrics.counting(new CreditFilter());
+
+		ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+		metrics.beforeChunk(chunkContext);
+		for (String item : new String[] { "debit", "credit", "debit" }) {
+			metrics.beforeRead();
+			metrics.afterRead(item);
+			metrics.beforeProcess(item);
+			metrics.afterProcess(item, filter.process(item));
+		}
+		metrics.timeLlmRequest(2, System.nanoTime(), () -> "Groceries");
+		metrics.beforeWrite(Chunk.of("debit", "debit"));
+		metrics.afterWrite(Chunk.of("debit", "debit"));
+		metrics.afterChunk(chunkContext);
+		metrics.afterStep(stepExecution);
+
+		assertThat(stepExecution.getExecutionContext().getLong(IngestionMetrics.CHUNKS)).isEqualTo(1);
+		assertThat(stepExecution.getExecutionContext().getLong(IngestionMetrics.LLM_REQUESTS)).isEqualTo(1);
+		assertThat(stepExecution.getExecutionContext().getLong(IngestionMetrics.LLM_ITEMS)).isEqualTo(2);
+		assertThat(stepExecution.getExecutionContext().getLong(IngestionMetrics.CACHE_HITS)).isEqualTo(4);
+		assertThat(stepExecution.getExecutionContext().getLong(IngestionMetrics.CACHE_MISSES)).isEqualTo(2);
+		assertThat(stepExecution.getExecutionContext().getLong(IngestionMetrics.FILTERED + "CreditFilter"))
+			.isEqualTo(1);
+		assertThat(meterRegistry.get("ingestion.chunk.read").tag("step", "process-file-partition-step").timer().count())
+			.isEqualTo(1);
+		assertThat(meterRegistry.get("ingestion.items").counter().count()).isEqualTo(2);
+		assertThat(meterRegistry.get("ingestion.filtered").tag("processor", "CreditFilter").counter().count())
+			.isEqualTo(1);
+		assertThat(meterRegistry.get("categorization.llm.latency").tag("request", "batch").timer().count())
+			.isEqualTo(1);
+	}
+
+	@Test
+	void routedItemsAreCountedByTable() throws Exception {
+		given(categoryCache.stats()).willReturn(new CategoryCache.CacheStats(0, 0, 0));
+		StepExecution stepExecution = stepExecution("process-file-step");
+		metrics.beforeStep(stepExecution);
+		StepSynchronizationManager.register(stepExecution);
+		ItemWriter<String> credits = metrics.countingRouted("credit_transactions", items -> {
+		});
+		ItemWriter<String> payments = metrics.countingRouted("credit_card_payments", items -> {
+		});
+
+		credits.write(Chunk.of("salary", "refund"));
+		payments.write(Chunk.of("payment"));
+		credits.write(Chunk.of("interest"));
+		metrics.afterStep(stepExecution);
+
+		assertThat(stepExecution.getExecutionContext().getLong(IngestionMetrics.ROUTED + "credit_transactions"))
+			.isEqualTo(3);
+		assertThat(meterRegistry.get("ingestion.routed").tag("table", "credit_card_payments").counter().count())
+			.isEqualTo(1);
+		assertThat(JobMetrics.StepMetrics.of(stepExecution).routed())
+			.isEqualTo(Map.of("credit_transactions", 3L, "credit_card_payments", 1L));
+	}
+
+	@Test
+	void restartedStepCarriesOnFromTheTotalsOfThePreviousExecution() {
+		given(categoryCache.stats()).willReturn(new CategoryCache.CacheStats(0, 0, 0));
+		StepExecution stepExecution = stepExecution("process-file-step");
+		stepExecution.getExecutionContext().putLong(IngestionMetrics.CHUNKS, 3);
+		metrics.beforeStep(stepExecution);
+
+		ChunkContext chunkContext = new ChunkContext(new StepContext(stepExecution));
+		metrics.beforeChunk(chunkContext);
+		metrics.afterChunk(chunkContext);
+		metrics.afterStep(stepExecution);
+
+		assertThat(stepExecution.getExecutionContext().getLong(IngestionMetrics.CHUNKS)).isEqualTo(4);
+	}
+
+	@Test
+	void jobMetricsReadTheStepTotals() {
+		StepExecution stepExecution = stepExecution("process-file-step");
+		stepExecution.setStartTime(LocalDateTime.now().minusSeconds(2));
+		stepExecution.setEndTime(stepExecution.getStartTime().plusSeconds(2));
+		stepExecution.setWriteCount(100);
+		stepExecution.setStatus(BatchStatus.COMPLETED);
+		stepExecution.getExecutionContext().putLong(IngestionMetrics.CHUNKS, 10);
+		stepExecution.getExecutionContext().putLong(IngestionMetrics.LLM_NANOS, 1_500_000_000L);
+		stepExecution.getExecutionContext().putLong(IngestionMetrics.FILTERED + "CreditFilter", 7);
+
+		JobMetrics.StepMetrics step = JobMetrics.StepMetrics.of(stepExecution);
+
+		assertThat(step.chunks()).isEqualTo(10);
+		assertThat(step.llmMillis()).isEqualTo(1500);
+		assertThat(step.itemsPerSecond()).isEqualTo(50.0);
+		assertThat(step.filtered()).isEqualTo(Map.of("CreditFilter", 7L));
+	}
+
+	private static StepExecution stepExecution(String stepName) {
+		JobExecution jobExecution = new JobExecution(new JobInstance(1L, "load-transactions"), 1L,
+				new JobParameters());
+		StepExecution stepExecution = jobExecution.createStepExecution(stepName);
+		stepExecution.setId(1L);
+		return stepExecution;
+	}
+
+	static class CreditFilter implements ItemProcessor<String, String> {
+
+		@Override
+		public String process(String item) {
+			return item.equals("credit") ? null : item;
+		}
+
+	}
+
+}
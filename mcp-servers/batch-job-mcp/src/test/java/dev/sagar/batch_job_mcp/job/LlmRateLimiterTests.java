@@ -0,0 +1,89 @@
+package dev.sagar.batch_job_mcp.job;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class LlmRateLimiterTests {
+
+	@Test
+	void limitGrowsWithSuccessfulRequestsUpToTheMaximum() {
+		LlmRateLimiter limiter = limiter(2, 6);
+
+		for (int i = 0; i < 50; i++) {
+			limiter.execute(() -> "Groceries");
+		}
+
+		assertThat(limiter.limit()).isEqualTo(6);
+	}
+
+	@Test
+	void throttledRequestsInFlightTogetherCutTheLimitOnce() {
+		LlmRateLimiter limiter = limiter(8, 16);
+
+		assertThatExceptionOfType(LlmThrottledException.class).isThrownBy(() -> limiter.execute(() -> {
+			try {
+				limiter.execute(() -> {
+					throw throttled(null);
+				});
+			}
+			catch (LlmThrottledException e) {
+				assertThat(limiter.limit()).isEqualTo(4);
+			}
+			throw throttled(null);
+		}));
+		assertThat(limiter.limit()).isEqualTo(4);
+
+		assertThatExceptionOfType(LlmThrottledException.class).isThrownBy(() -> limiter.execute(() -> {
+			throw throttled(null);
+		}));
+		assertThat(limiter.limit()).isEqualTo(2);
+	}
+
+	@Test
+	void noRequestIsSentBeforeRetryAfter() {
+		LlmRateLimiter limiter = limiter(4, 4);
+
+		assertThatExceptionOfType(LlmThrottledException.class).isThrownBy(() -> limiter.execute(() -> {
+			throw throttled(Duration.ofMillis(300));
+		}));
+		long start = System.nanoTime();
+		limiter.execute(() -> "Groceries");
+
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(250));
+	}
+
+	@Test
+	void retryAfterIsReadInSecondsMillisecondsOrAsADate() {
+		HttpHeaders headers = new HttpHeaders();
+		assertThat(LlmResponseErrorHandler.retryAfter(headers)).isNull();
+
+		headers.set(HttpHeaders.RETRY_AFTER, "20");
+		assertThat(LlmResponseErrorHandler.retryAfter(headers)).isEqualTo(Duration.ofSeconds(20));
+
+		headers.set("retry-after-ms", "1500");
+		assertThat(LlmResponseErrorHandler.retryAfter(headers)).isEqualTo(Duration.ofMillis(1500));
+
+		headers.remove("retry-after-ms");
+		headers.set(HttpHeaders.RETRY_AFTER, "Wed, 21 Oct 2015 07:28:00 GMT");
+		assertThat(LlmResponseErrorHandler.retryAfter(headers)).isEqualTo(Duration.ZERO);
+
+		headers.set(HttpHeaders.RETRY_AFTER, "soon");
+		assertThat(LlmResponseErrorHandler.retryAfter(headers)).isNull();
+	}
+
+	private static LlmRateLimiter limiter(int initialInFlight, int maxInFlight) {
+		return new LlmRateLimiter(initialInFlight, 1, maxInFlight, 0.5, 1000, 1000, new SimpleMeterRegistry());
+	}
+
+	private static LlmThrottledException throttled(Duration retryAfter) {
+		return new LlmThrottledException("429 - Rate limit reached", 429, retryAfter);
+	}
+
+}
@@ -0,0 +1,115 @@
+package dev.sagar.batch_job_mcp.job;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.core.io.FileSystemResource;
+
+class MappedTransactionReaderTests {
+
+	private static final String STATEMENT = "01/02/2024,-12.50,WOOLWORTHS 1234 SYDNEY,+100.00\n"
+			+ "1/2/2024,2500.00,\"Salary, ACME PTY LTD\",+2600.00\r\n"
+			+ " 9/12/2024 , -0.10 , \"NETFLIX.COM \"\"PREMIUM\"\"\" ,0\n"
+			+ "15/3/2023,\"-1234567.891\",Transfer to HSBC Card 4321,-5.5\n"
+			+ "28/02/2024,-100,Coles,0";
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void readsTheSameTransactionsAsTheFlatFileReader() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), STATEMENT);
+
+		List<FinancialTransaction> mapped = readAll(new MappedTransactionReader(file), new ExecutionContext());
+
+		assertThat(mapped).containsExactlyElementsOf(
+				readAll(BatchConfig.flatFileTransactionReader(new FileSystemResource(file)), new ExecutionContext()));
+		assertThat(mapped).first()
+			.isEqualTo(new FinancialTransaction(LocalDate.of(2024, 2, 1), -12.5, "WOOLWORTHS 1234 SYDNEY"));
+		assertThat(mapped.get(2).transaction_detail()).isEqualTo("NETFLIX.COM \"PREMIUM\"");
+	}
+
+	@Test
+	void readsLinesSpanningMappedWindows() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), STATEMENT);
+
+		List<FinancialTransaction> windowed = readAll(new MappedTransactionReader(file, 0, -1, 64),
+				new ExecutionContext());
+
+		assertThat(windowed).containsExactlyElementsOf(readAll(new MappedTransactionReader(file), new ExecutionContext()));
+	}
+
+	@Test
+	void restartsFromTheSavedByteOffset() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), STATEMENT);
+		List<FinancialTransaction> all = readAll(new MappedTransactionReader(file), new ExecutionContext());
+
+		ExecutionContext executionContext = new ExecutionContext();
+		MappedTransactionReader reader = new MappedTransactionReader(file);
+		reader.open(executionContext);
+		reader.read();
+		reader.read();
+		reader.update(executionContext);
+		reader.close();
+
+		assertThat(readAll(new MappedTransactionReader(file), executionContext)).isEqualTo(all.subList(2, all.size()));
+	}
+
+	@Test
+	void readsOnlyItsByteRange() throws Exception {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), STATEMENT);
+		List<FinancialTransaction> all = readAll(new MappedTransactionReader(file), new ExecutionContext());
+
+		List<FinancialTransaction> partitioned = new ArrayList<>();
+		for (ExecutionContext context : new ByteRangePartitioner(file).partition(3).values()) {
+			partitioned.addAll(readAll(new MappedTransactionReader(file, context.getLong(ByteRangePartitioner.START_BYTE),
+					context.getLong(ByteRangePartitioner.END_BYTE)), new ExecutionContext()));
+		}
+
+		assertThat(partitioned).isEqualTo(all);
+	}
+
+	@Test
+	void rejectsInvalidDates() throws IOException {
+		Path file = Files.writeString(tempDir.resolve("statement.csv"), "01/02/2024,-1.00,Shop,0\n31/02/2024,-1.00,Shop,0\n");
+		MappedTransactionReader reader = new MappedTransactionReader(file);
+		reader.open(new ExecutionContext());
+		try {
+			reader.read();
+			assertThatExceptionOfType(FlatFileParseException.class).isThrownBy(reader::read)
+				.satisfies(e -> assertThat(e.getLineNumber()).isEqualTo(2))
+				.satisfies(e -> assertThat(e.getInput()).isEqualTo("31/02/2024,-1.00,Shop,0"));
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private static List<FinancialTransaction> readAll(ItemStreamReader<FinancialTransaction> reader,
+			ExecutionContext executionContext) throws Exception {
+		List<FinancialTransaction> transactions = new ArrayList<>();
+		reader.open(executionContext);
+		try {
+			for (FinancialTransaction transaction = reader.read(); transaction != null; transaction = reader.read()) {
+				transactions.add(transaction);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return transactions;
+	}
+
+}
@@ -0,0 +1,51 @@
+package dev.sagar.batch_job_mcp.job;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+
+class MultiFilePartitionerTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void globMatchesFilesRelativeToTheDirectory() throws IOException {
+		Files.createDirectories(tempDir.resolve("statements/archive"));
+		for (String file : List.of("statements/2024-02.csv", "statements/2024-01.csv", "statements/2023-12.csv",
+				"statements/2024-03.pdf", "statements/archive/2024-04.csv", "2024-05.csv")) {
+			Files.writeString(tempDir.resolve(file), "");
+		}
+
+		assertThat(MultiFilePartitioner.resolve(tempDir, "statements/2024-*.csv")).containsExactly(
+				tempDir.resolve("statements/2024-01.csv"), tempDir.resolve("statements/2024-02.csv"));
+		assertThat(MultiFilePartitioner.resolve(tempDir, "statements/**.csv")).hasSize(4);
+		assertThat(MultiFilePartitioner.resolve(tempDir, "{2024-05,statements/2023-12}.csv")).hasSize(2);
+	}
+
+	@Test
+	void listIsResolvedAsGiven() throws IOException {
+		assertThat(MultiFilePartitioner.resolve(tempDir, " a.csv, b.csv ,,")).containsExactly(tempDir.resolve("a.csv"),
+				tempDir.resolve("b.csv"));
+	}
+
+	@Test
+	void everyFileIsAPartition() {
+		Map<String, ExecutionContext> partitions = new MultiFilePartitioner(
+				List.of(tempDir.resolve("a.csv"), tempDir.resolve("b.csv"), tempDir.resolve("c.csv")))
+			.partition(1);
+
+		assertThat(partitions).hasSize(3);
+		assertThat(partitions.get("file1").getString(MultiFilePartitioner.FILE_NAME_KEY))
+			.isEqualTo(tempDir.resolve("b.csv").toAbsolutePath().toString());
+	}
+
+}